@@ -2,10 +2,8 @@ package com.library;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@EnableScheduling
 public class LibraryManagementSystemApplication {
     public static void main(String[] args) {
         SpringApplication.run(LibraryManagementSystemApplication.class, args);
@@ -0,0 +1,13 @@
+package com.library.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Background jobs run in the application, but not in the headless recommendation benchmark, which must
+// not have rollups, flushes or retraining running against its replay database
+@Configuration
+@EnableScheduling
+@Profile("!recommendation-benchmark")
+public class SchedulingConfig {
+}
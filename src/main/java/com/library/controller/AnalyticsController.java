@@ -1,11 +1,33 @@
 package com.library.controller;
 
 import com.library.dto.analytics.LibraryStats;
+import com.library.model.ReaderSketch;
 import com.library.service.AnalyticsService;
+import com.library.service.analytics.AnalyticsQuery;
+import com.library.service.analytics.AnalyticsQueryService;
+import com.library.service.analytics.BorrowHeatmapService;
+import com.library.service.analytics.CohortRetentionService;
+import com.library.service.analytics.LendingRollupService;
+import com.library.service.analytics.LiveMetricsService;
+import com.library.service.analytics.LoanDistributionService;
+import com.library.service.analytics.UniqueReaderService;
+import com.library.service.analytics.UserSegment;
+import com.library.service.analytics.cluster.MemberClusteringService;
+import com.library.service.analytics.report.ReportSectionExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/api/analytics")
 @CrossOrigin(origins = "*", maxAge = 3600)
@@ -15,8 +37,194 @@ public class AnalyticsController {
     @Autowired
     private AnalyticsService analyticsService;
 
+    @Autowired
+    private LendingRollupService lendingRollupService;
+
+    @Autowired
+    private UniqueReaderService uniqueReaderService;
+
+    @Autowired
+    private LiveMetricsService liveMetricsService;
+
+    @Autowired
+    private AnalyticsQueryService analyticsQueryService;
+
+    @Autowired
+    private LoanDistributionService loanDistributionService;
+
+    @Autowired
+    private CohortRetentionService cohortRetentionService;
+
+    @Autowired
+    private MemberClusteringService memberClusteringService;
+
+    @Autowired
+    private BorrowHeatmapService borrowHeatmapService;
+
+    @Autowired
+    private ReportSectionExecutor reportSectionExecutor;
+
     @GetMapping("/stats")
     public LibraryStats getLibraryStats() {
         return analyticsService.getLibraryStats();
     }
+
+    // Dashboard figures restricted by any combination of borrow date range (inclusive), genres (repeated
+    // or comma-separated; an empty one selects books with no genre), author and current member segment;
+    // omitted filters do not restrict
+    @GetMapping("/query")
+    public ResponseEntity<?> queryLendings(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) List<String> genre,
+            @RequestParam(required = false) Long authorId,
+            @RequestParam(required = false) String segment) {
+        if (from != null && to != null && to.isBefore(from)) {
+            return ResponseEntity.badRequest().body("'to' must not be before 'from'");
+        }
+        UserSegment userSegment = null;
+        if (segment != null && !segment.isBlank()) {
+            try {
+                userSegment = UserSegment.valueOf(segment.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body("Unknown segment '" + segment + "'");
+            }
+        }
+        return ResponseEntity.ok(analyticsQueryService.query(AnalyticsQuery.of(from, to, genre, authorId, userSegment)));
+    }
+
+    // Server-sent "metrics" events: the first holds every metric, later ones only those that changed
+    @GetMapping(value = "/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamLiveMetrics() {
+        try {
+            return ResponseEntity.ok(liveMetricsService.subscribe());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many live metrics clients, try again later");
+        }
+    }
+
+    @PostMapping("/rollups/backfill")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> backfillRollups(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (to.isBefore(from)) {
+            return ResponseEntity.badRequest().body("'to' must not be before 'from'");
+        }
+        return ResponseEntity.ok(lendingRollupService.backfill(from, to));
+    }
+
+    // Distinct members who borrowed, estimated with HyperLogLog (relative standard error about 1.6%);
+    // months default to the last twelve including the current one
+    @GetMapping("/readers/books/{bookId}")
+    public ResponseEntity<?> getBookReaders(
+            @PathVariable Long bookId,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth from,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth to) {
+        return uniqueReaders(ReaderSketch.Dimension.BOOK, String.valueOf(bookId), from, to);
+    }
+
+    @GetMapping("/readers/genres/{genre}")
+    public ResponseEntity<?> getGenreReaders(
+            @PathVariable String genre,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth from,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth to) {
+        return uniqueReaders(ReaderSketch.Dimension.GENRE, genre, from, to);
+    }
+
+    @GetMapping("/readers/authors/{authorId}")
+    public ResponseEntity<?> getAuthorReaders(
+            @PathVariable Long authorId,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth from,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth to) {
+        return uniqueReaders(ReaderSketch.Dimension.AUTHOR, String.valueOf(authorId), from, to);
+    }
+
+    @PostMapping("/readers/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> rebuildReaderSketches(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth from,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth to) {
+        if (to.isBefore(from)) {
+            return ResponseEntity.badRequest().body("'to' must not be before 'from'");
+        }
+        return ResponseEntity.ok(uniqueReaderService.rebuild(from, to));
+    }
+
+    // Loan duration and days-overdue percentiles (t-digest estimates) by month of return, for one genre or
+    // for all with a per-genre breakdown; months default to the last twelve including the current one
+    @GetMapping("/loans/percentiles")
+    public ResponseEntity<?> getLoanPercentiles(
+            @RequestParam(required = false) String genre,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth from,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth to,
+            @RequestParam(defaultValue = "0.5,0.9,0.99") List<Double> q) {
+        YearMonth end = to != null ? to : YearMonth.now();
+        YearMonth start = from != null ? from : end.minusMonths(11);
+        if (end.isBefore(start)) {
+            return ResponseEntity.badRequest().body("'to' must not be before 'from'");
+        }
+        if (q.isEmpty() || q.stream().anyMatch(quantile -> quantile == null || quantile < 0 || quantile > 1)) {
+            return ResponseEntity.badRequest().body("Quantiles must be between 0 and 1");
+        }
+        return ResponseEntity.ok(loanDistributionService.getPercentiles(genre, start, end, q));
+    }
+
+    // Retention matrix of members grouped by month of first borrow; cohorts default to the last twelve
+    // months including the current one, followed for up to "months" months after joining
+    @GetMapping("/cohorts")
+    public ResponseEntity<?> getCohortRetention(
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth from,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth to,
+            @RequestParam(defaultValue = "12") int months) {
+        YearMonth end = to != null ? to : YearMonth.now();
+        YearMonth start = from != null ? from : end.minusMonths(11);
+        if (end.isBefore(start)) {
+            return ResponseEntity.badRequest().body("'to' must not be before 'from'");
+        }
+        if (months < 0 || months > 120) {
+            return ResponseEntity.badRequest().body("Months must be between 0 and 120");
+        }
+        return ResponseEntity.ok(cohortRetentionService.getRetention(start, end, months));
+    }
+
+    // k-means clusters of members' behavioural features, with the features' correlation matrix and a
+    // sample of members for scatter plots; cached until the data changes
+    @GetMapping("/members/clusters")
+    public ResponseEntity<?> getMemberClusters(@RequestParam(defaultValue = "5") int k) {
+        if (k < 2 || k > 20) {
+            return ResponseEntity.badRequest().body("k must be between 2 and 20");
+        }
+        return ResponseEntity.ok(memberClusteringService.cluster(k));
+    }
+
+    @GetMapping("/members/correlations")
+    public Object getMemberFeatureCorrelations() {
+        return memberClusteringService.correlations();
+    }
+
+    // Borrows per hour of the week (168 cells, Monday 00:00 first), overall or for one genre
+    @GetMapping("/heatmap")
+    public ResponseEntity<?> getBorrowHeatmap(@RequestParam(required = false) String genre) {
+        Map<String, Object> heatmap = borrowHeatmapService.getHeatmap(genre);
+        if (heatmap == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(heatmap);
+    }
+
+    // Runs, failures, timeouts and timings of each concurrently computed report section since startup
+    @GetMapping("/reports/metrics")
+    public Map<String, Object> getReportSectionMetrics() {
+        return reportSectionExecutor.getMetrics();
+    }
+
+    private ResponseEntity<?> uniqueReaders(ReaderSketch.Dimension dimension, String key, YearMonth from, YearMonth to) {
+        YearMonth end = to != null ? to : YearMonth.now();
+        YearMonth start = from != null ? from : end.minusMonths(11);
+        if (end.isBefore(start)) {
+            return ResponseEntity.badRequest().body("'to' must not be before 'from'");
+        }
+        return ResponseEntity.ok(uniqueReaderService.getUniqueReaders(dimension, key, start, end));
+    }
 }
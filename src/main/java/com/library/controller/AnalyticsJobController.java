@@ -0,0 +1,96 @@
+package com.library.controller;
+
+import com.library.service.analytics.jobs.ReportJob;
+import com.library.service.analytics.jobs.ReportJobService;
+import com.library.service.analytics.jobs.ReportType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+@RestController
+@RequestMapping("/api/analytics/jobs")
+@CrossOrigin(origins = "*", maxAge = 3600)
+@PreAuthorize("hasRole('ADMIN') or hasRole('LIBRARIAN')")
+public class AnalyticsJobController {
+
+    private static final long EVENTS_TIMEOUT_MS = 30 * 60 * 1000L;
+
+    @Autowired
+    private ReportJobService reportJobService;
+
+    // The reports take no parameters, so anything besides "type" is rejected rather than silently
+    // ignored by the report (and cached under a key of its own)
+    @PostMapping
+    public ResponseEntity<?> submit(@RequestParam ReportType type, @RequestParam Map<String, String> parameters) {
+        parameters.remove("type");
+        if (!parameters.isEmpty()) {
+            return ResponseEntity.badRequest().body("Unknown parameters: " + String.join(", ", parameters.keySet()));
+        }
+        try {
+            ReportJob job = reportJobService.submit(type);
+            return ResponseEntity.accepted().body(job.toStatus());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many reports queued, try again later");
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getStatus(@PathVariable String jobId) {
+        return reportJobService.getJob(jobId)
+            .<ResponseEntity<?>>map(job -> ResponseEntity.ok(job.toStatus()))
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    // 202 with the status while the report is still being computed
+    @GetMapping("/{jobId}/result")
+    public ResponseEntity<?> getResult(@PathVariable String jobId) {
+        Optional<ReportJob> found = reportJobService.getJob(jobId);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        ReportJob job = found.get();
+        switch (job.getStatus()) {
+            case SUCCEEDED: return ResponseEntity.ok(job.getResult());
+            case FAILED: return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(job.toStatus());
+            default: return ResponseEntity.accepted().body(job.toStatus());
+        }
+    }
+
+    // Server-sent "status" events on every transition; the stream completes when the job finishes
+    @GetMapping("/{jobId}/events")
+    public ResponseEntity<?> streamStatus(@PathVariable String jobId) {
+        Optional<ReportJob> found = reportJobService.getJob(jobId);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        ReportJob job = found.get();
+        SseEmitter emitter = new SseEmitter(EVENTS_TIMEOUT_MS);
+        Consumer<ReportJob> listener = new Consumer<>() {
+            @Override
+            public synchronized void accept(ReportJob changed) {
+                try {
+                    emitter.send(SseEmitter.event().name("status").data(changed.toStatus()));
+                    if (changed.isFinished()) {
+                        emitter.complete();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // Client went away or the emitter already completed
+                    changed.unsubscribe(this);
+                }
+            }
+        };
+        emitter.onCompletion(() -> job.unsubscribe(listener));
+        emitter.onTimeout(() -> job.unsubscribe(listener));
+        job.subscribe(listener);
+        return ResponseEntity.ok(emitter);
+    }
+}
@@ -3,12 +3,14 @@ package com.library.controller;
 import com.library.dto.JwtResponse;
 import com.library.dto.LoginRequest;
 import com.library.dto.SignUpRequest;
+import com.library.event.MemberEvent;
 import com.library.model.Role;
 import com.library.model.User;
 import com.library.repository.RoleRepository;
 import com.library.repository.UserRepository;
 import com.library.security.JwtTokenProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -42,6 +44,9 @@ public class AuthController {
     @Autowired
     JwtTokenProvider jwtTokenProvider;
 
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
     @PostMapping("/signin")
     public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
         Authentication authentication = authenticationManager.authenticate(
@@ -87,7 +92,8 @@ public class AuthController {
         roles.add(userRole);
         user.setRoles(roles);
 
-        userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        eventPublisher.publishEvent(new MemberEvent(MemberEvent.Type.REGISTERED, savedUser.getId()));
 
         return ResponseEntity.ok("User registered successfully!");
     }
@@ -1,9 +1,11 @@
 package com.library.controller;
 
 import com.library.dto.AuthorDTO;
+import com.library.event.AuthorEvent;
 import com.library.model.Author;
 import com.library.repository.AuthorRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -20,6 +22,9 @@ public class AuthorController {
     @Autowired
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @GetMapping
     public List<AuthorDTO> getAllAuthors() {
         return authorRepository.findAll().stream()
@@ -40,6 +45,7 @@ public class AuthorController {
     public ResponseEntity<AuthorDTO> createAuthor(@Valid @RequestBody AuthorDTO authorDTO) {
         Author author = convertToEntity(authorDTO);
         Author savedAuthor = authorRepository.save(author);
+        eventPublisher.publishEvent(new AuthorEvent(AuthorEvent.Type.CREATED, savedAuthor.getId()));
         return ResponseEntity.ok(convertToDTO(savedAuthor));
     }
 
@@ -64,6 +70,7 @@ public class AuthorController {
         }
 
         authorRepository.deleteById(id);
+        eventPublisher.publishEvent(new AuthorEvent(AuthorEvent.Type.DELETED, id));
         return ResponseEntity.ok().build();
     }
 
@@ -1,18 +1,23 @@
 package com.library.controller;
 
 import com.library.dto.BookDTO;
+import com.library.event.BookEvent;
 import com.library.model.Author;
 import com.library.model.Book;
 import com.library.repository.AuthorRepository;
 import com.library.repository.BookRepository;
+import com.library.service.analytics.TrendingService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -27,6 +32,12 @@ public class BookController {
     @Autowired
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TrendingService trendingService;
+
     @GetMapping
     public List<BookDTO> getAllBooks() {
         return bookRepository.findAll().stream()
@@ -47,6 +58,7 @@ public class BookController {
     public ResponseEntity<BookDTO> createBook(@Valid @RequestBody BookDTO bookDTO) {
         Book book = convertToEntity(bookDTO);
         Book savedBook = bookRepository.save(book);
+        eventPublisher.publishEvent(new BookEvent(BookEvent.Type.CREATED, savedBook.getId(), savedBook));
         return ResponseEntity.ok(convertToDTO(savedBook));
     }
 
@@ -60,6 +72,7 @@ public class BookController {
         Book book = convertToEntity(bookDTO);
         book.setId(id);
         Book updatedBook = bookRepository.save(book);
+        eventPublisher.publishEvent(new BookEvent(BookEvent.Type.UPDATED, updatedBook.getId(), updatedBook));
         return ResponseEntity.ok(convertToDTO(updatedBook));
     }
 
@@ -71,6 +84,7 @@ public class BookController {
         }
         
         bookRepository.deleteById(id);
+        eventPublisher.publishEvent(new BookEvent(BookEvent.Type.DELETED, id, null));
         return ResponseEntity.ok().build();
     }
 
@@ -99,6 +113,27 @@ public class BookController {
                 .collect(Collectors.toList());
     }
 
+    // Books by exponentially decayed borrow count; every configured half-life unless one is asked for
+    @GetMapping("/trending")
+    public ResponseEntity<?> getTrendingBooks(
+            @RequestParam(required = false) String halfLife,
+            @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1 || limit > 100) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and 100");
+        }
+        if (halfLife != null) {
+            List<Map<String, Object>> trending = trendingService.getTrending(halfLife, limit);
+            return trending != null
+                    ? ResponseEntity.ok(trending)
+                    : ResponseEntity.badRequest().body("halfLife must be one of " + trendingService.getHalfLives());
+        }
+        Map<String, Object> byHalfLife = new LinkedHashMap<>();
+        for (String configured : trendingService.getHalfLives()) {
+            byHalfLife.put(configured, trendingService.getTrending(configured, limit));
+        }
+        return ResponseEntity.ok(byHalfLife);
+    }
+
     @GetMapping("/available")
     public List<BookDTO> getAvailableBooks() {
         return bookRepository.findAvailableBooks().stream()
@@ -1,17 +1,22 @@
 package com.library.controller;
 
 import com.library.dto.BookLendingDTO;
+import com.library.event.LendingEvent;
 import com.library.model.Book;
 import com.library.model.BookLending;
 import com.library.model.User;
 import com.library.repository.BookLendingRepository;
 import com.library.repository.BookRepository;
 import com.library.repository.UserRepository;
+import com.library.service.streaming.JsonStreams;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
 import java.time.LocalDateTime;
@@ -32,12 +37,27 @@ public class BookLendingController {
     @Autowired
     private UserRepository userRepository;
 
-    @GetMapping
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private JsonStreams jsonStreams;
+
+    // Streamed from a database cursor; the response is a JSON array as before
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     @PreAuthorize("hasRole('ADMIN') or hasRole('LIBRARIAN')")
-    public List<BookLendingDTO> getAllLendings() {
-        return lendingRepository.findAll().stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+    public ResponseEntity<StreamingResponseBody> getAllLendings() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(jsonStreams.cursorAsJsonArray(lendingRepository::streamAllAsDTO));
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN') or hasRole('LIBRARIAN')")
+    public ResponseEntity<StreamingResponseBody> getAllLendingsAsNdjson() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(jsonStreams.cursorAsNdjson(lendingRepository::streamAllAsDTO));
     }
 
     @GetMapping("/my-lendings")
@@ -77,6 +97,7 @@ public class BookLendingController {
         bookRepository.save(book);
         
         BookLending savedLending = lendingRepository.save(lending);
+        eventPublisher.publishEvent(new LendingEvent(LendingEvent.Type.BORROWED, savedLending));
         return ResponseEntity.ok(convertToDTO(savedLending));
     }
 
@@ -98,6 +119,7 @@ public class BookLendingController {
         bookRepository.save(book);
 
         BookLending savedLending = lendingRepository.save(lending);
+        eventPublisher.publishEvent(new LendingEvent(LendingEvent.Type.RETURNED, savedLending));
         return ResponseEntity.ok(convertToDTO(savedLending));
     }
 
@@ -0,0 +1,49 @@
+package com.library.controller;
+
+import com.library.model.FailedNotification;
+import com.library.repository.FailedNotificationRepository;
+import com.library.service.NotificationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/notifications")
+@CrossOrigin(origins = "*", maxAge = 3600)
+@PreAuthorize("hasRole('ADMIN')")
+public class NotificationController {
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private FailedNotificationRepository failedNotificationRepository;
+
+    // Throughput of the last run and totals since startup, per kind of notification
+    @GetMapping("/metrics")
+    public Map<String, Object> getMetrics() {
+        return notificationService.getMetrics();
+    }
+
+    @GetMapping("/failed")
+    public ResponseEntity<?> getFailedNotifications(@RequestParam(defaultValue = "0") int page,
+                                                    @RequestParam(defaultValue = "50") int size) {
+        if (page < 0 || size < 1 || size > 500) {
+            return ResponseEntity.badRequest().body("page must be at least 0 and size between 1 and 500");
+        }
+        Page<FailedNotification> failed = failedNotificationRepository.findAll(PageRequest.of(page, size, Sort.by("id")));
+        return ResponseEntity.ok(failed.getContent());
+    }
+
+    // Sends every dead-lettered notification again; blocks until the replay finishes
+    @PostMapping("/failed/replay")
+    public Map<String, Object> replayFailedNotifications() {
+        return notificationService.replayFailedNotifications();
+    }
+}
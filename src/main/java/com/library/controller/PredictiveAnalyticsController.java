@@ -1,11 +1,12 @@
 package com.library.controller;
 
 import com.library.service.PredictiveAnalyticsService;
+import com.library.service.streaming.JsonStreams;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-
-import java.util.Map;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/analytics")
@@ -15,9 +16,21 @@ public class PredictiveAnalyticsController {
     @Autowired
     private PredictiveAnalyticsService predictiveAnalyticsService;
 
-    @GetMapping("/predictions")
-    public ResponseEntity<Map<String, Object>> getPredictions() {
-        Map<String, Object> predictions = predictiveAnalyticsService.getPredictions();
-        return ResponseEntity.ok(predictions);
+    @Autowired
+    private JsonStreams jsonStreams;
+
+    // Same document as before, written section by section
+    @GetMapping(value = "/predictions", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getPredictions() {
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(jsonStreams.sectionsAsJsonObject(predictiveAnalyticsService::forEachSection));
+    }
+
+    @GetMapping(value = "/predictions", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getPredictionsAsNdjson() {
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(jsonStreams.sectionsAsNdjson(predictiveAnalyticsService::forEachSection));
     }
 }
@@ -4,8 +4,10 @@ import com.library.model.Book;
 import com.library.model.User;
 import com.library.repository.UserRepository;
 import com.library.service.RecommendationService;
+import com.library.service.recommendation.SimilarBooksIndexService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
@@ -22,6 +24,9 @@ public class RecommendationController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private SimilarBooksIndexService similarBooksIndexService;
+
     @GetMapping("/personalized")
     public ResponseEntity<List<Book>> getPersonalizedRecommendations() {
         String username = SecurityContextHolder.getContext().getAuthentication().getName();
@@ -37,4 +42,18 @@ public class RecommendationController {
         List<Book> similarBooks = recommendationService.getSimilarBooks(bookId);
         return ResponseEntity.ok(similarBooks);
     }
+
+    @GetMapping("/benchmark/similar")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> benchmarkSimilarBooks(
+            @RequestParam(defaultValue = "200") int queries,
+            @RequestParam(defaultValue = "10") int k) {
+        if (queries < 1 || queries > 10000) {
+            return ResponseEntity.badRequest().body("queries must be between 1 and 10000");
+        }
+        if (k < 1 || k > 100) {
+            return ResponseEntity.badRequest().body("k must be between 1 and 100");
+        }
+        return ResponseEntity.ok(similarBooksIndexService.benchmark(queries, k));
+    }
 }
@@ -1,6 +1,7 @@
 package com.library.controller;
 
 import com.library.dto.ReviewDTO;
+import com.library.event.ReviewEvent;
 import com.library.model.Book;
 import com.library.model.Review;
 import com.library.model.User;
@@ -8,6 +9,7 @@ import com.library.repository.BookRepository;
 import com.library.repository.ReviewRepository;
 import com.library.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -32,6 +34,9 @@ public class ReviewController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @GetMapping("/book/{bookId}")
     public List<ReviewDTO> getBookReviews(@PathVariable Long bookId) {
         return reviewRepository.findByBookIdAndApprovedTrue(bookId).stream()
@@ -73,6 +78,7 @@ public class ReviewController {
         review.setApproved(false); // Requires librarian approval
 
         Review savedReview = reviewRepository.save(review);
+        eventPublisher.publishEvent(new ReviewEvent(ReviewEvent.Type.CREATED, savedReview));
         return ResponseEntity.ok(convertToDTO(savedReview));
     }
 
@@ -82,19 +88,25 @@ public class ReviewController {
         Review review = reviewRepository.findById(reviewId)
                 .orElseThrow(() -> new RuntimeException("Review not found"));
         
+        boolean wasApproved = review.isApproved();
         review.setApproved(true);
         Review updatedReview = reviewRepository.save(review);
+        if (!wasApproved) {
+            eventPublisher.publishEvent(new ReviewEvent(ReviewEvent.Type.APPROVED, updatedReview));
+        }
         return ResponseEntity.ok(convertToDTO(updatedReview));
     }
 
     @DeleteMapping("/{reviewId}")
     @PreAuthorize("hasRole('ADMIN') or hasRole('LIBRARIAN')")
     public ResponseEntity<?> deleteReview(@PathVariable Long reviewId) {
-        if (!reviewRepository.existsById(reviewId)) {
+        Review review = reviewRepository.findById(reviewId).orElse(null);
+        if (review == null) {
             return ResponseEntity.notFound().build();
         }
         
         reviewRepository.deleteById(reviewId);
+        eventPublisher.publishEvent(new ReviewEvent(ReviewEvent.Type.DELETED, review));
         return ResponseEntity.ok().build();
     }
 
@@ -1,9 +1,13 @@
 package com.library.dto;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class BookLendingDTO {
     private Long id;
     private Long bookId;
@@ -0,0 +1,19 @@
+package com.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// What a notification digest needs about one overdue or due-soon lending, read with its member and book
+// in a single joined query
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LendingNotice {
+    private Long lendingId;
+    private Long userId;
+    private String email;
+    private String bookTitle;
+    private LocalDateTime dueDate;
+}
@@ -0,0 +1,7 @@
+package com.library.dto.analytics;
+
+public interface BookBorrowCount {
+    Long getBookId();
+    String getBookTitle();
+    Long getBorrowCount();
+}
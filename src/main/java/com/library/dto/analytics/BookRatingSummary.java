@@ -0,0 +1,8 @@
+package com.library.dto.analytics;
+
+public interface BookRatingSummary {
+    Long getBookId();
+    String getBookTitle();
+    Double getAverageRating();
+    Long getReviewCount();
+}
@@ -0,0 +1,6 @@
+package com.library.dto.analytics;
+
+public interface GenreCount {
+    String getGenre();
+    Long getCount();
+}
@@ -0,0 +1,6 @@
+package com.library.dto.analytics;
+
+public interface HourlyCount {
+    Integer getHour();
+    Long getCount();
+}
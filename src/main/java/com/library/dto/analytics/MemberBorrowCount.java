@@ -0,0 +1,7 @@
+package com.library.dto.analytics;
+
+public interface MemberBorrowCount {
+    Long getUserId();
+    String getUsername();
+    Long getBorrowCount();
+}
@@ -0,0 +1,7 @@
+package com.library.dto.analytics;
+
+public interface MonthlyCount {
+    Integer getYear();
+    Integer getMonth();
+    Long getCount();
+}
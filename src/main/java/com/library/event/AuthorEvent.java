@@ -0,0 +1,13 @@
+package com.library.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class AuthorEvent {
+    public enum Type { CREATED, DELETED }
+
+    private final Type type;
+    private final Long authorId;
+}
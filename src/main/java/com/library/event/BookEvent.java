@@ -0,0 +1,15 @@
+package com.library.event;
+
+import com.library.model.Book;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BookEvent {
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    private final Type type;
+    private final Long bookId;
+    private final Book book; // null for DELETED
+}
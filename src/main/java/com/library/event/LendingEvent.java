@@ -0,0 +1,14 @@
+package com.library.event;
+
+import com.library.model.BookLending;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class LendingEvent {
+    public enum Type { BORROWED, RETURNED }
+
+    private final Type type;
+    private final BookLending lending;
+}
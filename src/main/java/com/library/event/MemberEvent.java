@@ -0,0 +1,13 @@
+package com.library.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class MemberEvent {
+    public enum Type { REGISTERED }
+
+    private final Type type;
+    private final Long userId;
+}
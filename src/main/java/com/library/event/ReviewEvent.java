@@ -0,0 +1,14 @@
+package com.library.event;
+
+import com.library.model.Review;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class ReviewEvent {
+    public enum Type { CREATED, APPROVED, DELETED }
+
+    private final Type type;
+    private final Review review;
+}
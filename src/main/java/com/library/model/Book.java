@@ -8,7 +8,9 @@ import java.util.Set;
 
 @Data
 @Entity
-@Table(name = "books")
+@Table(name = "books", indexes = {
+    @Index(name = "idx_book_genre", columnList = "genre")
+})
 public class Book {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -6,7 +6,12 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "book_lendings")
+@Table(name = "book_lendings", indexes = {
+    @Index(name = "idx_lending_book", columnList = "book_id"),
+    @Index(name = "idx_lending_user", columnList = "user_id"),
+    @Index(name = "idx_lending_borrow_date", columnList = "borrowDate"),
+    @Index(name = "idx_lending_open_due", columnList = "returnDate, dueDate")
+})
 public class BookLending {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
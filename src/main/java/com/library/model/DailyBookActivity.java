@@ -0,0 +1,30 @@
+package com.library.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDate;
+
+@Data
+@Entity
+@Table(name = "daily_book_activity", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_daily_book_activity", columnNames = {"book_id", "activity_date"})
+}, indexes = {
+    @Index(name = "idx_daily_book_date", columnList = "activity_date")
+})
+public class DailyBookActivity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+
+    @Column(name = "activity_date", nullable = false)
+    private LocalDate activityDate;
+
+    @Column(nullable = false)
+    private long borrows;
+
+    @Column(nullable = false)
+    private long returns;
+}
@@ -0,0 +1,30 @@
+package com.library.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDate;
+
+@Data
+@Entity
+@Table(name = "daily_genre_activity", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_daily_genre_activity", columnNames = {"genre", "activity_date"})
+}, indexes = {
+    @Index(name = "idx_daily_genre_date", columnList = "activity_date")
+})
+public class DailyGenreActivity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "genre")
+    private String genre;
+
+    @Column(name = "activity_date", nullable = false)
+    private LocalDate activityDate;
+
+    @Column(nullable = false)
+    private long borrows;
+
+    @Column(nullable = false)
+    private long returns;
+}
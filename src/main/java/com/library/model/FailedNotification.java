@@ -0,0 +1,41 @@
+package com.library.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+// Dead letter: a notification email that could not be delivered after every retry, kept so it can be
+// inspected and replayed
+@Data
+@Entity
+@Table(name = "failed_notifications", indexes = {
+    @Index(name = "idx_failed_notification_kind", columnList = "kind")
+})
+public class FailedNotification {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // DIGEST, REPLAY, ...
+    @Column(nullable = false, length = 32)
+    private String kind;
+
+    // Member (for digests) or lending the notification was about, if any
+    private Long reference;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    private String subject;
+
+    @Lob
+    private String body;
+
+    private int attempts;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @Column(nullable = false)
+    private LocalDateTime failedAt;
+}
@@ -0,0 +1,41 @@
+package com.library.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Serialized HyperLogLog of the distinct members who borrowed within one month, per book, genre or author
+@Data
+@Entity
+@Table(name = "reader_sketches", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_reader_sketch", columnNames = {"dimension", "dimension_key", "month"})
+})
+public class ReaderSketch {
+    public enum Dimension { BOOK, GENRE, AUTHOR }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Dimension dimension;
+
+    // Book or author id, or the genre name ("" for books without a genre)
+    @Column(name = "dimension_key", nullable = false)
+    private String dimensionKey;
+
+    // First day of the month
+    @Column(nullable = false)
+    private LocalDate month;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] sketch;
+
+    @Version
+    private Long version;
+
+    private LocalDateTime updatedAt;
+}
@@ -6,7 +6,9 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "reviews")
+@Table(name = "reviews", indexes = {
+    @Index(name = "idx_review_book_approved", columnList = "book_id, approved")
+})
 public class Review {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
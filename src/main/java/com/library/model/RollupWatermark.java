@@ -0,0 +1,20 @@
+package com.library.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Progress marker for an incremental rollup: every day before "rolledUpTo" has been aggregated
+@Data
+@Entity
+@Table(name = "rollup_watermarks")
+public class RollupWatermark {
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private LocalDate rolledUpTo;
+
+    private LocalDateTime updatedAt;
+}
@@ -2,8 +2,12 @@ package com.library.repository;
 
 import com.library.model.Author;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import java.util.List;
 
 public interface AuthorRepository extends JpaRepository<Author, Long> {
     List<Author> findByNameContainingIgnoreCase(String query);
+
+    @Query("SELECT a.id FROM Author a")
+    List<Long> findAllIds();
 }
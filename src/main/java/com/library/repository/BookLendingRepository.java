@@ -1,14 +1,28 @@
 package com.library.repository;
 
+import com.library.dto.BookLendingDTO;
+import com.library.dto.LendingNotice;
+import com.library.dto.analytics.BookBorrowCount;
+import com.library.dto.analytics.GenreCount;
+import com.library.dto.analytics.HourlyCount;
+import com.library.dto.analytics.MemberBorrowCount;
+import com.library.dto.analytics.MonthlyCount;
 import com.library.model.BookLending;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface BookLendingRepository extends JpaRepository<BookLending, Long> {
     List<BookLending> findByUserId(Long userId);
     List<BookLending> findByBookId(Long bookId);
+    long countByBookId(Long bookId);
     
     @Query("SELECT bl FROM BookLending bl WHERE bl.returnDate IS NULL AND bl.dueDate < :currentDate")
     List<BookLending> findOverdueBooks(LocalDateTime currentDate);
@@ -19,4 +33,112 @@ public interface BookLendingRepository extends JpaRepository<BookLending, Long>
     List<BookLending> findByBorrowDateBetween(LocalDateTime startDate, LocalDateTime endDate);
     
     long countByBorrowDateBetween(LocalDateTime startDate, LocalDateTime endDate);
+
+    // (id, dueDate) of every open loan
+    @Query("SELECT bl.id, bl.dueDate FROM BookLending bl WHERE bl.returnDate IS NULL")
+    List<Object[]> findOpenLoanDueDates();
+
+    // Aggregations run in the database; pass PageRequest.of(0, n) to push the LIMIT down
+    @Query("SELECT b.id AS bookId, b.title AS bookTitle, COUNT(bl) AS borrowCount " +
+           "FROM BookLending bl JOIN bl.book b GROUP BY b.id, b.title ORDER BY COUNT(bl) DESC, b.id")
+    List<BookBorrowCount> findMostBorrowedBooks(Pageable pageable);
+
+    @Query("SELECT u.id AS userId, u.username AS username, COUNT(bl) AS borrowCount " +
+           "FROM BookLending bl JOIN bl.user u GROUP BY u.id, u.username ORDER BY COUNT(bl) DESC, u.id")
+    List<MemberBorrowCount> findMostActiveMembers(Pageable pageable);
+
+    @Query("SELECT b.genre AS genre, COUNT(bl) AS count FROM BookLending bl JOIN bl.book b " +
+           "GROUP BY b.genre ORDER BY COUNT(bl) DESC")
+    List<GenreCount> countLendingsByGenre();
+
+    @Query("SELECT YEAR(bl.borrowDate) AS year, MONTH(bl.borrowDate) AS month, COUNT(bl) AS count " +
+           "FROM BookLending bl WHERE bl.borrowDate >= :since " +
+           "GROUP BY YEAR(bl.borrowDate), MONTH(bl.borrowDate) " +
+           "ORDER BY YEAR(bl.borrowDate), MONTH(bl.borrowDate)")
+    List<MonthlyCount> countLendingsByMonthSince(LocalDateTime since);
+
+    @Query("SELECT HOUR(bl.borrowDate) AS hour, COUNT(bl) AS count FROM BookLending bl " +
+           "GROUP BY HOUR(bl.borrowDate)")
+    List<HourlyCount> countLendingsByHour();
+
+    // (bookId, borrows in [previousStart, start], borrows after start) for books borrowed since previousStart
+    @Query("SELECT bl.book.id, " +
+           "SUM(CASE WHEN bl.borrowDate <= :start THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN bl.borrowDate > :start THEN 1 ELSE 0 END) " +
+           "FROM BookLending bl WHERE bl.borrowDate >= :previousStart GROUP BY bl.book.id")
+    List<Object[]> countBorrowWindowsByBook(LocalDateTime previousStart, LocalDateTime start);
+
+    // (bookId, genre, userId, day, count) of lendings borrowed in [from, to), for the daily rollups
+    @Query("SELECT b.id, b.genre, bl.user.id, CAST(bl.borrowDate AS LocalDate), COUNT(bl) " +
+           "FROM BookLending bl JOIN bl.book b WHERE bl.borrowDate >= :from AND bl.borrowDate < :to " +
+           "GROUP BY b.id, b.genre, bl.user.id, CAST(bl.borrowDate AS LocalDate)")
+    List<Object[]> countBorrowsByDay(LocalDateTime from, LocalDateTime to);
+
+    // Same shape as countBorrowsByDay, keyed on the return date
+    @Query("SELECT b.id, b.genre, bl.user.id, CAST(bl.returnDate AS LocalDate), COUNT(bl) " +
+           "FROM BookLending bl JOIN bl.book b WHERE bl.returnDate >= :from AND bl.returnDate < :to " +
+           "GROUP BY b.id, b.genre, bl.user.id, CAST(bl.returnDate AS LocalDate)")
+    List<Object[]> countReturnsByDay(LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT MIN(bl.borrowDate) FROM BookLending bl")
+    LocalDateTime findEarliestBorrowDate();
+
+    @Query("SELECT MAX(bl.id) FROM BookLending bl")
+    Long findMaxId();
+
+    // (count, sum of member ids, sum of book ids) over lendings up to the id, a fingerprint of the
+    // history a model was trained on
+    @Query("SELECT COUNT(bl), COALESCE(SUM(bl.user.id), 0), COALESCE(SUM(bl.book.id), 0) " +
+           "FROM BookLending bl WHERE bl.id <= :throughId")
+    List<Object[]> summarizeThrough(long throughId);
+
+    // (userId, bookId) for every lending; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    @Query("SELECT bl.user.id, bl.book.id FROM BookLending bl")
+    Stream<Object[]> streamUserBookPairs();
+
+    // (id, bookId, userId, borrowDate, dueDate, returnDate) in id order; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    @Query("SELECT bl.id, bl.book.id, bl.user.id, bl.borrowDate, bl.dueDate, bl.returnDate FROM BookLending bl ORDER BY bl.id")
+    Stream<Object[]> streamLendingFacts();
+
+    // (userId, bookId, borrowDate) for every lending; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    @Query("SELECT bl.user.id, bl.book.id, bl.borrowDate FROM BookLending bl")
+    Stream<Object[]> streamBorrowFacts();
+
+    // (userId, bookId, borrowDate) for lendings borrowed in [from, to); must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    @Query("SELECT bl.user.id, bl.book.id, bl.borrowDate FROM BookLending bl " +
+           "WHERE bl.borrowDate >= :from AND bl.borrowDate < :to")
+    Stream<Object[]> streamBorrowFactsBetween(LocalDateTime from, LocalDateTime to);
+
+    // (id, book title, userId, dueDate) for open lendings in id order; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT bl.id, b.title, bl.user.id, bl.dueDate FROM BookLending bl JOIN bl.book b " +
+           "WHERE bl.returnDate IS NULL ORDER BY bl.id")
+    Stream<Object[]> streamOpenLendings();
+
+    // Every lending as an unmanaged DTO in id order, so streaming does not fill the persistence context;
+    // must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.library.dto.BookLendingDTO(bl.id, bl.book.id, bl.user.id, bl.borrowDate, bl.dueDate, " +
+           "bl.returnDate, bl.status) FROM BookLending bl ORDER BY bl.id")
+    Stream<BookLendingDTO> streamAllAsDTO();
+
+    // Members with an open lending overdue at :now or due strictly between :remindFrom and :remindTo, with id
+    // above :afterUserId, in id order; keyset pages for the notification run, pass PageRequest.of(0, size)
+    @Query("SELECT DISTINCT bl.user.id FROM BookLending bl WHERE bl.returnDate IS NULL " +
+           "AND (bl.dueDate < :now OR (bl.dueDate > :remindFrom AND bl.dueDate < :remindTo)) " +
+           "AND bl.user.id > :afterUserId ORDER BY bl.user.id")
+    List<Long> findNoticeUserIds(LocalDateTime now, LocalDateTime remindFrom, LocalDateTime remindTo,
+                                 long afterUserId, Pageable pageable);
+
+    // The same lendings for the given members, joined with member and book, grouped by member
+    @Query("SELECT new com.library.dto.LendingNotice(bl.id, u.id, u.email, b.title, bl.dueDate) " +
+           "FROM BookLending bl JOIN bl.user u JOIN bl.book b WHERE u.id IN :userIds AND bl.returnDate IS NULL " +
+           "AND (bl.dueDate < :now OR (bl.dueDate > :remindFrom AND bl.dueDate < :remindTo)) " +
+           "ORDER BY u.id, bl.dueDate, bl.id")
+    List<LendingNotice> findNotices(Collection<Long> userIds, LocalDateTime now, LocalDateTime remindFrom,
+                                    LocalDateTime remindTo);
 }
@@ -1,11 +1,13 @@
 package com.library.repository;
 
+import com.library.dto.analytics.GenreCount;
 import com.library.model.Book;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface BookRepository extends JpaRepository<Book, Long>, JpaSpecificationExecutor<Book> {
     Optional<Book> findByIsbn(String isbn);
@@ -17,4 +19,25 @@ public interface BookRepository extends JpaRepository<Book, Long>, JpaSpecificat
     
     @Query("SELECT b FROM Book b JOIN b.authors a WHERE a.id = :authorId")
     List<Book> findByAuthorId(Long authorId);
+
+    @Query("SELECT b.id FROM Book b JOIN b.authors a WHERE a.id = :authorId")
+    List<Long> findIdsByAuthorId(Long authorId);
+
+    @Query("SELECT b.genre AS genre, COUNT(b) AS count FROM Book b GROUP BY b.genre")
+    List<GenreCount> countBooksByGenre();
+
+    // (id, title, genre, summary) for the text index; must be consumed inside a transaction
+    @Query("SELECT b.id, b.title, b.genre, b.summary FROM Book b")
+    Stream<Object[]> streamTextFields();
+
+    // (id, title, genre) ordered by id; must be consumed inside a transaction
+    @Query("SELECT b.id, b.title, b.genre FROM Book b ORDER BY b.id")
+    Stream<Object[]> streamCatalog();
+
+    @Query("SELECT a.id FROM Book b JOIN b.authors a WHERE b.id = :bookId")
+    List<Long> findAuthorIds(Long bookId);
+
+    // (bookId, authorId) for every authorship; must be consumed inside a transaction
+    @Query("SELECT b.id, a.id FROM Book b JOIN b.authors a")
+    Stream<Object[]> streamBookAuthors();
 }
@@ -0,0 +1,22 @@
+package com.library.repository;
+
+import com.library.model.DailyBookActivity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailyBookActivityRepository extends JpaRepository<DailyBookActivity, Long> {
+    List<DailyBookActivity> findByActivityDateGreaterThanEqual(LocalDate since);
+    List<DailyBookActivity> findByActivityDateBetween(LocalDate from, LocalDate to);
+
+    // (bookId, month of year, borrows) over the whole history
+    @Query("SELECT d.bookId, MONTH(d.activityDate), SUM(d.borrows) FROM DailyBookActivity d " +
+           "GROUP BY d.bookId, MONTH(d.activityDate)")
+    List<Object[]> sumBorrowsByBookAndMonthOfYear();
+
+    @Modifying
+    @Query("DELETE FROM DailyBookActivity d WHERE d.activityDate >= :from AND d.activityDate < :to")
+    int deleteByActivityDateRange(LocalDate from, LocalDate to);
+}
@@ -0,0 +1,29 @@
+package com.library.repository;
+
+import com.library.model.DailyGenreActivity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailyGenreActivityRepository extends JpaRepository<DailyGenreActivity, Long> {
+    List<DailyGenreActivity> findByActivityDateGreaterThanEqual(LocalDate since);
+    List<DailyGenreActivity> findByActivityDateBetween(LocalDate from, LocalDate to);
+
+    @Query("SELECT MIN(d.activityDate) FROM DailyGenreActivity d")
+    LocalDate findEarliestActivityDate();
+
+    // (rows, borrows) up to and including the day, a fingerprint of the history a forecast was fitted on
+    @Query("SELECT COUNT(d), COALESCE(SUM(d.borrows), 0) FROM DailyGenreActivity d WHERE d.activityDate <= :through")
+    List<Object[]> summarizeThrough(LocalDate through);
+
+    // (day, borrows) across all genres, oldest first
+    @Query("SELECT d.activityDate, SUM(d.borrows) FROM DailyGenreActivity d " +
+           "GROUP BY d.activityDate ORDER BY d.activityDate")
+    List<Object[]> sumBorrowsByDay();
+
+    @Modifying
+    @Query("DELETE FROM DailyGenreActivity d WHERE d.activityDate >= :from AND d.activityDate < :to")
+    int deleteByActivityDateRange(LocalDate from, LocalDate to);
+}
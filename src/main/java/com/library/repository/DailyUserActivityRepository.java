@@ -0,0 +1,16 @@
+package com.library.repository;
+
+import com.library.model.DailyUserActivity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailyUserActivityRepository extends JpaRepository<DailyUserActivity, Long> {
+    List<DailyUserActivity> findByUserIdAndActivityDateGreaterThanEqual(Long userId, LocalDate since);
+
+    @Modifying
+    @Query("DELETE FROM DailyUserActivity d WHERE d.activityDate >= :from AND d.activityDate < :to")
+    int deleteByActivityDateRange(LocalDate from, LocalDate to);
+}
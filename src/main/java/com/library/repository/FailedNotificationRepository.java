@@ -0,0 +1,21 @@
+package com.library.repository;
+
+import com.library.model.FailedNotification;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import java.util.List;
+
+public interface FailedNotificationRepository extends JpaRepository<FailedNotification, Long> {
+    // Keyset page in id order: pass the last id of the previous page and PageRequest.of(0, size)
+    @Query("SELECT f FROM FailedNotification f WHERE f.id > :afterId AND f.id <= :maxId ORDER BY f.id")
+    List<FailedNotification> findPage(long afterId, long maxId, Pageable pageable);
+
+    @Query("SELECT MAX(f.id) FROM FailedNotification f")
+    Long findMaxId();
+
+    @Modifying
+    @Query("DELETE FROM FailedNotification f WHERE f.id <= :maxId")
+    int deleteUpTo(long maxId);
+}
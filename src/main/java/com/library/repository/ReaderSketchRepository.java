@@ -0,0 +1,16 @@
+package com.library.repository;
+
+import com.library.model.ReaderSketch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+public interface ReaderSketchRepository extends JpaRepository<ReaderSketch, Long> {
+    Optional<ReaderSketch> findByDimensionAndDimensionKeyAndMonth(ReaderSketch.Dimension dimension, String dimensionKey,
+                                                                  LocalDate month);
+
+    List<ReaderSketch> findByDimensionAndDimensionKeyAndMonthBetweenOrderByMonth(ReaderSketch.Dimension dimension,
+                                                                                  String dimensionKey,
+                                                                                  LocalDate from, LocalDate to);
+}
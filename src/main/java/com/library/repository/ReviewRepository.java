@@ -1,15 +1,51 @@
 package com.library.repository;
 
+import com.library.dto.analytics.BookRatingSummary;
 import com.library.model.Review;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ReviewRepository extends JpaRepository<Review, Long> {
+    List<Review> findByUserId(Long userId);
     List<Review> findByBookIdAndApprovedTrue(Long bookId);
     List<Review> findByUserIdAndApprovedTrue(Long userId);
+
+    @Query("SELECT r.book.id FROM Review r WHERE r.user.id = :userId")
+    List<Long> findBookIdsByUserId(Long userId);
     List<Review> findByApprovedFalse();
     
     @Query("SELECT AVG(r.rating) FROM Review r WHERE r.book.id = :bookId AND r.approved = true")
     Double getAverageRatingForBook(Long bookId);
+
+    // (bookId, average rating) of reviews approved and created after the given date
+    @Query("SELECT r.book.id, AVG(r.rating) FROM Review r " +
+           "WHERE r.approved = true AND r.createdAt > :since GROUP BY r.book.id")
+    List<Object[]> getAverageRatingsByBookAfterDate(LocalDateTime since);
+
+    // (id, rating) of every approved review
+    @Query("SELECT r.id, r.rating FROM Review r WHERE r.approved = true")
+    List<Object[]> findApprovedRatings();
+
+    // Books with at least minReviews approved reviews, best average first
+    @Query("SELECT b.id AS bookId, b.title AS bookTitle, AVG(r.rating) AS averageRating, COUNT(r) AS reviewCount " +
+           "FROM Review r JOIN r.book b WHERE r.approved = true GROUP BY b.id, b.title " +
+           "HAVING COUNT(r) >= :minReviews ORDER BY AVG(r.rating) DESC, COUNT(r) DESC, b.id")
+    List<BookRatingSummary> findTopRatedBooks(long minReviews, Pageable pageable);
+
+    // (userId, bookId, rating) for every approved review; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    @Query("SELECT r.user.id, r.book.id, r.rating FROM Review r WHERE r.approved = true")
+    Stream<Object[]> streamApprovedRatings();
+
+    // (id, userId, rating) for every review, approved or not, ordered by id; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    @Query("SELECT r.id, r.user.id, r.rating FROM Review r ORDER BY r.id")
+    Stream<Object[]> streamReviewFacts();
 }
@@ -0,0 +1,7 @@
+package com.library.repository;
+
+import com.library.model.RollupWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface RollupWatermarkRepository extends JpaRepository<RollupWatermark, String> {
+}
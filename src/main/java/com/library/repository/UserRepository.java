@@ -2,11 +2,21 @@ package com.library.repository;
 
 import com.library.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
     Boolean existsByUsername(String username);
     Boolean existsByEmail(String email);
+
+    // (id, username) ordered by id; must be consumed inside a transaction
+    @Query("SELECT u.id, u.username FROM User u ORDER BY u.id")
+    Stream<Object[]> streamIdAndUsername();
+
+    @Query("SELECT u.id FROM User u")
+    List<Long> findAllIds();
 }
@@ -5,6 +5,8 @@ import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 public class EmailService {
 
@@ -12,14 +14,26 @@ public class EmailService {
     private JavaMailSender emailSender;
 
     public void sendSimpleMessage(String to, String subject, String text) {
+        emailSender.send(message(to, subject, text));
+    }
+
+    public void sendOverdueNotification(String to, String bookTitle, String dueDate) {
+        emailSender.send(renderOverdueNotification(to, bookTitle, dueDate));
+    }
+
+    public void sendDueDateReminder(String to, String bookTitle, String dueDate) {
+        emailSender.send(renderDueDateReminder(to, bookTitle, dueDate));
+    }
+
+    public SimpleMailMessage message(String to, String subject, String text) {
         SimpleMailMessage message = new SimpleMailMessage();
         message.setTo(to);
         message.setSubject(subject);
         message.setText(text);
-        emailSender.send(message);
+        return message;
     }
 
-    public void sendOverdueNotification(String to, String bookTitle, String dueDate) {
+    public SimpleMailMessage renderOverdueNotification(String to, String bookTitle, String dueDate) {
         String subject = "Library Book Overdue Notice";
         String text = String.format(
             "Dear Library Member,\n\n" +
@@ -31,10 +45,10 @@ public class EmailService {
             "Your Library Team",
             bookTitle, dueDate
         );
-        sendSimpleMessage(to, subject, text);
+        return message(to, subject, text);
     }
 
-    public void sendDueDateReminder(String to, String bookTitle, String dueDate) {
+    public SimpleMailMessage renderDueDateReminder(String to, String bookTitle, String dueDate) {
         String subject = "Library Book Due Date Reminder";
         String text = String.format(
             "Dear Library Member,\n\n" +
@@ -46,6 +60,26 @@ public class EmailService {
             "Your Library Team",
             bookTitle, dueDate
         );
-        sendSimpleMessage(to, subject, text);
+        return message(to, subject, text);
+    }
+
+    // One message for all of a member's overdue and due-soon books; each entry is a book title with its due date
+    public SimpleMailMessage renderNoticeDigest(String to, List<String> overdueBooks, List<String> dueSoonBooks) {
+        StringBuilder text = new StringBuilder("Dear Library Member,\n\n");
+        if (!overdueBooks.isEmpty()) {
+            text.append("The following books are overdue:\n");
+            overdueBooks.forEach(book -> text.append("- ").append(book).append('\n'));
+            text.append("Please return them as soon as possible to avoid any penalties.\n\n");
+        }
+        if (!dueSoonBooks.isEmpty()) {
+            text.append("The following books are due soon:\n");
+            dueSoonBooks.forEach(book -> text.append("- ").append(book).append('\n'));
+            text.append("Please return them by the due date to avoid any late fees.\n\n");
+        }
+        text.append("Best regards,\nYour Library Team");
+        String subject = overdueBooks.isEmpty()
+            ? "Library Books Due Date Reminder"
+            : "Library Books Overdue Notice";
+        return message(to, subject, text.toString());
     }
 }
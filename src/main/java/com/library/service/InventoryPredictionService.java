@@ -2,187 +2,193 @@ package com.library.service;
 
 import com.library.model.*;
 import com.library.repository.*;
+import com.library.service.analytics.LendingFactStore;
+import com.library.service.analytics.LendingFacts;
+import com.library.service.analytics.forecast.DemandForecastService;
+import com.library.service.analytics.report.ReportSectionExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.Month;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
 public class InventoryPredictionService {
 
+    // Longest window predictDemand looks at
+    private static final int DEMAND_HISTORY_DAYS = 90;
+    // Turnover and demand trend compare the last two periods of this length
+    private static final int TREND_PERIOD_DAYS = 30;
+
     @Autowired
     private BookRepository bookRepository;
 
     @Autowired
-    private BookLendingRepository lendingRepository;
+    private LendingFactStore lendingFactStore;
 
     @Autowired
     private ReviewRepository reviewRepository;
 
+    @Autowired
+    private DailyBookActivityRepository bookActivityRepository;
+
+    @Autowired
+    private DemandForecastService demandForecastService;
+
+    @Autowired
+    private ReportSectionExecutor sectionExecutor;
+
     public Map<String, Object> analyzeInventory() {
-        Map<String, Object> analysis = new HashMap<>();
-        
-        analysis.put("inventoryHealth", analyzeInventoryHealth());
-        analysis.put("demandPredictions", predictDemand());
-        analysis.put("acquisitionRecommendations", recommendAcquisitions());
-        analysis.put("maintenanceNeeds", analyzeMaintenanceNeeds());
-        
-        return analysis;
+        // All four sections read the same per-book features, extracted once by whichever section starts first
+        Supplier<List<BookFeatures>> features = ReportSectionExecutor.shared(this::extractFeatures);
+
+        return sectionExecutor.report("inventory")
+            .section("inventoryHealth", () -> analyzeInventoryHealth(features.get()))
+            .section("demandPredictions", () -> predictDemand(features.get()))
+            .section("acquisitionRecommendations", () -> recommendAcquisitions(features.get()))
+            .section("maintenanceNeeds", () -> analyzeMaintenanceNeeds(features.get()))
+            .collect();
     }
 
-    private List<Map<String, Object>> analyzeInventoryHealth() {
+    // One catalog load, one parallel pass over the lending facts, one read of the rollups and one forecast
+    // run, then the features of each book are computed in parallel
+    private List<BookFeatures> extractFeatures() {
         List<Book> books = bookRepository.findAll();
+        LocalDateTime now = LocalDateTime.now();
+        LendingCounts counts = countLendings(now);
+        Map<Long, BookDemand> demandByBook = loadDemandFromRollups(now.toLocalDate());
+        // Mean forecast daily borrows over the next 7, 30 and 90 days, for the whole catalog in one pass
+        Map<Long, double[]> forecasts = demandForecastService.getModel().meanBookForecasts(7, 30, 90);
         
-        return books.stream()
+        return books.parallelStream()
+            .map(book -> {
+                int code = counts.facts().findBookCode(book.getId());
+                long total = code < 0 ? 0 : counts.total()[code];
+                long open = code < 0 ? 0 : counts.open()[code];
+                long recent = code < 0 ? 0 : counts.recent()[code];
+                long previous = code < 0 ? 0 : counts.previous()[code];
+                return new BookFeatures(
+                    book,
+                    total,
+                    book.getTotalCopies() == 0 ? 0.0 : (double) open / book.getTotalCopies(),
+                    (double) recent / TREND_PERIOD_DAYS,
+                    previous == 0 ? 1.0 : (double) recent / previous,
+                    demandByBook.getOrDefault(book.getId(), new BookDemand()),
+                    forecasts.getOrDefault(book.getId(), new double[3]));
+            })
+            .collect(Collectors.toList());
+    }
+
+    // Per book: all lendings, open lendings, borrowed in the last period and borrowed in the period before
+    private LendingCounts countLendings(LocalDateTime now) {
+        LendingFacts facts = lendingFactStore.getFacts();
+        long periodStart = LendingFacts.toEpochSecond(now.minusDays(TREND_PERIOD_DAYS));
+        long previousStart = LendingFacts.toEpochSecond(now.minusDays(2L * TREND_PERIOD_DAYS));
+        long[][] counts = facts.scan().aggregate(
+            () -> new long[4][facts.bookCount()],
+            (acc, f, row) -> {
+                int book = f.bookCode(row);
+                long borrowed = f.borrowedAt(row);
+                acc[0][book]++;
+                if (f.isOpen(row)) {
+                    acc[1][book]++;
+                }
+                if (borrowed > periodStart) {
+                    acc[2][book]++;
+                } else if (borrowed > previousStart && borrowed < periodStart) {
+                    acc[3][book]++;
+                }
+            },
+            (left, right) -> {
+                for (int column = 0; column < left.length; column++) {
+                    for (int book = 0; book < left[column].length; book++) {
+                        left[column][book] += right[column][book];
+                    }
+                }
+                return left;
+            });
+        return new LendingCounts(facts, counts[0], counts[1], counts[2], counts[3]);
+    }
+
+    private List<Map<String, Object>> analyzeInventoryHealth(List<BookFeatures> features) {
+        return features.stream()
             .map(this::calculateInventoryMetrics)
             .collect(Collectors.toList());
     }
 
-    private Map<String, Object> calculateInventoryMetrics(Book book) {
+    private Map<String, Object> calculateInventoryMetrics(BookFeatures features) {
         Map<String, Object> metrics = new HashMap<>();
-        List<BookLending> lendings = lendingRepository.findByBookId(book.getId());
-        LocalDateTime now = LocalDateTime.now();
+        Book book = features.book();
         
         metrics.put("bookId", book.getId());
         metrics.put("title", book.getTitle());
         metrics.put("totalCopies", book.getTotalCopies());
         metrics.put("availableCopies", book.getAvailableCopies());
-        metrics.put("utilization", calculateUtilization(book, lendings));
-        metrics.put("turnoverRate", calculateTurnoverRate(lendings, now));
-        metrics.put("condition", assessBookCondition(lendings));
+        metrics.put("utilization", features.utilization());
+        metrics.put("turnoverRate", features.turnoverRate());
+        metrics.put("condition", features.condition());
         
         return metrics;
     }
 
-    private double calculateUtilization(Book book, List<BookLending> lendings) {
-        if (book.getTotalCopies() == 0) return 0.0;
-        
-        long activeLendings = lendings.stream()
-            .filter(lending -> lending.getReturnDate() == null)
-            .count();
-        
-        return (double) activeLendings / book.getTotalCopies();
-    }
-
-    private double calculateTurnoverRate(List<BookLending> lendings, LocalDateTime now) {
-        LocalDateTime thirtyDaysAgo = now.minusDays(30);
-        
-        long monthlyLendings = lendings.stream()
-            .filter(lending -> lending.getBorrowDate().isAfter(thirtyDaysAgo))
-            .count();
-        
-        return (double) monthlyLendings / 30.0;
-    }
-
-    private String assessBookCondition(List<BookLending> lendings) {
-        long totalLendings = lendings.size();
-        
-        if (totalLendings > 100) return "NEEDS_REPLACEMENT";
-        if (totalLendings > 50) return "WORN";
-        if (totalLendings > 20) return "MODERATE";
-        return "GOOD";
-    }
-
-    private List<Map<String, Object>> predictDemand() {
-        List<Book> books = bookRepository.findAll();
-        LocalDateTime now = LocalDateTime.now();
-        
-        return books.stream()
-            .map(book -> {
+    private List<Map<String, Object>> predictDemand(List<BookFeatures> features) {
+        return features.stream()
+            .map(bookFeatures -> {
                 Map<String, Object> demand = new HashMap<>();
-                List<BookLending> lendings = lendingRepository.findByBookId(book.getId());
+                Book book = bookFeatures.book();
                 
                 demand.put("bookId", book.getId());
                 demand.put("title", book.getTitle());
-                demand.put("currentDemand", calculateCurrentDemand(lendings, now));
-                demand.put("projectedDemand", projectDemand(lendings, now));
-                demand.put("seasonalFactors", analyzeSeasonality(lendings));
+                demand.put("currentDemand", bookFeatures.demand().borrowsInLastDays(7) / 7.0);
+                demand.put("projectedDemand", projections(bookFeatures.forecast()));
+                demand.put("seasonalFactors", bookFeatures.demand().seasonality());
                 
                 return demand;
             })
             .collect(Collectors.toList());
     }
 
-    private double calculateCurrentDemand(List<BookLending> lendings, LocalDateTime now) {
-        LocalDateTime sevenDaysAgo = now.minusDays(7);
-        
-        long recentLendings = lendings.stream()
-            .filter(lending -> lending.getBorrowDate().isAfter(sevenDaysAgo))
-            .count();
-        
-        return (double) recentLendings / 7.0;
+    // Two grouped reads of the daily rollup replace one findByBookId per book
+    private Map<Long, BookDemand> loadDemandFromRollups(LocalDate today) {
+        Map<Long, BookDemand> demandByBook = new HashMap<>();
+        LocalDate since = today.minusDays(DEMAND_HISTORY_DAYS - 1);
+        for (DailyBookActivity day : bookActivityRepository.findByActivityDateGreaterThanEqual(since)) {
+            int daysAgo = (int) ChronoUnit.DAYS.between(day.getActivityDate(), today);
+            if (daysAgo >= 0 && daysAgo < DEMAND_HISTORY_DAYS) {
+                demandByBook.computeIfAbsent(day.getBookId(), id -> new BookDemand()).recent[daysAgo] += day.getBorrows();
+            }
+        }
+        for (Object[] row : bookActivityRepository.sumBorrowsByBookAndMonthOfYear()) {
+            BookDemand demand = demandByBook.computeIfAbsent((Long) row[0], id -> new BookDemand());
+            demand.byMonth[((Number) row[1]).intValue()] = ((Number) row[2]).longValue();
+        }
+        return demandByBook;
     }
 
-    private Map<String, Double> projectDemand(List<BookLending> lendings, LocalDateTime now) {
+    private Map<String, Double> projections(double[] means) {
         Map<String, Double> projections = new HashMap<>();
-        
-        // Short-term (7 days)
-        projections.put("shortTerm", calculateProjection(lendings, now, 7));
-        
-        // Medium-term (30 days)
-        projections.put("mediumTerm", calculateProjection(lendings, now, 30));
-        
-        // Long-term (90 days)
-        projections.put("longTerm", calculateProjection(lendings, now, 90));
-        
+        projections.put("shortTerm", means[0]);
+        projections.put("mediumTerm", means[1]);
+        projections.put("longTerm", means[2]);
         return projections;
     }
 
-    private double calculateProjection(List<BookLending> lendings, LocalDateTime now, int days) {
-        LocalDateTime startDate = now.minusDays(days);
-        
-        long historicalLendings = lendings.stream()
-            .filter(lending -> lending.getBorrowDate().isAfter(startDate))
-            .count();
-        
-        double baseProjection = (double) historicalLendings / days;
-        double seasonalFactor = calculateSeasonalFactor(lendings, now);
-        
-        return baseProjection * seasonalFactor;
-    }
-
-    private double calculateSeasonalFactor(List<BookLending> lendings, LocalDateTime now) {
-        int currentMonth = now.getMonthValue();
-        
-        Map<Integer, Long> monthlyLendings = lendings.stream()
-            .collect(Collectors.groupingBy(
-                lending -> lending.getBorrowDate().getMonthValue(),
-                Collectors.counting()
-            ));
-        
-        double averageLendings = monthlyLendings.values().stream()
-            .mapToLong(Long::longValue)
-            .average()
-            .orElse(1.0);
-        
-        return monthlyLendings.getOrDefault(currentMonth, (long) averageLendings) / averageLendings;
-    }
-
-    private Map<String, Long> analyzeSeasonality(List<BookLending> lendings) {
-        return lendings.stream()
-            .collect(Collectors.groupingBy(
-                lending -> lending.getBorrowDate().getMonth().toString(),
-                Collectors.counting()
-            ));
-    }
-
-    private List<Map<String, Object>> recommendAcquisitions() {
-        List<Book> books = bookRepository.findAll();
-        LocalDateTime now = LocalDateTime.now();
-        
-        return books.stream()
-            .map(book -> {
+    private List<Map<String, Object>> recommendAcquisitions(List<BookFeatures> features) {
+        return features.stream()
+            .map(bookFeatures -> {
                 Map<String, Object> recommendation = new HashMap<>();
-                List<BookLending> lendings = lendingRepository.findByBookId(book.getId());
+                Book book = bookFeatures.book();
                 
                 recommendation.put("bookId", book.getId());
                 recommendation.put("title", book.getTitle());
-                recommendation.put("recommendedCopies", calculateRecommendedCopies(book, lendings, now));
-                recommendation.put("priority", calculateAcquisitionPriority(book, lendings, now));
-                recommendation.put("reason", determineAcquisitionReason(book, lendings, now));
+                recommendation.put("recommendedCopies", calculateRecommendedCopies(bookFeatures));
+                recommendation.put("priority", calculateAcquisitionPriority(bookFeatures));
+                recommendation.put("reason", determineAcquisitionReason(bookFeatures));
                 
                 return recommendation;
             })
@@ -191,67 +197,42 @@ public class InventoryPredictionService {
             .collect(Collectors.toList());
     }
 
-    private int calculateRecommendedCopies(Book book, List<BookLending> lendings, LocalDateTime now) {
-        double projectedDemand = calculateProjection(lendings, now, 30);
-        int currentCopies = book.getTotalCopies();
+    private int calculateRecommendedCopies(BookFeatures features) {
+        double projectedDemand = features.forecast()[1];
+        int currentCopies = features.book().getTotalCopies();
         int recommendedCopies = (int) Math.ceil(projectedDemand * 1.5);
         
         return Math.max(0, recommendedCopies - currentCopies);
     }
 
-    private String calculateAcquisitionPriority(Book book, List<BookLending> lendings, LocalDateTime now) {
-        double utilization = calculateUtilization(book, lendings);
-        double demandTrend = calculateDemandTrend(lendings, now);
+    private String calculateAcquisitionPriority(BookFeatures features) {
+        double utilization = features.utilization();
+        double demandTrend = features.demandTrend();
         
         if (utilization > 0.9 && demandTrend > 1.5) return "HIGH";
         if (utilization > 0.7 || demandTrend > 1.2) return "MEDIUM";
         return "LOW";
     }
 
-    private String determineAcquisitionReason(Book book, List<BookLending> lendings, LocalDateTime now) {
-        double utilization = calculateUtilization(book, lendings);
-        double demandTrend = calculateDemandTrend(lendings, now);
-        String condition = assessBookCondition(lendings);
-        
-        if (condition.equals("NEEDS_REPLACEMENT")) return "REPLACEMENT_NEEDED";
-        if (utilization > 0.9) return "HIGH_UTILIZATION";
-        if (demandTrend > 1.5) return "INCREASING_DEMAND";
+    private String determineAcquisitionReason(BookFeatures features) {
+        if (features.condition().equals("NEEDS_REPLACEMENT")) return "REPLACEMENT_NEEDED";
+        if (features.utilization() > 0.9) return "HIGH_UTILIZATION";
+        if (features.demandTrend() > 1.5) return "INCREASING_DEMAND";
         return "NORMAL_REPLENISHMENT";
     }
 
-    private double calculateDemandTrend(List<BookLending> lendings, LocalDateTime now) {
-        LocalDateTime thirtyDaysAgo = now.minusDays(30);
-        LocalDateTime sixtyDaysAgo = now.minusDays(60);
-        
-        long recentLendings = lendings.stream()
-            .filter(lending -> lending.getBorrowDate().isAfter(thirtyDaysAgo))
-            .count();
-        
-        long previousLendings = lendings.stream()
-            .filter(lending -> 
-                lending.getBorrowDate().isAfter(sixtyDaysAgo) && 
-                lending.getBorrowDate().isBefore(thirtyDaysAgo))
-            .count();
-        
-        if (previousLendings == 0) return 1.0;
-        return (double) recentLendings / previousLendings;
-    }
-
-    private List<Map<String, Object>> analyzeMaintenanceNeeds() {
-        List<Book> books = bookRepository.findAll();
-        LocalDateTime now = LocalDateTime.now();
-        
-        return books.stream()
-            .map(book -> {
+    private List<Map<String, Object>> analyzeMaintenanceNeeds(List<BookFeatures> features) {
+        return features.stream()
+            .map(bookFeatures -> {
                 Map<String, Object> maintenance = new HashMap<>();
-                List<BookLending> lendings = lendingRepository.findByBookId(book.getId());
+                Book book = bookFeatures.book();
                 
                 maintenance.put("bookId", book.getId());
                 maintenance.put("title", book.getTitle());
-                maintenance.put("condition", assessBookCondition(lendings));
-                maintenance.put("maintenanceType", determineMaintenanceType(lendings));
-                maintenance.put("priority", calculateMaintenancePriority(book, lendings, now));
-                maintenance.put("estimatedCost", estimateMaintenanceCost(lendings));
+                maintenance.put("condition", bookFeatures.condition());
+                maintenance.put("maintenanceType", bookFeatures.maintenanceType());
+                maintenance.put("priority", calculateMaintenancePriority(bookFeatures));
+                maintenance.put("estimatedCost", estimateMaintenanceCost(bookFeatures.maintenanceType()));
                 
                 return maintenance;
             })
@@ -260,18 +241,9 @@ public class InventoryPredictionService {
             .collect(Collectors.toList());
     }
 
-    private String determineMaintenanceType(List<BookLending> lendings) {
-        long totalLendings = lendings.size();
-        
-        if (totalLendings > 100) return "REPLACEMENT";
-        if (totalLendings > 50) return "MAJOR_REPAIR";
-        if (totalLendings > 20) return "MINOR_REPAIR";
-        return "NONE";
-    }
-
-    private String calculateMaintenancePriority(Book book, List<BookLending> lendings, LocalDateTime now) {
-        String condition = assessBookCondition(lendings);
-        double utilization = calculateUtilization(book, lendings);
+    private String calculateMaintenancePriority(BookFeatures features) {
+        String condition = features.condition();
+        double utilization = features.utilization();
         
         if (condition.equals("NEEDS_REPLACEMENT") && utilization > 0.7) return "URGENT";
         if (condition.equals("WORN") && utilization > 0.5) return "HIGH";
@@ -279,9 +251,7 @@ public class InventoryPredictionService {
         return "LOW";
     }
 
-    private double estimateMaintenanceCost(List<BookLending> lendings) {
-        String maintenanceType = determineMaintenanceType(lendings);
-        
+    private double estimateMaintenanceCost(String maintenanceType) {
         switch (maintenanceType) {
             case "REPLACEMENT": return 50.0;
             case "MAJOR_REPAIR": return 25.0;
@@ -289,4 +259,49 @@ public class InventoryPredictionService {
             default: return 0.0;
         }
     }
+
+    private record LendingCounts(LendingFacts facts, long[] total, long[] open, long[] recent, long[] previous) {}
+
+    // Everything the inventory sections need to know about one book
+    private record BookFeatures(Book book, long totalLendings, double utilization, double turnoverRate,
+                                double demandTrend, BookDemand demand, double[] forecast) {
+
+        String condition() {
+            if (totalLendings > 100) return "NEEDS_REPLACEMENT";
+            if (totalLendings > 50) return "WORN";
+            if (totalLendings > 20) return "MODERATE";
+            return "GOOD";
+        }
+
+        String maintenanceType() {
+            if (totalLendings > 100) return "REPLACEMENT";
+            if (totalLendings > 50) return "MAJOR_REPAIR";
+            if (totalLendings > 20) return "MINOR_REPAIR";
+            return "NONE";
+        }
+    }
+
+    // Per-book borrow history: the last DEMAND_HISTORY_DAYS days (index 0 is today) and totals per month of year
+    private static class BookDemand {
+        private final long[] recent = new long[DEMAND_HISTORY_DAYS];
+        private final long[] byMonth = new long[13];
+
+        long borrowsInLastDays(int days) {
+            long total = 0;
+            for (int i = 0; i < days; i++) {
+                total += recent[i];
+            }
+            return total;
+        }
+
+        Map<String, Long> seasonality() {
+            Map<String, Long> seasonality = new HashMap<>();
+            for (int month = 1; month <= 12; month++) {
+                if (byMonth[month] > 0) {
+                    seasonality.put(Month.of(month).toString(), byMonth[month]);
+                }
+            }
+            return seasonality;
+        }
+    }
 }
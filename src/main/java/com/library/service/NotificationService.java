@@ -1,67 +1,164 @@
 package com.library.service;
 
-import com.library.model.BookLending;
+import com.library.dto.LendingNotice;
 import com.library.repository.BookLendingRepository;
+import com.library.repository.FailedNotificationRepository;
+import com.library.service.notification.MailDispatcher;
+import com.library.service.notification.OutgoingMail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.SimpleMailMessage;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
+// Daily notification run: every member with overdue or soon-due books gets one message covering all of
+// them, instead of one email per lending and per kind. Members are read in keyset pages, their open
+// notices with book and member in one query per page, and the digests are handed to MailDispatcher,
+// which renders and sends them in parallel batches with retries.
 @Service
 public class NotificationService {
 
+    private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
+
+    public static final String DIGEST = "DIGEST";
+
     @Autowired
     private BookLendingRepository lendingRepository;
 
+    @Autowired
+    private FailedNotificationRepository failedNotificationRepository;
+
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private MailDispatcher mailDispatcher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Books due strictly between now + from and now + to get a reminder; the defaults match the previous
+    // "due tomorrow" run
+    @Value("${notifications.digest.reminder-from-hours:24}")
+    private long reminderFromHours;
+
+    @Value("${notifications.digest.reminder-to-hours:48}")
+    private long reminderToHours;
+
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMMM d, yyyy");
 
-    // Run daily at 9:00 AM
-    @Scheduled(cron = "0 0 9 * * *")
-    public void sendOverdueNotifications() {
-        List<BookLending> overdueBooks = lendingRepository.findOverdueBooks(LocalDateTime.now());
-        
-        for (BookLending lending : overdueBooks) {
-            try {
-                emailService.sendOverdueNotification(
-                    lending.getUser().getEmail(),
-                    lending.getBook().getTitle(),
-                    lending.getDueDate().format(DATE_FORMATTER)
-                );
-            } catch (Exception e) {
-                // Log the error but continue processing other notifications
-                System.err.println("Failed to send overdue notification: " + e.getMessage());
-            }
+    private record MemberDigest(Long userId, String email, List<LendingNotice> overdue, List<LendingNotice> dueSoon) {}
+
+    @Scheduled(cron = "${notifications.digest.cron:0 0 9 * * *}")
+    public Map<String, Object> sendNotificationDigests() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime remindFrom = now.plusHours(reminderFromHours);
+        LocalDateTime remindTo = now.plusHours(reminderToHours);
+        LongAdder notices = new LongAdder();
+
+        Map<String, Object> result = new LinkedHashMap<>(mailDispatcher.dispatch(DIGEST,
+            (after, size) -> {
+                long afterUserId = after == null ? 0L : after.userId();
+                // Members whose loans were all returned since their id was read drop out of the page,
+                // so keep reading until a page has digests or there are no members left
+                while (true) {
+                    List<Long> userIds = lendingRepository.findNoticeUserIds(now, remindFrom, remindTo, afterUserId,
+                        PageRequest.of(0, size));
+                    if (userIds.isEmpty()) {
+                        return List.of();
+                    }
+                    List<LendingNotice> page = lendingRepository.findNotices(userIds, now, remindFrom, remindTo);
+                    notices.add(page.size());
+                    List<MemberDigest> digests = groupByMember(page, now);
+                    if (!digests.isEmpty()) {
+                        return digests;
+                    }
+                    afterUserId = userIds.get(userIds.size() - 1);
+                }
+            },
+            this::render));
+        long messages = (Long) result.get("recipients");
+        result.put("notices", notices.sum());
+        result.put("noticesPerMessage", messages == 0 ? 0.0 : (double) notices.sum() / messages);
+        return result;
+    }
+
+    // Sends every stored dead letter again, then removes them; the ones that fail again are stored anew under
+    // their own kind, so an interrupted replay sends some messages twice rather than losing any. If a failed
+    // one could not be stored, nothing is removed and the next replay sends the whole table again.
+    public Map<String, Object> replayFailedNotifications() {
+        Long maxId = failedNotificationRepository.findMaxId();
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (maxId == null) {
+            result.put("replayed", 0);
+            return result;
         }
+        Map<String, Object> dispatched = mailDispatcher.dispatch("REPLAY",
+            (after, size) -> failedNotificationRepository.findPage(after == null ? 0L : after.getId(), maxId, PageRequest.of(0, size)),
+            letter -> new OutgoingMail(letter.getKind(), letter.getReference(),
+                emailService.message(letter.getRecipient(), letter.getSubject(), letter.getBody())));
+        result.putAll(dispatched);
+        if ((Long) dispatched.get("unstored") > 0) {
+            log.warn("Kept failed notifications up to id {}: {} that failed again could not be stored",
+                maxId, dispatched.get("unstored"));
+            result.put("replayed", 0);
+            return result;
+        }
+        int removed = new TransactionTemplate(transactionManager)
+            .execute(status -> failedNotificationRepository.deleteUpTo(maxId));
+        result.put("replayed", removed);
+        return result;
     }
 
-    // Run daily at 9:00 AM
-    @Scheduled(cron = "0 0 9 * * *")
-    public void sendDueDateReminders() {
-        LocalDateTime tomorrow = LocalDateTime.now().plusDays(1);
-        LocalDateTime dayAfterTomorrow = LocalDateTime.now().plusDays(2);
-        
-        List<BookLending> dueSoonBooks = lendingRepository.findAll().stream()
-            .filter(lending -> lending.getReturnDate() == null &&
-                    lending.getDueDate().isAfter(tomorrow) &&
-                    lending.getDueDate().isBefore(dayAfterTomorrow))
-            .toList();
+    public Map<String, Object> getMetrics() {
+        return mailDispatcher.getMetrics();
+    }
 
-        for (BookLending lending : dueSoonBooks) {
-            try {
-                emailService.sendDueDateReminder(
-                    lending.getUser().getEmail(),
-                    lending.getBook().getTitle(),
-                    lending.getDueDate().format(DATE_FORMATTER)
-                );
-            } catch (Exception e) {
-                System.err.println("Failed to send due date reminder: " + e.getMessage());
+    // Notices arrive ordered by member, so each member's run of rows becomes one digest
+    private static List<MemberDigest> groupByMember(List<LendingNotice> notices, LocalDateTime now) {
+        List<MemberDigest> digests = new ArrayList<>();
+        MemberDigest current = null;
+        for (LendingNotice notice : notices) {
+            if (current == null || !current.userId().equals(notice.getUserId())) {
+                current = new MemberDigest(notice.getUserId(), notice.getEmail(), new ArrayList<>(), new ArrayList<>());
+                digests.add(current);
             }
+            (notice.getDueDate().isBefore(now) ? current.overdue() : current.dueSoon()).add(notice);
         }
+        return digests;
+    }
+
+    // A member with a single notice gets the usual single-book message
+    private OutgoingMail render(MemberDigest digest) {
+        SimpleMailMessage message;
+        if (digest.overdue().size() + digest.dueSoon().size() == 1) {
+            LendingNotice only = digest.overdue().isEmpty() ? digest.dueSoon().get(0) : digest.overdue().get(0);
+            String dueDate = only.getDueDate().format(DATE_FORMATTER);
+            message = digest.overdue().isEmpty()
+                ? emailService.renderDueDateReminder(digest.email(), only.getBookTitle(), dueDate)
+                : emailService.renderOverdueNotification(digest.email(), only.getBookTitle(), dueDate);
+        } else {
+            message = emailService.renderNoticeDigest(digest.email(), describe(digest.overdue()), describe(digest.dueSoon()));
+        }
+        return new OutgoingMail(digest.userId(), message);
+    }
+
+    private static List<String> describe(List<LendingNotice> notices) {
+        return notices.stream()
+            .map(notice -> notice.getBookTitle() + " (due " + notice.getDueDate().format(DATE_FORMATTER) + ")")
+            .toList();
     }
 }
@@ -2,17 +2,33 @@ package com.library.service;
 
 import com.library.model.*;
 import com.library.repository.*;
+import com.library.service.analytics.BookWindowAggregator;
+import com.library.service.analytics.LendingFactStore;
+import com.library.service.analytics.LendingFacts;
+import com.library.service.analytics.forecast.DemandForecastService;
+import com.library.service.analytics.forecast.ForecastModel;
+import com.library.service.analytics.report.ReportSectionExecutor;
+import com.library.service.streaming.JsonStreams.RowSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Service
 public class PredictiveAnalyticsService {
 
+    private static final int TREND_PERIOD_DAYS = 30;
+
     @Autowired
     private BookLendingRepository lendingRepository;
 
@@ -20,105 +36,95 @@ public class PredictiveAnalyticsService {
     private BookRepository bookRepository;
 
     @Autowired
-    private ReviewRepository reviewRepository;
+    private DemandForecastService demandForecastService;
+
+    @Autowired
+    private BookWindowAggregator windowAggregator;
+
+    @Autowired
+    private LendingFactStore lendingFactStore;
+
+    @Autowired
+    private ReportSectionExecutor sectionExecutor;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     public Map<String, Object> getPredictions() {
         Map<String, Object> predictions = new HashMap<>();
-        
-        predictions.put("demandForecast", generateDemandForecast());
-        predictions.put("popularityTrends", analyzePopularityTrends());
-        predictions.put("returnPredictions", predictReturns());
-        predictions.put("genreTrends", analyzeGenreTrends());
-        
+        forEachSection((name, value) -> predictions.put(name, value instanceof RowSource<?> rows ? rows.toList() : value));
         return predictions;
     }
 
-    private List<Map<String, Object>> generateDemandForecast() {
-        // Get historical lending data
-        List<BookLending> historicalLendings = lendingRepository.findAll();
-        
-        // Group by date and count
-        Map<LocalDateTime, Long> dailyCounts = historicalLendings.stream()
-            .collect(Collectors.groupingBy(
-                lending -> lending.getBorrowDate().truncatedTo(ChronoUnit.DAYS),
-                Collectors.counting()
-            ));
+    // Sections run concurrently and are handed to the sink in order as each completes, so a streaming
+    // writer can serialize and drop one while the later ones are still being computed. The two per-book and
+    // per-loan sections are RowSources whose entries are built only as they are written; the forecast and
+    // the genre trends are bounded by the horizon and the number of genres.
+    public void forEachSection(BiConsumer<String, Object> sink) {
+        // Both trend sections share one catalog load and one set of window counts
+        Supplier<TrendInputs> trendInputs = ReportSectionExecutor.shared(() -> new TrendInputs(
+            bookRepository.findAll(),
+            windowAggregator.compute(LocalDateTime.now().minusDays(TREND_PERIOD_DAYS), TREND_PERIOD_DAYS)));
+
+        sectionExecutor.report("predictions")
+            .section("demandForecast", this::generateDemandForecast)
+            .section("popularityTrends", () -> analyzePopularityTrends(trendInputs.get().books(), trendInputs.get().windows()))
+            .section("returnPredictions", this::predictReturns)
+            .section("genreTrends", () -> analyzeGenreTrends(trendInputs.get().books(), trendInputs.get().windows()))
+            .forEach(sink);
+    }
 
-        // Calculate moving average and trend
+    private record TrendInputs(List<Book> books, BookWindowAggregator.Windows windows) {}
+
+    private List<Map<String, Object>> generateDemandForecast() {
+        // Library-wide demand from the Holt-Winters state; step i is the (i + 1)th day after the last day
+        // the state observed, and there is no forecast before its first update
+        ForecastModel model = demandForecastService.getModel();
+        Optional<LocalDate> lastObserved = model.getLastObserved();
+        if (lastObserved.isEmpty()) {
+            return List.of();
+        }
+        double[] daily = model.forecastTotal(30);
         List<Map<String, Object>> forecast = new ArrayList<>();
-        LocalDateTime today = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS);
         
-        // Predict next 30 days
-        for (int i = 0; i < 30; i++) {
-            LocalDateTime date = today.plusDays(i);
-            double prediction = calculateDemandPrediction(dailyCounts, date);
-            
+        for (int i = 0; i < daily.length; i++) {
             Map<String, Object> dataPoint = new HashMap<>();
-            dataPoint.put("date", date);
-            dataPoint.put("predictedDemand", prediction);
+            dataPoint.put("date", lastObserved.get().plusDays(i + 1).atStartOfDay());
+            dataPoint.put("predictedDemand", daily[i]);
             forecast.add(dataPoint);
         }
         
         return forecast;
     }
 
-    private double calculateDemandPrediction(Map<LocalDateTime, Long> historicalData, LocalDateTime targetDate) {
-        // Simple exponential smoothing with seasonal adjustment
-        double alpha = 0.2; // smoothing factor
-        double baseline = historicalData.values().stream()
-            .mapToLong(Long::longValue)
-            .average()
-            .orElse(0.0);
-        
-        // Apply day-of-week seasonality
-        int dayOfWeek = targetDate.getDayOfWeek().getValue();
-        double seasonalFactor = calculateSeasonalFactor(historicalData, dayOfWeek);
-        
-        return baseline * seasonalFactor * (1 + alpha);
-    }
-
-    private double calculateSeasonalFactor(Map<LocalDateTime, Long> historicalData, int dayOfWeek) {
-        // Calculate average lending count for each day of the week
-        Map<Integer, Double> dayAverages = historicalData.entrySet().stream()
-            .collect(Collectors.groupingBy(
-                entry -> entry.getKey().getDayOfWeek().getValue(),
-                Collectors.averagingLong(entry -> entry.getValue())
-            ));
-        
-        double overallAverage = dayAverages.values().stream()
-            .mapToDouble(Double::doubleValue)
-            .average()
-            .orElse(1.0);
-        
-        return dayAverages.getOrDefault(dayOfWeek, overallAverage) / overallAverage;
-    }
-
-    private List<Map<String, Object>> analyzePopularityTrends() {
-        List<Book> books = bookRepository.findAll();
-        LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
+    private RowSource<Map<String, Object>> analyzePopularityTrends(List<Book> books, BookWindowAggregator.Windows windows) {
+        // Only the scores are kept for the sort; each book's entry is built when it is written
+        double[] scores = new double[books.size()];
+        for (int i = 0; i < scores.length; i++) {
+            Long bookId = books.get(i).getId();
+            scores[i] = calculatePopularityScore(windows.currentLendings(bookId), windows.recentRating(bookId));
+        }
+        int[] order = IntStream.range(0, scores.length).boxed()
+            .sorted(Comparator.comparingDouble(i -> scores[i]))
+            .mapToInt(Integer::intValue)
+            .toArray();
         
-        return books.stream()
-            .map(book -> {
+        return sink -> {
+            for (int i : order) {
+                Book book = books.get(i);
                 Map<String, Object> trend = new HashMap<>();
                 trend.put("bookId", book.getId());
                 trend.put("title", book.getTitle());
                 
                 // Calculate recent popularity metrics
-                long recentLendings = lendingRepository.countByBookIdAndBorrowDateAfter(
-                    book.getId(), thirtyDaysAgo);
-                double recentRating = reviewRepository.getAverageRatingForBookAfterDate(
-                    book.getId(), thirtyDaysAgo);
-                
-                trend.put("recentLendings", recentLendings);
-                trend.put("recentRating", recentRating);
-                trend.put("popularityScore", calculatePopularityScore(recentLendings, recentRating));
-                trend.put("trend", calculateTrend(book.getId(), thirtyDaysAgo));
+                trend.put("recentLendings", windows.currentLendings(book.getId()));
+                trend.put("recentRating", windows.recentRating(book.getId()));
+                trend.put("popularityScore", scores[i]);
+                trend.put("trend", calculateTrend(book.getId(), windows));
                 
-                return trend;
-            })
-            .sorted(Comparator.comparingDouble(trend -> 
-                ((Number) trend.get("popularityScore")).doubleValue()))
-            .collect(Collectors.toList());
+                sink.accept(trend);
+            }
+        };
     }
 
     private double calculatePopularityScore(long lendings, double rating) {
@@ -129,11 +135,9 @@ public class PredictiveAnalyticsService {
         return (normalizedLendings * 0.6) + (normalizedRating * 0.4);
     }
 
-    private String calculateTrend(Long bookId, LocalDateTime startDate) {
-        long previousPeriodLendings = lendingRepository.countByBookIdAndBorrowDateBetween(
-            bookId, startDate.minusDays(30), startDate);
-        long currentPeriodLendings = lendingRepository.countByBookIdAndBorrowDateAfter(
-            bookId, startDate);
+    private String calculateTrend(Long bookId, BookWindowAggregator.Windows windows) {
+        long previousPeriodLendings = windows.previousLendings(bookId);
+        long currentPeriodLendings = windows.currentLendings(bookId);
         
         double change = ((double) currentPeriodLendings - previousPeriodLendings) / 
             Math.max(previousPeriodLendings, 1) * 100;
@@ -143,40 +147,47 @@ public class PredictiveAnalyticsService {
         return "STABLE";
     }
 
-    private List<Map<String, Object>> predictReturns() {
-        LocalDateTime today = LocalDateTime.now();
-        List<BookLending> activeLendings = lendingRepository.findByReturnDateIsNull();
+    private RowSource<Map<String, Object>> predictReturns() {
+        UserReturnRates returnRates = loadUserReturnRates();
         
-        return activeLendings.stream()
-            .map(lending -> {
-                Map<String, Object> prediction = new HashMap<>();
-                prediction.put("lendingId", lending.getId());
-                prediction.put("bookTitle", lending.getBook().getTitle());
-                prediction.put("dueDate", lending.getDueDate());
-                
-                // Calculate return probability
-                double returnProbability = calculateReturnProbability(lending);
-                prediction.put("returnProbability", returnProbability);
-                
-                // Predict return status
-                String predictedStatus = predictReturnStatus(lending, returnProbability);
-                prediction.put("predictedStatus", predictedStatus);
-                
-                return prediction;
-            })
-            .collect(Collectors.toList());
+        // The open loans are read from a cursor while the section is written, in a transaction of their own
+        return sink -> {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            readOnly.executeWithoutResult(status -> {
+                try (Stream<Object[]> openLendings = lendingRepository.streamOpenLendings()) {
+                    openLendings.forEach(row -> {
+                        LocalDateTime dueDate = (LocalDateTime) row[3];
+                        Map<String, Object> prediction = new HashMap<>();
+                        prediction.put("lendingId", row[0]);
+                        prediction.put("bookTitle", row[1]);
+                        prediction.put("dueDate", dueDate);
+                        
+                        // Calculate return probability
+                        double returnProbability = calculateReturnProbability((Long) row[2], dueDate, returnRates);
+                        prediction.put("returnProbability", returnProbability);
+                        
+                        // Predict return status
+                        String predictedStatus = predictReturnStatus(returnProbability);
+                        prediction.put("predictedStatus", predictedStatus);
+                        
+                        sink.accept(prediction);
+                    });
+                }
+            });
+        };
     }
 
-    private double calculateReturnProbability(BookLending lending) {
+    private double calculateReturnProbability(Long userId, LocalDateTime dueDate, UserReturnRates returnRates) {
         // Base probability starts at 0.8 (80% chance of return)
         double probability = 0.8;
         
         // Adjust based on user's history
-        double userReturnRate = calculateUserReturnRate(lending.getUser().getId());
+        double userReturnRate = returnRates.rateFor(userId);
         probability *= userReturnRate;
         
         // Adjust based on days until due
-        long daysUntilDue = ChronoUnit.DAYS.between(LocalDateTime.now(), lending.getDueDate());
+        long daysUntilDue = ChronoUnit.DAYS.between(LocalDateTime.now(), dueDate);
         if (daysUntilDue < 0) {
             probability *= 0.5; // Overdue books less likely to be returned promptly
         } else if (daysUntilDue < 3) {
@@ -186,28 +197,42 @@ public class PredictiveAnalyticsService {
         return Math.min(Math.max(probability, 0), 1); // Ensure between 0 and 1
     }
 
-    private double calculateUserReturnRate(Long userId) {
-        List<BookLending> userHistory = lendingRepository.findByUserId(userId);
-        if (userHistory.isEmpty()) return 1.0;
-        
-        long onTimeReturns = userHistory.stream()
-            .filter(lending -> lending.getReturnDate() != null &&
-                !lending.getReturnDate().isAfter(lending.getDueDate()))
-            .count();
-        
-        return (double) onTimeReturns / userHistory.size();
+    // Per-member on-time return rate from one scan of the fact store, instead of a findByUserId per open loan
+    private UserReturnRates loadUserReturnRates() {
+        LendingFacts facts = lendingFactStore.getFacts();
+        long[][] counts = facts.scan().aggregate(
+            () -> new long[2][facts.userCount()],
+            (acc, f, row) -> {
+                acc[0][f.userCode(row)]++;
+                if (!f.isOpen(row) && f.returnedAt(row) <= f.dueAt(row)) {
+                    acc[1][f.userCode(row)]++;
+                }
+            },
+            (left, right) -> {
+                for (int user = 0; user < left[0].length; user++) {
+                    left[0][user] += right[0][user];
+                    left[1][user] += right[1][user];
+                }
+                return left;
+            });
+        return new UserReturnRates(facts, counts[0], counts[1]);
     }
 
-    private String predictReturnStatus(BookLending lending, double probability) {
+    private record UserReturnRates(LendingFacts facts, long[] lendings, long[] onTimeReturns) {
+        double rateFor(Long userId) {
+            int user = facts.findUserCode(userId);
+            if (user < 0 || lendings[user] == 0) return 1.0;
+            return (double) onTimeReturns[user] / lendings[user];
+        }
+    }
+
+    private String predictReturnStatus(double probability) {
         if (probability > 0.8) return "LIKELY_ON_TIME";
         if (probability > 0.5) return "POSSIBLY_DELAYED";
         return "LIKELY_OVERDUE";
     }
 
-    private List<Map<String, Object>> analyzeGenreTrends() {
-        List<Book> books = bookRepository.findAll();
-        LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
-        
+    private List<Map<String, Object>> analyzeGenreTrends(List<Book> books, BookWindowAggregator.Windows windows) {
         // Group books by genre
         Map<String, List<Book>> booksByGenre = books.stream()
             .collect(Collectors.groupingBy(Book::getGenre));
@@ -221,8 +246,8 @@ public class PredictiveAnalyticsService {
                 trend.put("genre", genre);
                 
                 // Calculate genre metrics
-                double popularityScore = calculateGenrePopularityScore(genreBooks, thirtyDaysAgo);
-                String trendDirection = calculateGenreTrend(genreBooks, thirtyDaysAgo);
+                double popularityScore = calculateGenrePopularityScore(genreBooks, windows);
+                String trendDirection = calculateGenreTrend(genreBooks, windows);
                 
                 trend.put("popularityScore", popularityScore);
                 trend.put("trend", trendDirection);
@@ -236,26 +261,22 @@ public class PredictiveAnalyticsService {
             .collect(Collectors.toList());
     }
 
-    private double calculateGenrePopularityScore(List<Book> books, LocalDateTime startDate) {
+    private double calculateGenrePopularityScore(List<Book> books, BookWindowAggregator.Windows windows) {
         return books.stream()
             .mapToDouble(book -> {
-                long lendings = lendingRepository.countByBookIdAndBorrowDateAfter(
-                    book.getId(), startDate);
-                double rating = reviewRepository.getAverageRatingForBookAfterDate(
-                    book.getId(), startDate);
+                long lendings = windows.currentLendings(book.getId());
+                double rating = windows.recentRating(book.getId());
                 return calculatePopularityScore(lendings, rating);
             })
             .average()
             .orElse(0.0);
     }
 
-    private String calculateGenreTrend(List<Book> books, LocalDateTime startDate) {
+    private String calculateGenreTrend(List<Book> books, BookWindowAggregator.Windows windows) {
         double averageChange = books.stream()
             .mapToDouble(book -> {
-                long previous = lendingRepository.countByBookIdAndBorrowDateBetween(
-                    book.getId(), startDate.minusDays(30), startDate);
-                long current = lendingRepository.countByBookIdAndBorrowDateAfter(
-                    book.getId(), startDate);
+                long previous = windows.previousLendings(book.getId());
+                long current = windows.currentLendings(book.getId());
                 return ((double) current - previous) / Math.max(previous, 1) * 100;
             })
             .average()
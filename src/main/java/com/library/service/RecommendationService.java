@@ -7,6 +7,8 @@ import com.library.model.Review;
 import com.library.repository.BookRepository;
 import com.library.repository.BookLendingRepository;
 import com.library.repository.ReviewRepository;
+import com.library.service.recommendation.CollaborativeFilteringService;
+import com.library.service.recommendation.SimilarBooksIndexService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -25,9 +27,25 @@ public class RecommendationService {
     @Autowired
     private ReviewRepository reviewRepository;
 
+    @Autowired
+    private CollaborativeFilteringService collaborativeFilteringService;
+
+    @Autowired
+    private SimilarBooksIndexService similarBooksIndexService;
+
+    private static final int RECOMMENDATION_LIMIT = 10;
+    private static final int SIMILAR_BOOKS_LIMIT = 5;
+
     public List<Book> getPersonalizedRecommendations(User user) {
         // Get user's reading history
         List<BookLending> userLendings = lendingRepository.findByUserId(user.getId());
+
+        // Score against the latest factor model when it knows this member
+        List<Book> modelRecommendations = getModelRecommendations(user, userLendings);
+        if (!modelRecommendations.isEmpty()) {
+            return modelRecommendations;
+        }
+
         List<Review> userReviews = reviewRepository.findByUserId(user.getId());
 
         // Get user's preferred genres
@@ -43,6 +61,7 @@ public class RecommendationService {
 
         // Analyze highly rated books
         for (Review review : userReviews) {
+            readBookIds.add(review.getBook().getId());
             if (review.getRating() >= 4) {
                 Book book = review.getBook();
                 genrePreferences.merge(book.getGenre(), 2, Integer::sum);
@@ -62,13 +81,44 @@ public class RecommendationService {
                 .filter(book -> preferredGenres.contains(book.getGenre()))
                 .sorted(Comparator.comparingDouble(book -> 
                     calculateBookScore(book, preferredGenres.indexOf(book.getGenre()))))
-                .limit(10)
+                .limit(RECOMMENDATION_LIMIT)
                 .collect(Collectors.toList());
 
         return recommendations;
     }
 
+    private List<Book> getModelRecommendations(User user, List<BookLending> userLendings) {
+        // Books the member borrowed or reviewed; reviews count as interactions in training too
+        Set<Long> readBookIds = userLendings.stream()
+                .map(lending -> lending.getBook().getId())
+                .collect(Collectors.toCollection(HashSet::new));
+        readBookIds.addAll(reviewRepository.findBookIdsByUserId(user.getId()));
+
+        List<Long> bookIds = collaborativeFilteringService.recommend(
+                user.getId(), RECOMMENDATION_LIMIT, readBookIds);
+        if (bookIds.isEmpty()) {
+            return List.of();
+        }
+        return findBooksInOrder(bookIds);
+    }
+
+    // findAllById does not preserve order, so put the books back in rank order
+    private List<Book> findBooksInOrder(List<Long> bookIds) {
+        Map<Long, Book> booksById = bookRepository.findAllById(bookIds).stream()
+                .collect(Collectors.toMap(Book::getId, book -> book));
+        return bookIds.stream()
+                .map(booksById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
     public List<Book> getSimilarBooks(Long bookId) {
+        // Content-based neighbours from summary, title and genre also cover titles nobody has borrowed yet
+        List<Long> similarIds = similarBooksIndexService.findSimilar(bookId, SIMILAR_BOOKS_LIMIT);
+        if (!similarIds.isEmpty()) {
+            return findBooksInOrder(similarIds);
+        }
+
         Book sourceBook = bookRepository.findById(bookId)
                 .orElseThrow(() -> new RuntimeException("Book not found"));
 
@@ -76,7 +126,7 @@ public class RecommendationService {
                 .filter(book -> !book.getId().equals(bookId))
                 .filter(book -> book.getGenre().equals(sourceBook.getGenre()))
                 .sorted(Comparator.comparingDouble(book -> calculateSimilarity(sourceBook, book)))
-                .limit(5)
+                .limit(SIMILAR_BOOKS_LIMIT)
                 .collect(Collectors.toList());
     }
 
@@ -1,13 +1,23 @@
 package com.library.service;
 
+import com.library.dto.analytics.GenreCount;
+import com.library.dto.analytics.HourlyCount;
 import com.library.model.*;
 import com.library.repository.*;
+import com.library.service.analytics.BorrowHeatmapService;
+import com.library.service.analytics.LendingFactStore;
+import com.library.service.analytics.UserFeatureStore;
+import com.library.service.analytics.UserFeatures;
+import com.library.service.analytics.UserSegment;
+import com.library.service.analytics.report.ReportSectionExecutor;
+import com.library.service.recommendation.BatchRecommendationEngine;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -17,28 +27,43 @@ public class UserBehaviorService {
     private UserRepository userRepository;
 
     @Autowired
-    private BookLendingRepository lendingRepository;
+    private BookLendingRepository bookLendingRepository;
 
     @Autowired
-    private ReviewRepository reviewRepository;
+    private BorrowHeatmapService borrowHeatmapService;
 
     @Autowired
-    private BookRepository bookRepository;
+    private BatchRecommendationEngine batchRecommendationEngine;
+
+    @Autowired
+    private LendingFactStore lendingFactStore;
+
+    @Autowired
+    private UserFeatureStore userFeatureStore;
+
+    @Autowired
+    private ReportSectionExecutor sectionExecutor;
+
+    private static final int RECOMMENDATIONS_PER_USER = 5;
 
     public Map<String, Object> analyzeUserBehavior() {
-        Map<String, Object> analysis = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
         
-        analysis.put("userSegments", analyzeUserSegments());
-        analysis.put("readingPatterns", analyzeReadingPatterns());
-        analysis.put("userRecommendations", generateUserRecommendations());
-        analysis.put("retentionRisk", analyzeRetentionRisk());
+        // Segments and retention share one member list and one snapshot of the feature store
+        Supplier<SegmentInputs> inputs = ReportSectionExecutor.shared(
+            () -> new SegmentInputs(userRepository.findAll(), userFeatureStore.snapshot(now)));
         
-        return analysis;
+        return sectionExecutor.report("userBehavior")
+            .section("userSegments", () -> analyzeUserSegments(inputs.get().users(), inputs.get().features()))
+            .section("readingPatterns", this::analyzeReadingPatterns)
+            .section("userRecommendations", this::generateUserRecommendations)
+            .section("retentionRisk", () -> analyzeRetentionRisk(inputs.get().users(), inputs.get().features(), now))
+            .collect();
     }
 
-    private List<Map<String, Object>> analyzeUserSegments() {
-        List<User> users = userRepository.findAll();
-        
+    private record SegmentInputs(List<User> users, UserFeatures features) {}
+
+    private List<Map<String, Object>> analyzeUserSegments(List<User> users, UserFeatures features) {
         return users.stream()
             .map(user -> {
                 Map<String, Object> segment = new HashMap<>();
@@ -46,7 +71,7 @@ public class UserBehaviorService {
                 segment.put("username", user.getUsername());
                 
                 // Calculate user metrics
-                UserMetrics metrics = calculateUserMetrics(user);
+                UserMetrics metrics = calculateUserMetrics(user.getId(), features);
                 segment.put("segment", determineUserSegment(metrics));
                 segment.put("metrics", metrics);
                 
@@ -55,72 +80,46 @@ public class UserBehaviorService {
             .collect(Collectors.toList());
     }
 
-    private UserMetrics calculateUserMetrics(User user) {
-        LocalDateTime now = LocalDateTime.now();
-        List<BookLending> lendings = lendingRepository.findByUserId(user.getId());
-        List<Review> reviews = reviewRepository.findByUserId(user.getId());
-        
+    private UserMetrics calculateUserMetrics(Long userId, UserFeatures features) {
         UserMetrics metrics = new UserMetrics();
-        metrics.setTotalBooksRead(lendings.size());
-        metrics.setActiveBookCount(lendings.stream()
-            .filter(l -> l.getReturnDate() == null)
-            .count());
-        metrics.setOverdueCount(lendings.stream()
-            .filter(l -> l.getReturnDate() == null && l.getDueDate().isBefore(now))
-            .count());
-        metrics.setAverageRating(calculateAverageRating(reviews));
-        metrics.setReviewCount(reviews.size());
+        metrics.setTotalBooksRead(features.totalLendings(userId));
+        metrics.setActiveBookCount(features.activeLoans(userId));
+        metrics.setOverdueCount(features.overdueLoans(userId));
+        metrics.setAverageRating(features.averageRating(userId));
+        metrics.setReviewCount(features.reviewCount(userId));
         
         return metrics;
     }
 
     private String determineUserSegment(UserMetrics metrics) {
-        if (metrics.getTotalBooksRead() >= 20 && metrics.getAverageRating() >= 4.0) {
-            return "POWER_USER";
-        } else if (metrics.getTotalBooksRead() >= 10) {
-            return "REGULAR";
-        } else if (metrics.getOverdueCount() > 2) {
-            return "AT_RISK";
-        } else {
-            return "NEW_USER";
-        }
-    }
-
-    private double calculateAverageRating(List<Review> reviews) {
-        if (reviews.isEmpty()) {
-            return 0.0;
-        }
-        return reviews.stream()
-            .mapToInt(Review::getRating)
-            .average()
-            .orElse(0.0);
+        return UserSegment.classify(metrics.getTotalBooksRead(), metrics.getAverageRating(), metrics.getOverdueCount()).name();
     }
 
     private Map<String, Object> analyzeReadingPatterns() {
         Map<String, Object> patterns = new HashMap<>();
-        List<BookLending> allLendings = lendingRepository.findAll();
-        
-        // Analyze peak borrowing times
-        Map<Integer, Long> hourlyDistribution = allLendings.stream()
-            .collect(Collectors.groupingBy(
-                l -> l.getBorrowDate().getHour(),
-                Collectors.counting()
-            ));
+        // Both read the event-maintained hour-of-week counters; until those are seeded the lending table
+        // is grouped in SQL instead
+        Map<Integer, Long> hourlyDistribution;
+        Map<String, Long> genreDistribution;
+        if (borrowHeatmapService.isSeeded()) {
+            hourlyDistribution = borrowHeatmapService.getHourlyDistribution();
+            genreDistribution = borrowHeatmapService.getGenreTotals();
+        } else {
+            hourlyDistribution = bookLendingRepository.countLendingsByHour().stream()
+                .collect(Collectors.toMap(HourlyCount::getHour, HourlyCount::getCount));
+            genreDistribution = bookLendingRepository.countLendingsByGenre().stream()
+                .collect(Collectors.toMap(GenreCount::getGenre, GenreCount::getCount));
+        }
         patterns.put("peakHours", findPeakHours(hourlyDistribution));
-        
-        // Analyze popular genres
-        Map<String, Long> genreDistribution = allLendings.stream()
-            .map(l -> l.getBook().getGenre())
-            .collect(Collectors.groupingBy(
-                genre -> genre,
-                Collectors.counting()
-            ));
         patterns.put("popularGenres", findTopGenres(genreDistribution));
         
         return patterns;
     }
 
     private List<Integer> findPeakHours(Map<Integer, Long> hourlyDistribution) {
+        if (hourlyDistribution.isEmpty()) {
+            return Collections.emptyList();
+        }
         long maxCount = Collections.max(hourlyDistribution.values());
         return hourlyDistribution.entrySet().stream()
             .filter(e -> e.getValue() == maxCount)
@@ -137,47 +136,22 @@ public class UserBehaviorService {
     }
 
     private List<Map<String, Object>> generateUserRecommendations() {
-        List<User> users = userRepository.findAll();
-        LocalDateTime now = LocalDateTime.now();
-        
-        return users.stream()
-            .map(user -> {
+        // One load of catalog and lending facts scores every member in parallel
+        return batchRecommendationEngine.recommendForAllUsers(RECOMMENDATIONS_PER_USER)
+            .map(result -> {
                 Map<String, Object> recommendation = new HashMap<>();
-                recommendation.put("userId", user.getId());
-                recommendation.put("username", user.getUsername());
-                
-                List<Book> recommendedBooks = recommendBooksForUser(user);
-                recommendation.put("recommendations", recommendedBooks.stream()
-                    .map(Book::getTitle)
-                    .collect(Collectors.toList()));
-                
+                recommendation.put("userId", result.userId());
+                recommendation.put("username", result.username());
+                recommendation.put("recommendations", result.titles());
                 return recommendation;
             })
             .collect(Collectors.toList());
     }
 
-    private List<Book> recommendBooksForUser(User user) {
-        List<BookLending> userLendings = lendingRepository.findByUserId(user.getId());
-        Set<String> userGenres = userLendings.stream()
-            .map(l -> l.getBook().getGenre())
-            .collect(Collectors.toSet());
-        
-        return bookRepository.findAll().stream()
-            .filter(book -> userGenres.contains(book.getGenre()))
-            .filter(book -> !hasUserBorrowed(userLendings, book))
-            .limit(5)
-            .collect(Collectors.toList());
-    }
-
-    private boolean hasUserBorrowed(List<BookLending> userLendings, Book book) {
-        return userLendings.stream()
-            .anyMatch(l -> l.getBook().getId().equals(book.getId()));
-    }
-
-    private Map<String, Object> analyzeRetentionRisk() {
+    private Map<String, Object> analyzeRetentionRisk(List<User> users, UserFeatures features, LocalDateTime now) {
         Map<String, Object> riskAnalysis = new HashMap<>();
-        List<User> users = userRepository.findAll();
-        LocalDateTime now = LocalDateTime.now();
+        // The three-month window moves with the clock, so it is the one count taken from a fact scan
+        Map<Long, Long> recentLendings = lendingFactStore.scan().borrowedSince(now.minusMonths(3)).countByUser();
         
         List<Map<String, Object>> userRisks = users.stream()
             .map(user -> {
@@ -185,10 +159,10 @@ public class UserBehaviorService {
                 userRisk.put("userId", user.getId());
                 userRisk.put("username", user.getUsername());
                 
-                double retentionScore = calculateRetentionScore(user, now);
+                double retentionScore = calculateRetentionScore(features, user.getId(), now);
                 userRisk.put("retentionScore", retentionScore);
                 userRisk.put("riskLevel", determineRiskLevel(retentionScore));
-                userRisk.put("riskFactors", identifyRiskFactors(user, now));
+                userRisk.put("riskFactors", identifyRiskFactors(features, recentLendings, user.getId(), now));
                 
                 return userRisk;
             })
@@ -198,38 +172,21 @@ public class UserBehaviorService {
         return riskAnalysis;
     }
 
-    private double calculateRetentionScore(User user, LocalDateTime now) {
-        List<BookLending> lendings = lendingRepository.findByUserId(user.getId());
-        
-        if (lendings.isEmpty()) {
+    private double calculateRetentionScore(UserFeatures features, Long userId, LocalDateTime now) {
+        if (features.totalLendings(userId) == 0) {
             return 0.0;
         }
 
-        LocalDateTime lastActivity = lendings.stream()
-            .map(BookLending::getBorrowDate)
-            .max(LocalDateTime::compareTo)
-            .orElse(now);
+        LocalDateTime lastActivity = features.lastBorrowedAt(userId);
         
         long daysSinceLastActivity = ChronoUnit.DAYS.between(lastActivity, now);
         double activityScore = Math.max(0.0, 1.0 - (daysSinceLastActivity / 90.0));
         
-        double overdueScore = 1.0 - (calculateOverdueRatio(lendings) * 0.5);
+        double overdueScore = 1.0 - (calculateOverdueRatio(features, userId) * 0.5);
         
         return (activityScore * 0.7) + (overdueScore * 0.3);
     }
 
-    private double calculateOverdueRatio(List<BookLending> lendings) {
-        if (lendings.isEmpty()) {
-            return 0.0;
-        }
-        
-        long overdueCount = lendings.stream()
-            .filter(l -> l.getReturnDate() != null && l.getReturnDate().isAfter(l.getDueDate()))
-            .count();
-        
-        return (double) overdueCount / lendings.size();
-    }
-
     private String determineRiskLevel(double retentionScore) {
         if (retentionScore >= 0.8) {
             return "LOW";
@@ -240,41 +197,39 @@ public class UserBehaviorService {
         }
     }
 
-    private List<String> identifyRiskFactors(User user, LocalDateTime now) {
+    private List<String> identifyRiskFactors(UserFeatures features, Map<Long, Long> recentLendings, Long userId,
+                                             LocalDateTime now) {
         List<String> riskFactors = new ArrayList<>();
-        List<BookLending> lendings = lendingRepository.findByUserId(user.getId());
         
-        if (lendings.isEmpty()) {
+        if (features.totalLendings(userId) == 0) {
             riskFactors.add("NO_ACTIVITY");
             return riskFactors;
         }
 
-        LocalDateTime lastActivity = lendings.stream()
-            .map(BookLending::getBorrowDate)
-            .max(LocalDateTime::compareTo)
-            .orElse(now);
+        LocalDateTime lastActivity = features.lastBorrowedAt(userId);
         
         long daysSinceLastActivity = ChronoUnit.DAYS.between(lastActivity, now);
         if (daysSinceLastActivity > 60) {
             riskFactors.add("INACTIVE");
         }
         
-        double overdueRatio = calculateOverdueRatio(lendings);
+        double overdueRatio = calculateOverdueRatio(features, userId);
         if (overdueRatio > 0.3) {
             riskFactors.add("HIGH_OVERDUE_RATE");
         }
         
-        LocalDateTime midPoint = now.minusMonths(3);
-        long recentLendings = lendings.stream()
-            .filter(l -> l.getBorrowDate().isAfter(midPoint))
-            .count();
-        if (recentLendings < 2) {
+        if (recentLendings.getOrDefault(userId, 0L) < 2) {
             riskFactors.add("LOW_RECENT_ACTIVITY");
         }
         
         return riskFactors;
     }
 
+    // Late returns over all lendings
+    private double calculateOverdueRatio(UserFeatures features, Long userId) {
+        return (double) features.lateReturns(userId) / features.totalLendings(userId);
+    }
+
     private static class UserMetrics {
         private int totalBooksRead;
         private long activeBookCount;
@@ -0,0 +1,37 @@
+package com.library.service.analytics;
+
+import java.time.LocalDate;
+import java.util.*;
+
+// Filter of the analytics query in normalized form: genres are trimmed, de-duplicated and sorted, so requests
+// that differ only in parameter order or spacing compare equal and share a cache entry. A blank genre selects
+// books with no genre, under the same key the results use for them. Null means "no restriction"; the date
+// range is inclusive on both ends.
+public record AnalyticsQuery(LocalDate from, LocalDate to, SortedSet<String> genres, Long authorId, UserSegment segment) {
+
+    public static AnalyticsQuery of(LocalDate from, LocalDate to, Collection<String> genres, Long authorId,
+                                    UserSegment segment) {
+        SortedSet<String> normalized = new TreeSet<>();
+        if (genres != null) {
+            for (String genre : genres) {
+                normalized.add(genreKey(genre));
+            }
+        }
+        return new AnalyticsQuery(from, to, Collections.unmodifiableSortedSet(normalized), authorId, segment);
+    }
+
+    // One key per genre however it is stored: trimmed, and "" for a missing or blank genre
+    public static String genreKey(String genre) {
+        return genre == null ? "" : genre.trim();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> filter = new LinkedHashMap<>();
+        filter.put("from", from);
+        filter.put("to", to);
+        filter.put("genres", genres);
+        filter.put("authorId", authorId);
+        filter.put("segment", segment);
+        return filter;
+    }
+}
@@ -0,0 +1,225 @@
+package com.library.service.analytics;
+
+import com.library.dto.analytics.TopItemDTO;
+import com.library.model.Book;
+import com.library.repository.BookRepository;
+import com.library.service.analytics.jobs.AnalyticsDataVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Filtered dashboard figures computed server-side. Every filter becomes a predicate of one parallel scan of
+// the lending fact store: date range and genres compare the fact columns directly, the author filter is
+// resolved to its book ids in SQL and the segment filter to a flag per member, so no lending rows are
+// loaded per request. Results are cached per normalized filter and data version; the TTL bounds how stale
+// the clock-dependent figures (overdue loans, member segments) can get.
+@Service
+public class AnalyticsQueryService {
+
+    private static final int TOP_BOOKS = 10;
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    @Autowired
+    private LendingFactStore lendingFactStore;
+
+    @Autowired
+    private UserFeatureStore userFeatureStore;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private AnalyticsDataVersion dataVersion;
+
+    @Value("${analytics.query.cache-size:200}")
+    private int cacheSize;
+
+    @Value("${analytics.query.cache-ttl-ms:300000}")
+    private long cacheTtlMs;
+
+    private record CacheKey(AnalyticsQuery query, long dataVersion) {}
+
+    private record CachedResult(Map<String, Object> result, long computedAt) {}
+
+    // Least recently used first; entries for superseded data versions are never hit again and age out
+    private final Map<CacheKey, CachedResult> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedResult> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    public Map<String, Object> query(AnalyticsQuery query) {
+        CacheKey key = new CacheKey(query, dataVersion.current());
+        synchronized (cache) {
+            CachedResult cached = cache.get(key);
+            if (cached != null && System.currentTimeMillis() - cached.computedAt() < cacheTtlMs) {
+                return cached.result();
+            }
+        }
+        // Concurrent misses for the same key both compute; the results are equal, so the last one simply wins
+        Map<String, Object> result = Collections.unmodifiableMap(compute(query, LocalDateTime.now()));
+        synchronized (cache) {
+            cache.put(key, new CachedResult(result, System.currentTimeMillis()));
+        }
+        return result;
+    }
+
+    private Map<String, Object> compute(AnalyticsQuery query, LocalDateTime now) {
+        LendingFacts facts = lendingFactStore.getFacts();
+        FactScan scan = facts.scan();
+        if (query.from() != null || query.to() != null) {
+            scan.borrowedBetween(query.from() != null ? query.from().atStartOfDay() : LocalDateTime.MIN,
+                query.to() != null ? query.to().plusDays(1).atStartOfDay() : LocalDateTime.MAX);
+        }
+        if (!query.genres().isEmpty()) {
+            // Stored genres are matched by key, so a filter also finds untrimmed and missing ones
+            List<String> stored = new ArrayList<>();
+            for (int code = 0; code < facts.genreCount(); code++) {
+                if (query.genres().contains(AnalyticsQuery.genreKey(facts.genre(code)))) {
+                    stored.add(facts.genre(code));
+                }
+            }
+            scan.genres(stored);
+        }
+        if (query.authorId() != null) {
+            scan.books(bookRepository.findIdsByAuthorId(query.authorId()));
+        }
+        if (query.segment() != null) {
+            UserFeatures features = userFeatureStore.snapshot(now);
+            scan.users(userId -> features.segment(userId) == query.segment());
+        }
+
+        long nowSeconds = LendingFacts.toEpochSecond(now);
+        Totals totals = scan.aggregate(() -> new Totals(facts), (acc, f, row) -> acc.add(f, row, nowSeconds), Totals::merge);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("filter", query.toMap());
+        result.put("totalLendings", totals.lendings);
+        result.put("uniqueMembers", totals.members.cardinality());
+        result.put("activeLendings", totals.open);
+        result.put("overdueLendings", totals.overdue);
+        result.put("returnedLendings", totals.returned);
+        result.put("averageLoanDays", totals.returned == 0 ? 0.0 : (double) totals.loanSeconds / totals.returned / SECONDS_PER_DAY);
+        result.put("lateReturnRate", totals.returned == 0 ? 0.0 : (double) totals.lateReturns / totals.returned);
+        result.put("lendingsByGenre", lendingsByGenre(facts, totals));
+        result.put("lendingsByMonth", lendingsByMonth(totals));
+        result.put("mostBorrowedBooks", mostBorrowedBooks(facts, totals));
+        return result;
+    }
+
+    private static Map<String, Long> lendingsByGenre(LendingFacts facts, Totals totals) {
+        Map<String, Long> byGenre = new TreeMap<>();
+        for (int code = 0; code < totals.byGenre.length; code++) {
+            if (totals.byGenre[code] > 0) {
+                byGenre.merge(AnalyticsQuery.genreKey(facts.genre(code)), totals.byGenre[code], Long::sum);
+            }
+        }
+        return byGenre;
+    }
+
+    private static Map<String, Long> lendingsByMonth(Totals totals) {
+        Map<String, Long> byMonth = new LinkedHashMap<>();
+        new TreeMap<>(totals.byMonth).forEach((month, count) -> byMonth.put(month.toString(), count[0]));
+        return byMonth;
+    }
+
+    private List<TopItemDTO> mostBorrowedBooks(LendingFacts facts, Totals totals) {
+        Integer[] codes = new Integer[totals.byBook.length];
+        int candidates = 0;
+        for (int code = 0; code < totals.byBook.length; code++) {
+            if (totals.byBook[code] > 0) {
+                codes[candidates++] = code;
+            }
+        }
+        Arrays.sort(codes, 0, candidates, Comparator.comparingLong((Integer code) -> totals.byBook[code]).reversed());
+        List<Long> bookIds = new ArrayList<>();
+        for (int i = 0; i < Math.min(TOP_BOOKS, candidates); i++) {
+            bookIds.add(facts.bookId(codes[i]));
+        }
+        // findAllById does not preserve order, so titles are looked up and the ranking kept
+        Map<Long, String> titles = bookRepository.findAllById(bookIds).stream()
+            .collect(Collectors.toMap(Book::getId, Book::getTitle));
+        List<TopItemDTO> top = new ArrayList<>(bookIds.size());
+        for (int i = 0; i < bookIds.size(); i++) {
+            Long bookId = bookIds.get(i);
+            top.add(new TopItemDTO(bookId, titles.get(bookId), totals.byBook[codes[i]]));
+        }
+        return top;
+    }
+
+    // One per scan leaf; merged pairwise by the fork-join scan
+    private static class Totals {
+        long lendings;
+        long open;
+        long overdue;
+        long returned;
+        long lateReturns;
+        long loanSeconds;
+        final long[] byGenre;
+        final long[] byBook;
+        final BitSet members = new BitSet();
+        final Map<YearMonth, long[]> byMonth = new HashMap<>();
+        // Month of the previous row: facts are in roughly borrow order, so most rows hit it
+        long monthStart = 0;
+        long monthEnd = 0;
+        long[] monthCount;
+
+        Totals(LendingFacts facts) {
+            byGenre = new long[facts.genreCount()];
+            byBook = new long[facts.bookCount()];
+        }
+
+        void add(LendingFacts facts, int row, long nowSeconds) {
+            lendings++;
+            byGenre[facts.genreCode(row)]++;
+            byBook[facts.bookCode(row)]++;
+            members.set(facts.userCode(row));
+            long due = facts.dueAt(row);
+            boolean hasDue = due != LendingFacts.NOT_RETURNED;
+            if (facts.isOpen(row)) {
+                open++;
+                if (hasDue && due < nowSeconds) {
+                    overdue++;
+                }
+            } else {
+                returned++;
+                loanSeconds += facts.returnedAt(row) - facts.borrowedAt(row);
+                if (hasDue && facts.returnedAt(row) > due) {
+                    lateReturns++;
+                }
+            }
+            long borrowed = facts.borrowedAt(row);
+            if (borrowed < monthStart || borrowed >= monthEnd) {
+                YearMonth month = YearMonth.from(LendingFacts.toDateTime(borrowed));
+                monthStart = LendingFacts.toEpochSecond(month.atDay(1).atStartOfDay());
+                monthEnd = LendingFacts.toEpochSecond(month.plusMonths(1).atDay(1).atStartOfDay());
+                monthCount = byMonth.computeIfAbsent(month, m -> new long[1]);
+            }
+            monthCount[0]++;
+        }
+
+        Totals merge(Totals other) {
+            lendings += other.lendings;
+            open += other.open;
+            overdue += other.overdue;
+            returned += other.returned;
+            lateReturns += other.lateReturns;
+            loanSeconds += other.loanSeconds;
+            for (int i = 0; i < byGenre.length; i++) {
+                byGenre[i] += other.byGenre[i];
+            }
+            for (int i = 0; i < byBook.length; i++) {
+                byBook[i] += other.byBook[i];
+            }
+            members.or(other.members);
+            other.byMonth.forEach((month, count) -> byMonth.computeIfAbsent(month, m -> new long[1])[0] += count[0]);
+            return this;
+        }
+    }
+}
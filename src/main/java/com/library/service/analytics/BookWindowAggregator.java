@@ -0,0 +1,55 @@
+package com.library.service.analytics;
+
+import com.library.repository.BookLendingRepository;
+import com.library.repository.ReviewRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+// Per-book counts for two adjacent periods plus the recent average rating, computed with one grouped
+// lending query and one grouped review query instead of several count queries per book.
+@Component
+public class BookWindowAggregator {
+
+    @Autowired
+    private BookLendingRepository lendingRepository;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    // Current period is (start, now]; previous period is [start - periodDays, start]
+    public Windows compute(LocalDateTime start, int periodDays) {
+        Windows windows = new Windows();
+        for (Object[] row : lendingRepository.countBorrowWindowsByBook(start.minusDays(periodDays), start)) {
+            Long bookId = (Long) row[0];
+            windows.previousLendings.put(bookId, ((Number) row[1]).longValue());
+            windows.currentLendings.put(bookId, ((Number) row[2]).longValue());
+        }
+        for (Object[] row : reviewRepository.getAverageRatingsByBookAfterDate(start)) {
+            windows.recentRatings.put((Long) row[0], ((Number) row[1]).doubleValue());
+        }
+        return windows;
+    }
+
+    public static class Windows {
+        private final Map<Long, Long> currentLendings = new HashMap<>();
+        private final Map<Long, Long> previousLendings = new HashMap<>();
+        private final Map<Long, Double> recentRatings = new HashMap<>();
+
+        public long currentLendings(Long bookId) {
+            return currentLendings.getOrDefault(bookId, 0L);
+        }
+
+        public long previousLendings(Long bookId) {
+            return previousLendings.getOrDefault(bookId, 0L);
+        }
+
+        // 0.0 when the book has no approved reviews in the current period
+        public double recentRating(Long bookId) {
+            return recentRatings.getOrDefault(bookId, 0.0);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.library.service.analytics;
+
+import com.library.event.LendingEvent;
+import com.library.model.BookLending;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.DayOfWeek;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Borrows per hour of the week (7 x 24 cells, Monday 00:00 first), overall and per genre. Cells are
+// LongAdders, so concurrent borrows increment without contending on a lock. The counts are written to a
+// binary snapshot periodically together with the highest lending id they include and a fingerprint of the
+// lendings counted (how many, and the sum of their borrow times). At startup the snapshot is loaded and only
+// later lendings are replayed from the lending fact store; without a snapshot, or when the fingerprint does
+// not match the lending history (an in-memory database that restarted and reused the ids, or a lending
+// below the mark that was never counted), all of them are. Live borrows are counted unless seeding
+// replayed that very lending, whatever their id.
+@Service
+public class BorrowHeatmapService {
+
+    private static final Logger log = LoggerFactory.getLogger(BorrowHeatmapService.class);
+    private static final int CELLS = 7 * 24;
+    private static final int MAGIC = 0x48454155;
+
+    @Autowired
+    private LendingFactStore lendingFactStore;
+
+    @Value("${analytics.heatmap.state-file:models/borrow-heatmap.bin}")
+    private String stateFile;
+
+    private final LongAdder[] total = newCells();
+    private final Map<String, LongAdder[]> byGenre = new ConcurrentHashMap<>();
+    // Highest lending id counted so far: the snapshot has counted exactly the fact rows up to it, which
+    // the fingerprint below verifies before they are skipped at the next seed
+    private final AtomicLong countedThrough = new AtomicLong();
+    private final LongAdder countedLendings = new LongAdder();
+    private final LongAdder countedBorrowSeconds = new LongAdder();
+    // Lending ids replayed by the seed, ascending; a borrow event for one of them is already counted
+    private volatile long[] replayedIds = new long[0];
+    private volatile boolean seeded;
+    // Increments share the read lock; the snapshot takes the write lock so counts and watermark match
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void seed() {
+        long started = System.nanoTime();
+        Path file = Paths.get(stateFile);
+        if (Files.isRegularFile(file)) {
+            try {
+                readSnapshot(file);
+            } catch (IOException e) {
+                log.warn("Could not load borrow heatmap state, rebuilding from history: {}", e.getMessage());
+                clear();
+            }
+        }
+        LendingFacts facts = lendingFactStore.getFacts();
+        if (countedThrough.get() > 0 && !matchesHistory(facts)) {
+            log.warn("Borrow heatmap state does not match the lending history, rebuilding from history");
+            clear();
+        }
+        long through = countedThrough.get();
+        long[] ids = new long[facts.size()];
+        int replayed = 0;
+        for (int row = 0; row < facts.size(); row++) {
+            if (facts.lendingId(row) > through) {
+                increment(facts.genre(facts.genreCode(row)), facts.borrowedAt(row));
+                ids[replayed++] = facts.lendingId(row);
+            }
+        }
+        if (facts.size() > 0) {
+            countedThrough.accumulateAndGet(facts.lendingId(facts.size() - 1), Math::max);
+        }
+        replayedIds = Arrays.copyOf(ids, replayed);
+        seeded = true;
+        log.info("Seeded borrow heatmap with {} replayed borrows in {} ms", replayed, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @EventListener
+    public void onLendingEvent(LendingEvent event) {
+        if (event.getType() != LendingEvent.Type.BORROWED) {
+            return;
+        }
+        if (!seeded) {
+            // Waits out a seed in progress; a borrow before seeding starts is picked up from the fact store
+            synchronized (this) {
+                if (!seeded) {
+                    return;
+                }
+            }
+        }
+        BookLending lending = event.getLending();
+        snapshotLock.readLock().lock();
+        try {
+            if (Arrays.binarySearch(replayedIds, lending.getId()) >= 0) {
+                return;
+            }
+            increment(lending.getBook().getGenre(), LendingFacts.toEpochSecond(lending.getBorrowDate()));
+            countedThrough.accumulateAndGet(lending.getId(), Math::max);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.heatmap.persist-interval-ms:300000}",
+               initialDelayString = "${analytics.heatmap.persist-interval-ms:300000}")
+    public void persist() {
+        if (!seeded) {
+            return;
+        }
+        long through;
+        long lendings;
+        long borrowSeconds;
+        Map<String, long[]> counts = new TreeMap<>();
+        snapshotLock.writeLock().lock();
+        try {
+            through = countedThrough.get();
+            lendings = countedLendings.sum();
+            borrowSeconds = countedBorrowSeconds.sum();
+            byGenre.forEach((genre, cells) -> counts.put(genre, sums(cells)));
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        try {
+            Path target = Paths.get(stateFile);
+            Path dir = target.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path temp = dir.resolve(target.getFileName() + ".tmp");
+            writeSnapshot(temp, through, lendings, borrowSeconds, counts);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to write borrow heatmap state", e);
+        }
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    // One entry per cell in day-major order; null for a genre with no borrows
+    public Map<String, Object> getHeatmap(String genre) {
+        LongAdder[] cells = genre == null ? total : byGenre.get(genre);
+        if (cells == null) {
+            return null;
+        }
+        long[] counts = sums(cells);
+        List<Map<String, Object>> entries = new ArrayList<>(CELLS);
+        long sum = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("day", DayOfWeek.of(cell / 24 + 1).name());
+            entry.put("hour", cell % 24);
+            entry.put("count", counts[cell]);
+            entries.add(entry);
+            sum += counts[cell];
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("genre", genre);
+        result.put("borrows", sum);
+        result.put("cells", entries);
+        return result;
+    }
+
+    // Borrows per hour of day over the whole week, for hours with any
+    public Map<Integer, Long> getHourlyDistribution() {
+        long[] counts = sums(total);
+        Map<Integer, Long> hourly = new TreeMap<>();
+        for (int cell = 0; cell < CELLS; cell++) {
+            if (counts[cell] > 0) {
+                hourly.merge(cell % 24, counts[cell], Long::sum);
+            }
+        }
+        return hourly;
+    }
+
+    public Map<String, Long> getGenreTotals() {
+        Map<String, Long> totals = new HashMap<>();
+        byGenre.forEach((genre, cells) -> {
+            long sum = 0;
+            for (LongAdder cell : cells) {
+                sum += cell.sum();
+            }
+            totals.put(genre, sum);
+        });
+        return totals;
+    }
+
+    private void increment(String genre, long borrowedAt) {
+        int cell = cell(borrowedAt);
+        countedLendings.increment();
+        countedBorrowSeconds.add(borrowedAt);
+        total[cell].increment();
+        byGenre.computeIfAbsent(genre == null ? "" : genre, g -> newCells())[cell].increment();
+    }
+
+    // Local date-time fields are stored as UTC epoch seconds, so UTC arithmetic gives the local hour;
+    // day 0 of the epoch was a Thursday
+    private static int cell(long epochSecond) {
+        long day = Math.floorDiv(epochSecond, 86_400L);
+        int dayOfWeek = (int) Math.floorMod(day + 3, 7L);
+        int hour = (int) (Math.floorMod(epochSecond, 86_400L) / 3600);
+        return dayOfWeek * 24 + hour;
+    }
+
+    // Whether the lendings at or below the watermark are the ones the loaded snapshot counted
+    private boolean matchesHistory(LendingFacts facts) {
+        long through = countedThrough.get();
+        long lendings = 0;
+        long borrowSeconds = 0;
+        for (int row = 0; row < facts.size() && facts.lendingId(row) <= through; row++) {
+            lendings++;
+            borrowSeconds += facts.borrowedAt(row);
+        }
+        return lendings == countedLendings.sum() && borrowSeconds == countedBorrowSeconds.sum();
+    }
+
+    private void readSnapshot(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a borrow heatmap snapshot: " + file);
+            }
+            long through = in.readLong();
+            long lendings = in.readLong();
+            long borrowSeconds = in.readLong();
+            int genres = in.readInt();
+            for (int i = 0; i < genres; i++) {
+                String genre = in.readUTF();
+                LongAdder[] cells = byGenre.computeIfAbsent(genre, g -> newCells());
+                for (int cell = 0; cell < CELLS; cell++) {
+                    long count = in.readLong();
+                    cells[cell].add(count);
+                    total[cell].add(count);
+                }
+            }
+            countedThrough.set(through);
+            countedLendings.add(lendings);
+            countedBorrowSeconds.add(borrowSeconds);
+        }
+    }
+
+    private static void writeSnapshot(Path file, long through, long lendings, long borrowSeconds,
+                                      Map<String, long[]> counts) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(through);
+            out.writeLong(lendings);
+            out.writeLong(borrowSeconds);
+            out.writeInt(counts.size());
+            for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+                out.writeUTF(entry.getKey());
+                for (long count : entry.getValue()) {
+                    out.writeLong(count);
+                }
+            }
+        }
+    }
+
+    private void clear() {
+        byGenre.clear();
+        for (LongAdder cell : total) {
+            cell.reset();
+        }
+        countedThrough.set(0);
+        countedLendings.reset();
+        countedBorrowSeconds.reset();
+    }
+
+    private static long[] sums(LongAdder[] cells) {
+        long[] sums = new long[CELLS];
+        for (int cell = 0; cell < CELLS; cell++) {
+            sums[cell] = cells[cell].sum();
+        }
+        return sums;
+    }
+
+    private static LongAdder[] newCells() {
+        LongAdder[] cells = new LongAdder[CELLS];
+        for (int cell = 0; cell < CELLS; cell++) {
+            cells[cell] = new LongAdder();
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,172 @@
+package com.library.service.analytics;
+
+import com.library.event.LendingEvent;
+import com.library.model.BookLending;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.YearMonth;
+import java.util.*;
+
+// Monthly cohort retention: members are grouped by the month of their first borrow, and for each cohort
+// the matrix counts how many of them borrowed k months later. Each member keeps a bitset of active months
+// relative to their cohort, so a borrow only sets one bit and, the first time that bit is set, bumps one
+// matrix cell. Serving the matrix reads the counts, never the lending history. Replayed from the lending
+// fact store at startup and fed by every borrow after that.
+@Service
+public class CohortRetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(CohortRetentionService.class);
+
+    @Autowired
+    private LendingFactStore lendingFactStore;
+
+    private static class Member {
+        int cohort;
+        // Bit k set when the member borrowed in month cohort + k
+        BitSet activeMonths = new BitSet();
+    }
+
+    private static class Cohort {
+        int members;
+        int[] active = new int[12];
+
+        void addActive(int offset, int delta) {
+            if (offset >= active.length) {
+                active = Arrays.copyOf(active, Math.max(offset + 1, active.length * 2));
+            }
+            active[offset] += delta;
+        }
+    }
+
+    // Months are counted as year * 12 + month - 1
+    private final Map<Long, Member> members = new HashMap<>();
+    private final TreeMap<Integer, Cohort> cohorts = new TreeMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        long started = System.nanoTime();
+        LendingFacts facts = lendingFactStore.getFacts();
+        // Facts are in lending id order, which is close to borrow order, so the month of the previous row
+        // is usually the month of this one
+        long monthStart = 0;
+        long monthEnd = 0;
+        int month = 0;
+        for (int row = 0; row < facts.size(); row++) {
+            long borrowed = facts.borrowedAt(row);
+            if (borrowed < monthStart || borrowed >= monthEnd) {
+                YearMonth yearMonth = YearMonth.from(LendingFacts.toDateTime(borrowed));
+                monthStart = LendingFacts.toEpochSecond(yearMonth.atDay(1).atStartOfDay());
+                monthEnd = LendingFacts.toEpochSecond(yearMonth.plusMonths(1).atDay(1).atStartOfDay());
+                month = monthIndex(yearMonth);
+            }
+            recordBorrow(facts.userId(facts.userCode(row)), month);
+        }
+        log.info("Replayed {} borrows into {} retention cohorts in {} ms", facts.size(), cohorts.size(),
+            (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @EventListener
+    public synchronized void onLendingEvent(LendingEvent event) {
+        BookLending lending = event.getLending();
+        // A borrow already replayed from the fact store sets a bit that is already set, so it counts once
+        if (event.getType() != LendingEvent.Type.BORROWED) {
+            return;
+        }
+        recordBorrow(lending.getUser().getId(), monthIndex(YearMonth.from(lending.getBorrowDate())));
+    }
+
+    // Cohorts that first borrowed in [from, to], each with the members active in each of the following
+    // months (offset 0 is the cohort month itself, so always 100%) up to maxOffset or the current month
+    public synchronized Map<String, Object> getRetention(YearMonth from, YearMonth to, int maxOffset) {
+        int current = monthIndex(YearMonth.now());
+        long[] activeTotals = new long[maxOffset + 1];
+        long[] memberTotals = new long[maxOffset + 1];
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<Integer, Cohort> entry : cohorts.subMap(monthIndex(from), true, monthIndex(to), true).entrySet()) {
+            Cohort cohort = entry.getValue();
+            int offsets = Math.min(maxOffset, current - entry.getKey());
+            // Emptied by moves to earlier cohorts, or dated in the future
+            if (cohort.members == 0 || offsets < 0) {
+                continue;
+            }
+            List<Integer> active = new ArrayList<>(offsets + 1);
+            List<Double> retention = new ArrayList<>(offsets + 1);
+            for (int offset = 0; offset <= offsets; offset++) {
+                int count = offset < cohort.active.length ? cohort.active[offset] : 0;
+                active.add(count);
+                retention.add((double) count / cohort.members);
+                activeTotals[offset] += count;
+                memberTotals[offset] += cohort.members;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("cohort", toYearMonth(entry.getKey()).toString());
+            row.put("members", cohort.members);
+            row.put("active", active);
+            row.put("retention", retention);
+            rows.add(row);
+        }
+
+        // Per offset, over the cohorts old enough to have reached it, weighted by cohort size
+        List<Double> average = new ArrayList<>();
+        for (int offset = 0; offset <= maxOffset && memberTotals[offset] > 0; offset++) {
+            average.add((double) activeTotals[offset] / memberTotals[offset]);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("from", from.toString());
+        result.put("to", to.toString());
+        result.put("cohorts", rows);
+        result.put("averageRetention", average);
+        return result;
+    }
+
+    private void recordBorrow(long userId, int month) {
+        Member member = members.get(userId);
+        if (member == null) {
+            member = new Member();
+            member.cohort = month;
+            members.put(userId, member);
+            cohorts.computeIfAbsent(month, m -> new Cohort()).members++;
+        } else if (month < member.cohort) {
+            moveToEarlierCohort(member, month);
+        }
+        int offset = month - member.cohort;
+        if (!member.activeMonths.get(offset)) {
+            member.activeMonths.set(offset);
+            cohorts.get(member.cohort).addActive(offset, 1);
+        }
+    }
+
+    // A borrow dated before the member's first known one (out of id order, or back-dated): the member's
+    // counts leave the old cohort and their active months are re-based on the new one
+    private void moveToEarlierCohort(Member member, int month) {
+        Cohort old = cohorts.get(member.cohort);
+        old.members--;
+        int shift = member.cohort - month;
+        BitSet shifted = new BitSet();
+        for (int offset = member.activeMonths.nextSetBit(0); offset >= 0; offset = member.activeMonths.nextSetBit(offset + 1)) {
+            old.addActive(offset, -1);
+            shifted.set(offset + shift);
+        }
+        member.cohort = month;
+        member.activeMonths = shifted;
+        Cohort cohort = cohorts.computeIfAbsent(month, m -> new Cohort());
+        cohort.members++;
+        for (int offset = shifted.nextSetBit(0); offset >= 0; offset = shifted.nextSetBit(offset + 1)) {
+            cohort.addActive(offset, 1);
+        }
+    }
+
+    private static int monthIndex(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private static YearMonth toYearMonth(int monthIndex) {
+        return YearMonth.of(Math.floorDiv(monthIndex, 12), Math.floorMod(monthIndex, 12) + 1);
+    }
+}
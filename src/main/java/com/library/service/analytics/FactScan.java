@@ -0,0 +1,228 @@
+package com.library.service.analytics;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+// Filtered scan over a LendingFacts view. Predicates are plain comparisons on the primitive columns and
+// are checked before any accumulator sees a row; aggregation splits the row range into fork-join tasks
+// that each fold into their own accumulator, merged pairwise on the way back up.
+public class FactScan {
+
+    private static final int MIN_LEAF_ROWS = 1 << 15;
+
+    public interface RowAccumulator<A> {
+        void accept(A accumulator, LendingFacts facts, int row);
+    }
+
+    private final LendingFacts facts;
+    private long borrowedFrom = Long.MIN_VALUE;
+    private long borrowedBefore = Long.MAX_VALUE;
+    private int bookCode = -1;
+    private int userCode = -1;
+    private int genreCode = -1;
+    private Boolean open;
+    // Set-valued filters as flags indexed by code, so a row is still checked with array reads only
+    private boolean[] bookMask;
+    private boolean[] userMask;
+    private boolean[] genreMask;
+    // Set when a filter names a book, member or genre with no facts, so nothing can match
+    private boolean empty;
+
+    FactScan(LendingFacts facts) {
+        this.facts = facts;
+    }
+
+    public FactScan borrowedSince(LocalDateTime from) {
+        borrowedFrom = LendingFacts.toEpochSecond(from);
+        return this;
+    }
+
+    // Borrowed in [from, to)
+    public FactScan borrowedBetween(LocalDateTime from, LocalDateTime to) {
+        borrowedFrom = LendingFacts.toEpochSecond(from);
+        borrowedBefore = LendingFacts.toEpochSecond(to);
+        return this;
+    }
+
+    public FactScan book(long bookId) {
+        bookCode = facts.findBookCode(bookId);
+        empty |= bookCode < 0;
+        return this;
+    }
+
+    public FactScan user(long userId) {
+        userCode = facts.findUserCode(userId);
+        empty |= userCode < 0;
+        return this;
+    }
+
+    public FactScan genre(String genre) {
+        genreCode = facts.findGenreCode(genre);
+        empty |= genreCode < 0;
+        return this;
+    }
+
+    public FactScan books(Collection<Long> bookIds) {
+        bookMask = new boolean[facts.bookCount()];
+        for (Long bookId : bookIds) {
+            int code = facts.findBookCode(bookId);
+            if (code >= 0) {
+                bookMask[code] = true;
+            }
+        }
+        empty |= !any(bookMask);
+        return this;
+    }
+
+    // Tested once per member code rather than once per row
+    public FactScan users(LongPredicate userFilter) {
+        userMask = new boolean[facts.userCount()];
+        for (int code = 0; code < userMask.length; code++) {
+            userMask[code] = userFilter.test(facts.userId(code));
+        }
+        empty |= !any(userMask);
+        return this;
+    }
+
+    public FactScan genres(Collection<String> genres) {
+        genreMask = new boolean[facts.genreCount()];
+        for (String genre : genres) {
+            int code = facts.findGenreCode(genre);
+            if (code >= 0) {
+                genreMask[code] = true;
+            }
+        }
+        empty |= !any(genreMask);
+        return this;
+    }
+
+    public FactScan open() {
+        open = Boolean.TRUE;
+        return this;
+    }
+
+    public FactScan returned() {
+        open = Boolean.FALSE;
+        return this;
+    }
+
+    public long count() {
+        return aggregate(() -> new long[1], (count, f, row) -> count[0]++, FactScan::sum)[0];
+    }
+
+    public Map<Long, Long> countByBook() {
+        long[] counts = aggregate(() -> new long[facts.bookCount()], (acc, f, row) -> acc[f.bookCode(row)]++, FactScan::sum);
+        Map<Long, Long> result = new HashMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                result.put(facts.bookId(code), counts[code]);
+            }
+        }
+        return result;
+    }
+
+    public Map<Long, Long> countByUser() {
+        long[] counts = aggregate(() -> new long[facts.userCount()], (acc, f, row) -> acc[f.userCode(row)]++, FactScan::sum);
+        Map<Long, Long> result = new HashMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                result.put(facts.userId(code), counts[code]);
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Long> countByGenre() {
+        long[] counts = aggregate(() -> new long[facts.genreCount()], (acc, f, row) -> acc[f.genreCode(row)]++, FactScan::sum);
+        Map<String, Long> result = new HashMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                result.put(facts.genre(code), counts[code]);
+            }
+        }
+        return result;
+    }
+
+    // Accumulators must not be shared between tasks: each leaf gets its own from "identity"
+    public <A> A aggregate(Supplier<A> identity, RowAccumulator<A> accumulator, BinaryOperator<A> combiner) {
+        if (empty || facts.size() == 0) {
+            return identity.get();
+        }
+        // About two leaves per worker: enough to balance load, few enough that accumulators sized by
+        // book or member count are only allocated a handful of times
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int leafRows = Math.max(MIN_LEAF_ROWS, facts.size() / (pool.getParallelism() * 2) + 1);
+        return pool.invoke(new ScanTask<>(0, facts.size(), leafRows, identity, accumulator, combiner));
+    }
+
+    private boolean matches(int row) {
+        long borrowed = facts.borrowedAt(row);
+        return borrowed >= borrowedFrom && borrowed < borrowedBefore
+            && (bookCode < 0 || facts.bookCode(row) == bookCode)
+            && (userCode < 0 || facts.userCode(row) == userCode)
+            && (genreCode < 0 || facts.genreCode(row) == genreCode)
+            && (open == null || facts.isOpen(row) == open)
+            && (bookMask == null || bookMask[facts.bookCode(row)])
+            && (userMask == null || userMask[facts.userCode(row)])
+            && (genreMask == null || genreMask[facts.genreCode(row)]);
+    }
+
+    private static boolean any(boolean[] mask) {
+        for (boolean set : mask) {
+            if (set) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long[] sum(long[] left, long[] right) {
+        for (int i = 0; i < left.length; i++) {
+            left[i] += right[i];
+        }
+        return left;
+    }
+
+    private class ScanTask<A> extends RangeTask<A> {
+        private final int leafRows;
+        private final Supplier<A> identity;
+        private final RowAccumulator<A> accumulator;
+        private final BinaryOperator<A> combiner;
+
+        ScanTask(int from, int to, int leafRows, Supplier<A> identity, RowAccumulator<A> accumulator,
+                 BinaryOperator<A> combiner) {
+            super(from, to, leafRows);
+            this.leafRows = leafRows;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A leaf(int from, int to) {
+            A result = identity.get();
+            for (int row = from; row < to; row++) {
+                if (matches(row)) {
+                    accumulator.accept(result, facts, row);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        protected A combine(A left, A right) {
+            return combiner.apply(left, right);
+        }
+
+        @Override
+        protected RangeTask<A> split(int from, int to) {
+            return new ScanTask<>(from, to, leafRows, identity, accumulator, combiner);
+        }
+    }
+}
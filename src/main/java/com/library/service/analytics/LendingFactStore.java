@@ -0,0 +1,286 @@
+package com.library.service.analytics;
+
+import com.library.event.BookEvent;
+import com.library.event.LendingEvent;
+import com.library.model.BookLending;
+import com.library.repository.BookLendingRepository;
+import com.library.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Append-only columnar copy of the lending table for analytics: about 40 bytes per lending in primitive
+// arrays instead of a BookLending graph with its Book and User. Loaded once at startup, then kept
+// current from LendingEvent (new rows on borrow, return time filled in on return) and BookEvent (genre).
+// Readers take a LendingFacts view, which never changes size underneath them.
+@Component
+public class LendingFactStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LendingFactStore.class);
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    @Autowired
+    private BookLendingRepository lendingRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private volatile Columns columns;
+    private volatile LendingFacts view;
+    // Events that arrive while a load is streaming are replayed on the loaded columns
+    private List<Object> pendingEvents;
+
+    public LendingFacts getFacts() {
+        LendingFacts current = view;
+        while (current == null) {
+            load();
+            current = awaitLoad();
+        }
+        return current;
+    }
+
+    public FactScan scan() {
+        return getFacts().scan();
+    }
+
+    // The nightly reload repairs drift from missed events or direct SQL edits
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${analytics.facts.reload-cron:0 30 2 * * *}")
+    public void load() {
+        synchronized (this) {
+            if (pendingEvents != null) {
+                return;
+            }
+            pendingEvents = new ArrayList<>();
+        }
+        long started = System.nanoTime();
+        Columns loaded;
+        try {
+            loaded = loadColumns();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pendingEvents = null;
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            columns = loaded;
+            pendingEvents.forEach(this::apply);
+            pendingEvents = null;
+            publish();
+            notifyAll();
+        }
+        log.info("Loaded {} lending facts in {} ms", loaded.size, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Waits out a load started by another thread; null if that load failed
+    private synchronized LendingFacts awaitLoad() {
+        while (view == null && pendingEvents != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for lending facts", e);
+            }
+        }
+        return view;
+    }
+
+    @EventListener
+    public synchronized void onLendingEvent(LendingEvent event) {
+        record(event);
+    }
+
+    @EventListener
+    public synchronized void onBookEvent(BookEvent event) {
+        record(event);
+    }
+
+    private void record(Object event) {
+        if (pendingEvents != null) {
+            pendingEvents.add(event);
+        }
+        if (columns != null) {
+            apply(event);
+            publish();
+        }
+    }
+
+    private void apply(Object event) {
+        if (event instanceof LendingEvent lendingEvent) {
+            BookLending lending = lendingEvent.getLending();
+            if (lendingEvent.getType() == LendingEvent.Type.BORROWED) {
+                columns.append(lending.getId(), lending.getBook().getId(), lending.getUser().getId(),
+                    LendingFacts.toEpochSecond(lending.getBorrowDate()),
+                    LendingFacts.toEpochSecond(lending.getDueDate()),
+                    LendingFacts.toEpochSecond(lending.getReturnDate()));
+            } else {
+                columns.markReturned(lending.getId(), LendingFacts.toEpochSecond(lending.getReturnDate()));
+            }
+        } else if (event instanceof BookEvent bookEvent && bookEvent.getType() != BookEvent.Type.DELETED) {
+            columns.setGenre(bookEvent.getBookId(), bookEvent.getBook().getGenre());
+        }
+    }
+
+    private void publish() {
+        view = columns.view();
+    }
+
+    private Columns loadColumns() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> {
+            Columns loaded = new Columns();
+            try (Stream<Object[]> catalog = bookRepository.streamCatalog()) {
+                catalog.forEach(row -> loaded.setGenre((Long) row[0], (String) row[2]));
+            }
+            try (Stream<Object[]> rows = lendingRepository.streamLendingFacts()) {
+                rows.forEach(row -> loaded.append((Long) row[0], (Long) row[1], (Long) row[2],
+                    LendingFacts.toEpochSecond((LocalDateTime) row[3]),
+                    LendingFacts.toEpochSecond((LocalDateTime) row[4]),
+                    LendingFacts.toEpochSecond((LocalDateTime) row[5])));
+            }
+            return loaded;
+        });
+    }
+
+    // Mutable columns, only touched under the store's lock
+    private static class Columns {
+        private int size;
+        private long[] lendingIds = new long[INITIAL_CAPACITY];
+        private int[] bookCodes = new int[INITIAL_CAPACITY];
+        private int[] userCodes = new int[INITIAL_CAPACITY];
+        private long[] borrowedAt = new long[INITIAL_CAPACITY];
+        private long[] dueAt = new long[INITIAL_CAPACITY];
+        private long[] returnedAt = new long[INITIAL_CAPACITY];
+
+        private final Map<Long, Integer> bookCodesById = new ConcurrentHashMap<>();
+        private long[] bookIds = new long[INITIAL_CAPACITY];
+        private int[] genreOfBook = new int[INITIAL_CAPACITY];
+        private int bookCount;
+
+        private final Map<Long, Integer> userCodesById = new ConcurrentHashMap<>();
+        private long[] userIds = new long[INITIAL_CAPACITY];
+        private int userCount;
+
+        // Code 0 is reserved for books with no (or not yet known) genre
+        private final List<String> genres = new ArrayList<>(Collections.singletonList(null));
+
+        // Rows and books below these counts are visible to the last published view, so changing them in
+        // place would reorder its rows or hand it genre codes beyond its genre list
+        private int sharedRows;
+        private int sharedBooks;
+
+        // Lendings usually arrive in id order (identity keys); one committed out of order is inserted at
+        // its sorted position, which keeps lendingIds sorted for markReturned
+        void append(long lendingId, long bookId, long userId, long borrowed, long due, long returned) {
+            int row = size;
+            if (size > 0 && lendingId <= lendingIds[size - 1]) {
+                row = Arrays.binarySearch(lendingIds, 0, size, lendingId);
+                if (row >= 0) {
+                    return;
+                }
+                row = -row - 1;
+            }
+            if (size == lendingIds.length || row < sharedRows) {
+                int capacity = size == lendingIds.length ? size * 2 : lendingIds.length;
+                lendingIds = Arrays.copyOf(lendingIds, capacity);
+                bookCodes = Arrays.copyOf(bookCodes, capacity);
+                userCodes = Arrays.copyOf(userCodes, capacity);
+                borrowedAt = Arrays.copyOf(borrowedAt, capacity);
+                dueAt = Arrays.copyOf(dueAt, capacity);
+                returnedAt = Arrays.copyOf(returnedAt, capacity);
+                sharedRows = 0;
+            }
+            if (row < size) {
+                int moved = size - row;
+                System.arraycopy(lendingIds, row, lendingIds, row + 1, moved);
+                System.arraycopy(bookCodes, row, bookCodes, row + 1, moved);
+                System.arraycopy(userCodes, row, userCodes, row + 1, moved);
+                System.arraycopy(borrowedAt, row, borrowedAt, row + 1, moved);
+                System.arraycopy(dueAt, row, dueAt, row + 1, moved);
+                System.arraycopy(returnedAt, row, returnedAt, row + 1, moved);
+            }
+            lendingIds[row] = lendingId;
+            bookCodes[row] = bookCode(bookId);
+            userCodes[row] = userCode(userId);
+            borrowedAt[row] = borrowed;
+            dueAt[row] = due;
+            returnedAt[row] = returned;
+            size++;
+        }
+
+        // Written in place: a view that sees a return a little early is still consistent
+        void markReturned(long lendingId, long returned) {
+            int row = Arrays.binarySearch(lendingIds, 0, size, lendingId);
+            if (row >= 0) {
+                returnedAt[row] = returned;
+            }
+        }
+
+        void setGenre(long bookId, String genre) {
+            int genreCode = genres.indexOf(genre);
+            if (genreCode < 0) {
+                genreCode = genres.size();
+                genres.add(genre);
+            }
+            int bookCode = bookCode(bookId);
+            if (bookCode < sharedBooks) {
+                genreOfBook = genreOfBook.clone();
+                sharedBooks = 0;
+            }
+            genreOfBook[bookCode] = genreCode;
+        }
+
+        private int bookCode(long bookId) {
+            Integer code = bookCodesById.get(bookId);
+            if (code != null) {
+                return code;
+            }
+            if (bookCount == bookIds.length) {
+                bookIds = Arrays.copyOf(bookIds, bookCount * 2);
+                genreOfBook = Arrays.copyOf(genreOfBook, bookCount * 2);
+            }
+            bookIds[bookCount] = bookId;
+            genreOfBook[bookCount] = 0;
+            bookCodesById.put(bookId, bookCount);
+            return bookCount++;
+        }
+
+        private int userCode(long userId) {
+            Integer code = userCodesById.get(userId);
+            if (code != null) {
+                return code;
+            }
+            if (userCount == userIds.length) {
+                userIds = Arrays.copyOf(userIds, userCount * 2);
+            }
+            userIds[userCount] = userId;
+            userCodesById.put(userId, userCount);
+            return userCount++;
+        }
+
+        LendingFacts view() {
+            sharedRows = size;
+            sharedBooks = bookCount;
+            return new LendingFacts(size, lendingIds, bookCodes, userCodes, borrowedAt, dueAt, returnedAt,
+                bookCount, bookIds, genreOfBook, userCount, userIds, Collections.unmodifiableList(new ArrayList<>(genres)),
+                bookCodesById, userCodesById);
+        }
+    }
+}
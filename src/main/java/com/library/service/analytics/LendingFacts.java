@@ -0,0 +1,102 @@
+package com.library.service.analytics;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+// View of the first "size" rows of the fact columns. The store copies an array before changing anything
+// a published view can see (return times excepted), so rows never move underneath a reader. Books and
+// members are dictionary-encoded to dense int codes so aggregations can index plain arrays; genre is a
+// book attribute looked up through the book code, so a genre change is one array write instead of a
+// column rewrite.
+public class LendingFacts {
+
+    public static final long NOT_RETURNED = Long.MIN_VALUE;
+
+    private final int size;
+    private final long[] lendingIds;
+    private final int[] bookCodes;
+    private final int[] userCodes;
+    private final long[] borrowedAt;
+    private final long[] dueAt;
+    private final long[] returnedAt;
+
+    private final int bookCount;
+    private final long[] bookIds;
+    private final int[] genreOfBook;
+    private final int userCount;
+    private final long[] userIds;
+    private final List<String> genres;
+    // Shared with the store and only ever added to; codes at or beyond this view's counts are ignored
+    private final Map<Long, Integer> bookCodesById;
+    private final Map<Long, Integer> userCodesById;
+
+    LendingFacts(int size, long[] lendingIds, int[] bookCodes, int[] userCodes,
+                 long[] borrowedAt, long[] dueAt, long[] returnedAt,
+                 int bookCount, long[] bookIds, int[] genreOfBook,
+                 int userCount, long[] userIds, List<String> genres,
+                 Map<Long, Integer> bookCodesById, Map<Long, Integer> userCodesById) {
+        this.size = size;
+        this.lendingIds = lendingIds;
+        this.bookCodes = bookCodes;
+        this.userCodes = userCodes;
+        this.borrowedAt = borrowedAt;
+        this.dueAt = dueAt;
+        this.returnedAt = returnedAt;
+        this.bookCount = bookCount;
+        this.bookIds = bookIds;
+        this.genreOfBook = genreOfBook;
+        this.userCount = userCount;
+        this.userIds = userIds;
+        this.genres = genres;
+        this.bookCodesById = bookCodesById;
+        this.userCodesById = userCodesById;
+    }
+
+    public int size() { return size; }
+    public long lendingId(int row) { return lendingIds[row]; }
+    public int bookCode(int row) { return bookCodes[row]; }
+    public int userCode(int row) { return userCodes[row]; }
+    public int genreCode(int row) { return genreOfBook[bookCodes[row]]; }
+    public long borrowedAt(int row) { return borrowedAt[row]; }
+    public long dueAt(int row) { return dueAt[row]; }
+    public long returnedAt(int row) { return returnedAt[row]; }
+    public boolean isOpen(int row) { return returnedAt[row] == NOT_RETURNED; }
+
+    public int bookCount() { return bookCount; }
+    public long bookId(int bookCode) { return bookIds[bookCode]; }
+    public int userCount() { return userCount; }
+    public long userId(int userCode) { return userIds[userCode]; }
+    public int genreCount() { return genres.size(); }
+    public String genre(int genreCode) { return genres.get(genreCode); }
+
+    // -1 when the book, member or genre has no lendings in this view
+    public int findBookCode(long bookId) {
+        Integer code = bookCodesById.get(bookId);
+        return code != null && code < bookCount ? code : -1;
+    }
+
+    public int findUserCode(long userId) {
+        Integer code = userCodesById.get(userId);
+        return code != null && code < userCount ? code : -1;
+    }
+
+    public int findGenreCode(String genre) {
+        return genres.indexOf(genre);
+    }
+
+    public FactScan scan() {
+        return new FactScan(this);
+    }
+
+    // Timestamps are stored as UTC epoch seconds of the entity's LocalDateTime, so conversions round-trip
+    // exactly; a null (not yet returned) maps to NOT_RETURNED
+    public static long toEpochSecond(LocalDateTime time) {
+        return time == null ? NOT_RETURNED : time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public static LocalDateTime toDateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,183 @@
+package com.library.service.analytics;
+
+import com.library.model.DailyBookActivity;
+import com.library.model.DailyGenreActivity;
+import com.library.model.DailyUserActivity;
+import com.library.model.RollupWatermark;
+import com.library.repository.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Maintains daily borrow/return counts per book, genre and member so forecasts read a few thousand
+// rollup rows instead of every lending. Each run re-aggregates whole days from the raw table, starting
+// "late-days" before the watermark: returns recorded late or edited lendings inside that window are
+// picked up automatically, older corrections need a backfill.
+@Service
+public class LendingRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(LendingRollupService.class);
+    private static final String WATERMARK = "lending-activity";
+    // Bounds the rows held in memory and the size of each transaction during long backfills
+    private static final int CHUNK_DAYS = 31;
+
+    @Autowired
+    private BookLendingRepository lendingRepository;
+
+    @Autowired
+    private DailyBookActivityRepository bookActivityRepository;
+
+    @Autowired
+    private DailyGenreActivityRepository genreActivityRepository;
+
+    @Autowired
+    private DailyUserActivityRepository userActivityRepository;
+
+    @Autowired
+    private RollupWatermarkRepository watermarkRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${analytics.rollup.late-days:7}")
+    private int lateDays;
+
+    @Scheduled(fixedDelayString = "${analytics.rollup.interval-ms:900000}",
+               initialDelayString = "${analytics.rollup.initial-delay-ms:30000}")
+    public synchronized void rollUp() {
+        LocalDate today = LocalDate.now();
+        LocalDate from = watermarkRepository.findById(WATERMARK)
+            .map(RollupWatermark::getRolledUpTo)
+            .map(mark -> (mark.isAfter(today) ? today : mark).minusDays(lateDays))
+            .orElseGet(() -> firstLendingDay(today));
+
+        // Today is included but stays behind the watermark, so it is recomputed until it is over
+        long rows = rebuild(from, today.plusDays(1));
+        saveWatermark(today);
+        log.debug("Rolled up lending activity from {} ({} rows)", from, rows);
+    }
+
+    // Recomputes [from, to] inclusive, e.g. after bulk imports or corrections older than the late window
+    public synchronized Map<String, Object> backfill(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("'to' must not be before 'from'");
+        }
+        long started = System.nanoTime();
+        long rows = rebuild(from, to.plusDays(1));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("from", from);
+        result.put("to", to);
+        result.put("rows", rows);
+        result.put("millis", (System.nanoTime() - started) / 1_000_000);
+        return result;
+    }
+
+    private long rebuild(LocalDate from, LocalDate toExclusive) {
+        TransactionTemplate transaction = writeTransaction();
+        long rows = 0;
+        for (LocalDate start = from; start.isBefore(toExclusive); start = start.plusDays(CHUNK_DAYS)) {
+            LocalDate end = start.plusDays(CHUNK_DAYS).isBefore(toExclusive) ? start.plusDays(CHUNK_DAYS) : toExclusive;
+            LocalDate chunkStart = start;
+            rows += transaction.execute(status -> rebuildChunk(chunkStart, end));
+        }
+        return rows;
+    }
+
+    // Delete-and-insert keeps each run idempotent, whatever was in the window before
+    private long rebuildChunk(LocalDate from, LocalDate to) {
+        bookActivityRepository.deleteByActivityDateRange(from, to);
+        genreActivityRepository.deleteByActivityDateRange(from, to);
+        userActivityRepository.deleteByActivityDateRange(from, to);
+
+        Rollup rollup = new Rollup();
+        LocalDateTime fromTime = from.atStartOfDay();
+        LocalDateTime toTime = to.atStartOfDay();
+        lendingRepository.countBorrowsByDay(fromTime, toTime).forEach(row -> rollup.add(row, Rollup.BORROWS));
+        lendingRepository.countReturnsByDay(fromTime, toTime).forEach(row -> rollup.add(row, Rollup.RETURNS));
+
+        List<DailyBookActivity> books = new ArrayList<>(rollup.byBook.size());
+        rollup.byBook.forEach((key, counts) -> {
+            DailyBookActivity activity = new DailyBookActivity();
+            activity.setBookId((Long) key.id());
+            activity.setActivityDate(key.day());
+            activity.setBorrows(counts[Rollup.BORROWS]);
+            activity.setReturns(counts[Rollup.RETURNS]);
+            books.add(activity);
+        });
+        List<DailyGenreActivity> genres = new ArrayList<>(rollup.byGenre.size());
+        rollup.byGenre.forEach((key, counts) -> {
+            DailyGenreActivity activity = new DailyGenreActivity();
+            activity.setGenre((String) key.id());
+            activity.setActivityDate(key.day());
+            activity.setBorrows(counts[Rollup.BORROWS]);
+            activity.setReturns(counts[Rollup.RETURNS]);
+            genres.add(activity);
+        });
+        List<DailyUserActivity> users = new ArrayList<>(rollup.byUser.size());
+        rollup.byUser.forEach((key, counts) -> {
+            DailyUserActivity activity = new DailyUserActivity();
+            activity.setUserId((Long) key.id());
+            activity.setActivityDate(key.day());
+            activity.setBorrows(counts[Rollup.BORROWS]);
+            activity.setReturns(counts[Rollup.RETURNS]);
+            users.add(activity);
+        });
+
+        bookActivityRepository.saveAll(books);
+        genreActivityRepository.saveAll(genres);
+        userActivityRepository.saveAll(users);
+        return books.size() + genres.size() + users.size();
+    }
+
+    private LocalDate firstLendingDay(LocalDate today) {
+        LocalDateTime earliest = lendingRepository.findEarliestBorrowDate();
+        return earliest == null ? today : earliest.toLocalDate();
+    }
+
+    private void saveWatermark(LocalDate rolledUpTo) {
+        RollupWatermark watermark = new RollupWatermark();
+        watermark.setName(WATERMARK);
+        watermark.setRolledUpTo(rolledUpTo);
+        watermark.setUpdatedAt(LocalDateTime.now());
+        writeTransaction().executeWithoutResult(status -> watermarkRepository.save(watermark));
+    }
+
+    // A run can be triggered from inside a read-only report section (a forecast catching up), so the
+    // writes always commit in a transaction of their own
+    private TransactionTemplate writeTransaction() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transaction;
+    }
+
+    // One grouped (book, genre, member, day) result folded into the three rollup grains
+    private static class Rollup {
+        static final int BORROWS = 0;
+        static final int RETURNS = 1;
+
+        private final Map<Key, long[]> byBook = new HashMap<>();
+        private final Map<Key, long[]> byGenre = new HashMap<>();
+        private final Map<Key, long[]> byUser = new HashMap<>();
+
+        void add(Object[] row, int column) {
+            LocalDate day = (LocalDate) row[3];
+            long count = ((Number) row[4]).longValue();
+            byBook.computeIfAbsent(new Key(row[0], day), key -> new long[2])[column] += count;
+            byGenre.computeIfAbsent(new Key(row[1], day), key -> new long[2])[column] += count;
+            byUser.computeIfAbsent(new Key(row[2], day), key -> new long[2])[column] += count;
+        }
+    }
+
+    private record Key(Object id, LocalDate day) {}
+}
@@ -0,0 +1,371 @@
+package com.library.service.analytics;
+
+import com.library.dto.analytics.LibraryStats;
+import com.library.dto.analytics.TopItemDTO;
+import com.library.event.AuthorEvent;
+import com.library.event.BookEvent;
+import com.library.event.LendingEvent;
+import com.library.event.MemberEvent;
+import com.library.event.ReviewEvent;
+import com.library.model.BookLending;
+import com.library.model.Review;
+import com.library.repository.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Keeps LibraryStats current from domain events so /api/analytics/stats never touches the tables.
+// A periodic reconcile reloads everything from the database to repair drift (missed events, direct
+// SQL edits) and refreshes the top-N rankings, which are allowed to be a few minutes stale; events
+// received during the reload are buffered and replayed on the reloaded state. The state keeps the ids of
+// the open loans, approved reviews, books, members and authors it counts, so an event for an entity the
+// reload already saw (committed before the reload, its listener run after it started) is not counted twice.
+@Component
+public class LibraryStatsAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(LibraryStatsAggregator.class);
+    private static final int MONTHS_OF_HISTORY = 12;
+    private static final int TOP_N = 10;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private BookLendingRepository lendingRepository;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // A single five-star review should not top the highest-rated list
+    @Value("${analytics.stats.top-rated-min-reviews:3}")
+    private long minReviewsForTopRated;
+
+    private volatile State state;
+    // Events that arrive while reconcile is loading are replayed on the loaded state
+    private List<Object> pendingEvents;
+    private volatile LibraryStats snapshot;
+    private volatile boolean dirty = true;
+    // The overdue count changes with the clock as well as with events: the snapshot is stale
+    // once the earliest not-yet-overdue loan passes its due date
+    private volatile LocalDateTime snapshotExpiresAt = LocalDateTime.MIN;
+
+    public LibraryStats getSnapshot() {
+        LibraryStats current = snapshot;
+        if (current != null && !dirty && LocalDateTime.now().isBefore(snapshotExpiresAt)) {
+            return current;
+        }
+        while (state == null) {
+            reconcile();
+            awaitReconcile();
+        }
+        synchronized (this) {
+            LocalDateTime now = LocalDateTime.now();
+            if (snapshot == null || dirty || !now.isBefore(snapshotExpiresAt)) {
+                snapshot = buildSnapshot(now);
+                snapshotExpiresAt = state.nextDueDate().orElse(LocalDateTime.MAX);
+                dirty = false;
+            }
+            return snapshot;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${analytics.stats.reconcile-interval-ms:300000}",
+               initialDelayString = "${analytics.stats.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        synchronized (this) {
+            if (pendingEvents != null) {
+                return;
+            }
+            pendingEvents = new ArrayList<>();
+        }
+        long started = System.nanoTime();
+        State fresh;
+        try {
+            fresh = loadState();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pendingEvents = null;
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            pendingEvents.forEach(event -> apply(fresh, event));
+            pendingEvents = null;
+            state = fresh;
+            dirty = true;
+            notifyAll();
+        }
+        log.debug("Reconciled library stats in {} ms", (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Waits out a reconcile started by another thread
+    private synchronized void awaitReconcile() {
+        while (state == null && pendingEvents != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for library stats", e);
+            }
+        }
+    }
+
+    @EventListener
+    public synchronized void onLendingEvent(LendingEvent event) {
+        record(event);
+    }
+
+    @EventListener
+    public synchronized void onReviewEvent(ReviewEvent event) {
+        record(event);
+    }
+
+    @EventListener
+    public synchronized void onBookEvent(BookEvent event) {
+        record(event);
+    }
+
+    @EventListener
+    public synchronized void onMemberEvent(MemberEvent event) {
+        record(event);
+    }
+
+    @EventListener
+    public synchronized void onAuthorEvent(AuthorEvent event) {
+        record(event);
+    }
+
+    private void record(Object event) {
+        if (pendingEvents != null) {
+            pendingEvents.add(event);
+        }
+        if (state != null) {
+            apply(state, event);
+            dirty = true;
+        }
+    }
+
+    // Applies an event unless the state already reflects it: each entity is counted through its id.
+    // A borrow for a loan the state holds as open was committed when the state was read, and so is in
+    // the monthly counts as well; its return always arrives after it.
+    private void apply(State target, Object event) {
+        if (event instanceof LendingEvent lendingEvent) {
+            BookLending lending = lendingEvent.getLending();
+            if (lendingEvent.getType() == LendingEvent.Type.BORROWED) {
+                if (target.openLoans.putIfAbsent(lending.getId(), lending.getDueDate()) == null) {
+                    target.addDue(lending.getDueDate());
+                    target.lendingsByMonth.merge(YearMonth.from(lending.getBorrowDate()), 1L, Long::sum);
+                }
+            } else {
+                LocalDateTime dueDate = target.openLoans.remove(lending.getId());
+                if (dueDate != null) {
+                    target.removeDue(dueDate);
+                }
+            }
+        } else if (event instanceof ReviewEvent reviewEvent) {
+            Review review = reviewEvent.getReview();
+            if (reviewEvent.getType() == ReviewEvent.Type.APPROVED) {
+                if (target.approvedRatings.putIfAbsent(review.getId(), review.getRating()) == null) {
+                    target.ratingSum += review.getRating();
+                }
+            } else if (reviewEvent.getType() == ReviewEvent.Type.DELETED) {
+                Integer rating = target.approvedRatings.remove(review.getId());
+                if (rating != null) {
+                    target.ratingSum -= rating;
+                }
+            }
+        } else if (event instanceof BookEvent bookEvent) {
+            // Remove the old entry (if any) and add the new one, so an update that changes genre also works
+            if (target.genreByBook.containsKey(bookEvent.getBookId())) {
+                target.decrementGenre(target.genreByBook.remove(bookEvent.getBookId()));
+                target.totalBooks--;
+            }
+            if (bookEvent.getType() != BookEvent.Type.DELETED) {
+                String genre = bookEvent.getBook().getGenre();
+                target.genreByBook.put(bookEvent.getBookId(), genre);
+                target.booksByGenre.merge(genre, 1L, Long::sum);
+                target.totalBooks++;
+            }
+        } else if (event instanceof MemberEvent memberEvent) {
+            target.memberIds.add(memberEvent.getUserId());
+        } else if (event instanceof AuthorEvent authorEvent) {
+            if (authorEvent.getType() == AuthorEvent.Type.CREATED) {
+                target.authorIds.add(authorEvent.getAuthorId());
+            } else {
+                target.authorIds.remove(authorEvent.getAuthorId());
+            }
+        }
+    }
+
+    private LibraryStats buildSnapshot(LocalDateTime now) {
+        LibraryStats stats = new LibraryStats();
+        stats.setTotalBooks(state.totalBooks);
+        stats.setTotalMembers(state.memberIds.size());
+        stats.setTotalAuthors(state.authorIds.size());
+        stats.setActiveLendings(state.openLoans.size());
+        stats.setOverdueBooks(state.advanceOverdue(now));
+        stats.setAverageRating(state.approvedRatings.isEmpty() ? 0.0 : (double) state.ratingSum / state.approvedRatings.size());
+        stats.setMostBorrowedBooks(state.mostBorrowedBooks);
+        stats.setMostActiveMembers(state.mostActiveMembers);
+        stats.setHighestRatedBooks(state.highestRatedBooks);
+        stats.setBooksByGenre(Collections.unmodifiableMap(new HashMap<>(state.booksByGenre)));
+
+        YearMonth firstMonth = YearMonth.from(now).minusMonths(MONTHS_OF_HISTORY - 1);
+        Map<String, Long> lendingsByMonth = new LinkedHashMap<>();
+        state.lendingsByMonth.tailMap(firstMonth).forEach((month, count) -> lendingsByMonth.put(month.toString(), count));
+        stats.setLendingsByMonth(Collections.unmodifiableMap(lendingsByMonth));
+        return stats;
+    }
+
+    private State loadState() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        // Every query sees the same committed data, so an open loan missing from the loaded ids is also
+        // missing from the monthly counts
+        readOnly.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        return readOnly.execute(status -> {
+            State loaded = new State();
+            loaded.memberIds.addAll(userRepository.findAllIds());
+            loaded.authorIds.addAll(authorRepository.findAllIds());
+            lendingRepository.findOpenLoanDueDates().forEach(row -> {
+                LocalDateTime dueDate = (LocalDateTime) row[1];
+                loaded.openLoans.put((Long) row[0], dueDate);
+                loaded.addDue(dueDate);
+            });
+
+            // The counts are grouped in SQL; each book's genre is still needed to apply BookEvents
+            bookRepository.countBooksByGenre().forEach(row -> loaded.booksByGenre.put(row.getGenre(), row.getCount()));
+            try (Stream<Object[]> catalog = bookRepository.streamCatalog()) {
+                catalog.forEach(row -> loaded.genreByBook.put((Long) row[0], (String) row[2]));
+            }
+            loaded.totalBooks = loaded.genreByBook.size();
+
+            reviewRepository.findApprovedRatings().forEach(row -> {
+                Integer rating = (Integer) row[1];
+                loaded.approvedRatings.put((Long) row[0], rating);
+                loaded.ratingSum += rating;
+            });
+
+            LocalDateTime since = YearMonth.now().minusMonths(MONTHS_OF_HISTORY - 1).atDay(1).atStartOfDay();
+            lendingRepository.countLendingsByMonthSince(since).forEach(row ->
+                loaded.lendingsByMonth.put(YearMonth.of(row.getYear(), row.getMonth()), row.getCount()));
+
+            Pageable topN = PageRequest.of(0, TOP_N);
+            loaded.mostBorrowedBooks = lendingRepository.findMostBorrowedBooks(topN)
+                    .stream()
+                    .map(result -> new TopItemDTO(
+                        result.getBookId(),
+                        result.getBookTitle(),
+                        result.getBorrowCount()))
+                    .collect(Collectors.toList());
+            loaded.mostActiveMembers = lendingRepository.findMostActiveMembers(topN)
+                    .stream()
+                    .map(result -> new TopItemDTO(
+                        result.getUserId(),
+                        result.getUsername(),
+                        result.getBorrowCount()))
+                    .collect(Collectors.toList());
+            loaded.highestRatedBooks = reviewRepository.findTopRatedBooks(minReviewsForTopRated, topN)
+                    .stream()
+                    .map(result -> new TopItemDTO(
+                        result.getBookId(),
+                        result.getBookTitle(),
+                        result.getAverageRating()))
+                    .collect(Collectors.toList());
+            return loaded;
+        });
+    }
+
+    private static class State {
+        private long totalBooks;
+        private long ratingSum;
+
+        private final Set<Long> memberIds = new HashSet<>();
+        private final Set<Long> authorIds = new HashSet<>();
+        // Due date by lending id
+        private final Map<Long, LocalDateTime> openLoans = new HashMap<>();
+        // Rating by review id
+        private final Map<Long, Integer> approvedRatings = new HashMap<>();
+
+        // Open loans by due date, split at overdueBoundary; each loan moves across at most once
+        private final TreeMap<LocalDateTime, Long> pendingDueDates = new TreeMap<>();
+        private final Map<LocalDateTime, Long> overdueDueDates = new HashMap<>();
+        private LocalDateTime overdueBoundary = LocalDateTime.MIN;
+        private long overdueCount;
+        private final Map<Long, String> genreByBook = new HashMap<>();
+        private final Map<String, Long> booksByGenre = new HashMap<>();
+        private final TreeMap<YearMonth, Long> lendingsByMonth = new TreeMap<>();
+
+        private List<TopItemDTO> mostBorrowedBooks = List.of();
+        private List<TopItemDTO> mostActiveMembers = List.of();
+        private List<TopItemDTO> highestRatedBooks = List.of();
+
+        void addDue(LocalDateTime dueDate) {
+            if (dueDate.isBefore(overdueBoundary)) {
+                overdueDueDates.merge(dueDate, 1L, Long::sum);
+                overdueCount++;
+            } else {
+                pendingDueDates.merge(dueDate, 1L, Long::sum);
+            }
+        }
+
+        void removeDue(LocalDateTime dueDate) {
+            if (overdueDueDates.containsKey(dueDate)) {
+                overdueDueDates.computeIfPresent(dueDate, State::decrement);
+                overdueCount--;
+            } else {
+                pendingDueDates.computeIfPresent(dueDate, State::decrement);
+            }
+        }
+
+        // Moves loans whose due date has passed into the overdue set and returns its size
+        long advanceOverdue(LocalDateTime now) {
+            while (!pendingDueDates.isEmpty() && pendingDueDates.firstKey().isBefore(now)) {
+                Map.Entry<LocalDateTime, Long> due = pendingDueDates.pollFirstEntry();
+                overdueDueDates.merge(due.getKey(), due.getValue(), Long::sum);
+                overdueCount += due.getValue();
+            }
+            overdueBoundary = now;
+            return overdueCount;
+        }
+
+        Optional<LocalDateTime> nextDueDate() {
+            return pendingDueDates.isEmpty() ? Optional.empty() : Optional.of(pendingDueDates.firstKey());
+        }
+
+        private static Long decrement(LocalDateTime date, Long count) {
+            return count > 1 ? count - 1 : null;
+        }
+
+        void decrementGenre(String genre) {
+            booksByGenre.computeIfPresent(genre, (g, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+}
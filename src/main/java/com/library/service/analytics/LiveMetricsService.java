@@ -0,0 +1,239 @@
+package com.library.service.analytics;
+
+import com.library.dto.analytics.LibraryStats;
+import com.library.event.LendingEvent;
+import com.library.model.BookLending;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Pushes dashboard metrics to any number of SSE clients from one aggregation. Active and overdue loans
+// and the average rating come from LibraryStatsAggregator (event-fed); borrows per minute and the genre
+// mix of the last hour are counted here from borrow events. Each tick sends only the metrics that changed.
+// Every client has a one-slot mailbox: while a send to a slow client is still in flight, newer deltas are
+// merged into the waiting one, so it receives the latest values instead of a growing backlog. A send
+// blocks while the client's socket is full, so each client in flight gets its own sender thread (at most
+// max-subscribers of them) and ticks run on their own thread, never behind the shared scheduler.
+@Service
+public class LiveMetricsService {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveMetricsService.class);
+    private static final int WINDOW_MINUTES = 60;
+
+    @Autowired
+    private LibraryStatsAggregator statsAggregator;
+
+    @Value("${analytics.live.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    @Value("${analytics.live.interval-ms:1000}")
+    private long intervalMs;
+
+    @Value("${analytics.live.max-subscribers:100}")
+    private int maxSubscribers;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private ThreadPoolExecutor sender;
+    private ScheduledExecutorService ticker;
+
+    // Borrows per minute over the last hour, in a ring indexed by minute of the epoch
+    private final long[] slotMinute = new long[WINDOW_MINUTES];
+    private final long[] slotBorrows = new long[WINDOW_MINUTES];
+    private final List<Map<String, Long>> slotGenres = new ArrayList<>();
+
+    private Map<String, Object> lastPublished = Map.of();
+    private long sequence;
+
+    public LiveMetricsService() {
+        Arrays.fill(slotMinute, -1);
+        for (int slot = 0; slot < WINDOW_MINUTES; slot++) {
+            slotGenres.add(new HashMap<>());
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger counter = new AtomicInteger();
+        // Each subscriber has at most one drain in flight and subscribers are capped, so a direct handoff
+        // never needs more than maxSubscribers threads; idle ones go away after a minute
+        sender = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "live-metrics-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "live-metrics-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tickSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        ticker.shutdownNow();
+        sender.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    // The first message carries every metric; later ones only what changed. Clients merge each into their state.
+    // Throws RejectedExecutionException when max-subscribers clients are already connected
+    public synchronized SseEmitter subscribe() {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new RejectedExecutionException("Too many live metrics subscribers");
+        }
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        if (lastPublished.isEmpty()) {
+            lastPublished = currentMetrics(LocalDateTime.now());
+        }
+        subscribers.add(subscriber);
+        subscriber.offer(lastPublished, sequence);
+        return emitter;
+    }
+
+    @EventListener
+    public synchronized void onLendingEvent(LendingEvent event) {
+        if (event.getType() != LendingEvent.Type.BORROWED) {
+            return;
+        }
+        BookLending lending = event.getLending();
+        long minute = LendingFacts.toEpochSecond(lending.getBorrowDate()) / 60;
+        int slot = slotFor(minute);
+        slotBorrows[slot]++;
+        String genre = lending.getBook().getGenre();
+        slotGenres.get(slot).merge(genre == null ? "" : genre, 1L, Long::sum);
+    }
+
+    // A failed tick must not cancel the schedule
+    private void tickSafely() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            log.warn("Live metrics tick failed: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void tick() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Map<String, Object> current = currentMetrics(LocalDateTime.now());
+        Map<String, Object> delta = new LinkedHashMap<>();
+        current.forEach((name, value) -> {
+            if (!Objects.equals(lastPublished.get(name), value)) {
+                delta.put(name, value);
+            }
+        });
+        if (delta.isEmpty()) {
+            return;
+        }
+        lastPublished = current;
+        sequence++;
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(delta, sequence);
+        }
+    }
+
+    private Map<String, Object> currentMetrics(LocalDateTime now) {
+        LibraryStats stats = statsAggregator.getSnapshot();
+        long currentMinute = LendingFacts.toEpochSecond(now) / 60;
+
+        long borrowsLastHour = 0;
+        Map<String, Long> genreMix = new TreeMap<>();
+        for (int slot = 0; slot < WINDOW_MINUTES; slot++) {
+            if (slotMinute[slot] > currentMinute - WINDOW_MINUTES) {
+                borrowsLastHour += slotBorrows[slot];
+                slotGenres.get(slot).forEach((genre, count) -> genreMix.merge(genre, count, Long::sum));
+            }
+        }
+        int lastCompleteMinute = (int) Math.floorMod(currentMinute - 1, (long) WINDOW_MINUTES);
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("activeLendings", stats.getActiveLendings());
+        metrics.put("overdueBooks", stats.getOverdueBooks());
+        metrics.put("averageRating", stats.getAverageRating());
+        metrics.put("borrowsPerMinute", slotMinute[lastCompleteMinute] == currentMinute - 1 ? slotBorrows[lastCompleteMinute] : 0L);
+        metrics.put("borrowsLastHour", borrowsLastHour);
+        metrics.put("genreMix", genreMix);
+        return metrics;
+    }
+
+    // Reuses the ring slot of a minute that has left the window
+    private int slotFor(long minute) {
+        int slot = (int) Math.floorMod(minute, (long) WINDOW_MINUTES);
+        if (slotMinute[slot] != minute) {
+            slotMinute[slot] = minute;
+            slotBorrows[slot] = 0;
+            slotGenres.get(slot).clear();
+        }
+        return slot;
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        // Delta waiting to be sent, with newer values merged over older ones
+        private Map<String, Object> pending;
+        private long pendingSequence;
+        private boolean sending;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(Map<String, Object> delta, long sequence) {
+            synchronized (this) {
+                if (pending == null) {
+                    pending = new LinkedHashMap<>();
+                }
+                pending.putAll(delta);
+                pendingSequence = sequence;
+                if (sending) {
+                    return;
+                }
+                sending = true;
+            }
+            sender.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                Map<String, Object> next;
+                long nextSequence;
+                synchronized (this) {
+                    if (pending == null) {
+                        sending = false;
+                        return;
+                    }
+                    next = pending;
+                    nextSequence = pendingSequence;
+                    pending = null;
+                }
+                try {
+                    emitter.send(SseEmitter.event().name("metrics").id(String.valueOf(nextSequence)).data(next));
+                } catch (IOException | IllegalStateException e) {
+                    // Client went away; completing the emitter removes it
+                    subscribers.remove(this);
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+        }
+    }
+}
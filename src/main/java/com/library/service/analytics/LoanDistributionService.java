@@ -0,0 +1,148 @@
+package com.library.service.analytics;
+
+import com.library.event.LendingEvent;
+import com.library.model.BookLending;
+import com.library.service.analytics.sketch.TDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+
+// Loan duration and lateness distributions per genre and month of return, as t-digests: each genre-month
+// holds a few hundred centroids however many loans it had, and percentiles over any range of months merge
+// at most one digest per genre-month instead of sorting lending rows. Built from the lending fact store at
+// startup and updated on every return.
+@Service
+public class LoanDistributionService {
+
+    private static final Logger log = LoggerFactory.getLogger(LoanDistributionService.class);
+    private static final double SECONDS_PER_DAY = 86_400;
+
+    @Autowired
+    private LendingFactStore lendingFactStore;
+
+    @Value("${analytics.loans.compression:100}")
+    private double compression;
+
+    private record DigestKey(String genre, YearMonth month) {}
+
+    // Days overdue are only recorded for late returns; their share is lateReturns / returns
+    private class Digests {
+        final TDigest loanDays = new TDigest(compression);
+        final TDigest overdueDays = new TDigest(compression);
+
+        void add(long borrowed, long due, long returned) {
+            loanDays.add((returned - borrowed) / SECONDS_PER_DAY);
+            if (due != LendingFacts.NOT_RETURNED && returned > due) {
+                overdueDays.add((returned - due) / SECONDS_PER_DAY);
+            }
+        }
+
+        void merge(Digests other) {
+            loanDays.merge(other.loanDays);
+            overdueDays.merge(other.overdueDays);
+        }
+    }
+
+    private final Map<DigestKey, Digests> digests = new HashMap<>();
+    // Returns before this second are taken from the fact store, later ones from events
+    private long loadedBefore = Long.MAX_VALUE;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long started = System.nanoTime();
+        LendingFacts facts = lendingFactStore.getFacts();
+        long cutoff = LendingFacts.toEpochSecond(LocalDateTime.now());
+        synchronized (this) {
+            loadedBefore = cutoff;
+        }
+        Map<DigestKey, Digests> loaded = new HashMap<>();
+        int returns = 0;
+        for (int row = 0; row < facts.size(); row++) {
+            long returned = facts.returnedAt(row);
+            if (returned == LendingFacts.NOT_RETURNED || returned >= cutoff) {
+                continue;
+            }
+            String genre = facts.genre(facts.genreCode(row));
+            YearMonth month = YearMonth.from(LendingFacts.toDateTime(returned));
+            loaded.computeIfAbsent(new DigestKey(genre == null ? "" : genre, month), key -> new Digests())
+                .add(facts.borrowedAt(row), facts.dueAt(row), returned);
+            returns++;
+        }
+        synchronized (this) {
+            loaded.forEach((key, loadedDigests) -> digests.computeIfAbsent(key, k -> new Digests()).merge(loadedDigests));
+        }
+        log.info("Loaded {} returns into loan distributions in {} ms", returns, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @EventListener
+    public synchronized void onLendingEvent(LendingEvent event) {
+        BookLending lending = event.getLending();
+        if (event.getType() != LendingEvent.Type.RETURNED || lending.getReturnDate() == null) {
+            return;
+        }
+        long returned = LendingFacts.toEpochSecond(lending.getReturnDate());
+        if (returned < loadedBefore) {
+            return;
+        }
+        String genre = lending.getBook().getGenre();
+        digests.computeIfAbsent(new DigestKey(genre == null ? "" : genre, YearMonth.from(lending.getReturnDate())),
+                key -> new Digests())
+            .add(LendingFacts.toEpochSecond(lending.getBorrowDate()), LendingFacts.toEpochSecond(lending.getDueDate()), returned);
+    }
+
+    // Percentiles over returns in [from, to] for one genre, or for all genres with a breakdown per genre
+    public synchronized Map<String, Object> getPercentiles(String genre, YearMonth from, YearMonth to, List<Double> quantiles) {
+        Digests total = new Digests();
+        Map<String, Digests> byGenre = new TreeMap<>();
+        digests.forEach((key, monthDigests) -> {
+            if (key.month().isBefore(from) || key.month().isAfter(to) || (genre != null && !key.genre().equals(genre))) {
+                return;
+            }
+            total.merge(monthDigests);
+            if (genre == null) {
+                byGenre.computeIfAbsent(key.genre(), g -> new Digests()).merge(monthDigests);
+            }
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("genre", genre);
+        result.put("from", from.toString());
+        result.put("to", to.toString());
+        result.putAll(summarize(total, quantiles));
+        if (genre == null) {
+            Map<String, Object> genres = new LinkedHashMap<>();
+            byGenre.forEach((name, genreDigests) -> genres.put(name, summarize(genreDigests, quantiles)));
+            result.put("genres", genres);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> summarize(Digests digests, List<Double> quantiles) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("returns", digests.loanDays.count());
+        summary.put("lateReturns", digests.overdueDays.count());
+        summary.put("loanDays", percentiles(digests.loanDays, quantiles));
+        summary.put("daysOverdue", percentiles(digests.overdueDays, quantiles));
+        return summary;
+    }
+
+    // {"p50": 12.5, "p99.9": 40.1, ...} in days, to the hundredth; null where there are no returns
+    private static Map<String, Double> percentiles(TDigest digest, List<Double> quantiles) {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (double q : quantiles) {
+            double value = digest.quantile(q);
+            String label = "p" + BigDecimal.valueOf(q * 100).stripTrailingZeros().toPlainString();
+            percentiles.put(label, Double.isNaN(value) ? null : Math.round(value * 100) / 100.0);
+        }
+        return percentiles;
+    }
+}
@@ -0,0 +1,36 @@
+package com.library.service.analytics;
+
+import java.util.concurrent.RecursiveTask;
+
+// Fork-join over a row range: ranges above leafRows are halved, leaves are computed directly and
+// results are combined pairwise on the way back up. Shared by fact scans and the clustering passes.
+public abstract class RangeTask<R> extends RecursiveTask<R> {
+
+    private final int from;
+    private final int to;
+    private final int leafRows;
+
+    protected RangeTask(int from, int to, int leafRows) {
+        this.from = from;
+        this.to = to;
+        this.leafRows = leafRows;
+    }
+
+    protected abstract R leaf(int from, int to);
+
+    protected abstract R combine(R left, R right);
+
+    protected abstract RangeTask<R> split(int from, int to);
+
+    @Override
+    protected R compute() {
+        if (to - from <= leafRows) {
+            return leaf(from, to);
+        }
+        int mid = (from + to) >>> 1;
+        RangeTask<R> left = split(from, mid);
+        left.fork();
+        R right = split(mid, to).compute();
+        return combine(left.join(), right);
+    }
+}
@@ -0,0 +1,145 @@
+package com.library.service.analytics;
+
+import com.library.event.LendingEvent;
+import com.library.model.Book;
+import com.library.model.BookLending;
+import com.library.repository.BookRepository;
+import com.library.service.analytics.sketch.DecayedTopK;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// "Hot right now": exponentially decayed borrow counts per book for a few half-lives, each tracked by a
+// Count-Min sketch with a top-K candidate set, so memory stays fixed however many books there are. Fed by
+// every borrow; warmed up at startup from the recent history in the lending fact store.
+@Service
+public class TrendingService {
+
+    private static final Logger log = LoggerFactory.getLogger(TrendingService.class);
+    // Borrows older than this many of the longest half-life contribute under 0.1% and are not replayed
+    private static final int WARM_UP_HALF_LIVES = 10;
+
+    @Autowired
+    private LendingFactStore lendingFactStore;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Value("${analytics.trending.half-lives:1h,24h,7d}")
+    private String halfLives;
+
+    @Value("${analytics.trending.width:2048}")
+    private int width;
+
+    @Value("${analytics.trending.depth:4}")
+    private int depth;
+
+    @Value("${analytics.trending.candidates:100}")
+    private int candidates;
+
+    // Keyed by the configured half-life label, in configuration order
+    private final Map<String, DecayedTopK> trackers = new LinkedHashMap<>();
+    // Lending ids of the borrows replayed at warm-up, ascending like the fact rows they came from
+    private long[] replayedIds = new long[0];
+
+    public synchronized Set<String> getHalfLives() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(trackers.keySet()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void warmUp() {
+        long started = System.nanoTime();
+        double now = nowSeconds();
+        long longest = 0;
+        for (String label : halfLives.split(",")) {
+            long seconds = parseSeconds(label.trim());
+            longest = Math.max(longest, seconds);
+            trackers.put(label.trim(), new DecayedTopK(seconds, width, depth, candidates, now));
+        }
+
+        LendingFacts facts = lendingFactStore.getFacts();
+        long since = (long) now - WARM_UP_HALF_LIVES * longest;
+        long[] ids = new long[facts.size()];
+        int replayed = 0;
+        for (int row = 0; row < facts.size(); row++) {
+            if (facts.borrowedAt(row) >= since) {
+                long bookId = facts.bookId(facts.bookCode(row));
+                for (DecayedTopK tracker : trackers.values()) {
+                    tracker.add(bookId, facts.borrowedAt(row));
+                }
+                ids[replayed++] = facts.lendingId(row);
+            }
+        }
+        replayedIds = Arrays.copyOf(ids, replayed);
+        log.info("Replayed {} recent borrows into trending in {} ms", replayed, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @EventListener
+    public synchronized void onLendingEvent(LendingEvent event) {
+        BookLending lending = event.getLending();
+        // Borrows already replayed from the fact store are not counted twice; matching on the replayed ids
+        // rather than the highest one keeps a borrow committed after a later-numbered one
+        if (event.getType() != LendingEvent.Type.BORROWED || trackers.isEmpty()
+                || Arrays.binarySearch(replayedIds, lending.getId()) >= 0) {
+            return;
+        }
+        double borrowedAt = LendingFacts.toEpochSecond(lending.getBorrowDate());
+        for (DecayedTopK tracker : trackers.values()) {
+            tracker.add(lending.getBook().getId(), borrowedAt);
+        }
+    }
+
+    // Null for an unknown half-life
+    public List<Map<String, Object>> getTrending(String halfLife, int limit) {
+        List<DecayedTopK.Entry> top;
+        synchronized (this) {
+            DecayedTopK tracker = trackers.get(halfLife);
+            if (tracker == null) {
+                return null;
+            }
+            top = tracker.top(limit, nowSeconds());
+        }
+        Map<Long, Book> books = bookRepository.findAllById(top.stream().map(DecayedTopK.Entry::key).collect(Collectors.toList()))
+            .stream()
+            .collect(Collectors.toMap(Book::getId, Function.identity()));
+
+        // Deleted books can linger in the sketch until they decay; they are skipped
+        List<Map<String, Object>> trending = new ArrayList<>();
+        for (DecayedTopK.Entry entry : top) {
+            Book book = books.get(entry.key());
+            if (book != null) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("bookId", book.getId());
+                item.put("title", book.getTitle());
+                item.put("genre", book.getGenre());
+                item.put("score", entry.score());
+                trending.add(item);
+            }
+        }
+        return trending;
+    }
+
+    private static double nowSeconds() {
+        return LendingFacts.toEpochSecond(LocalDateTime.now());
+    }
+
+    // "90m", "24h", "7d"
+    private static long parseSeconds(String label) {
+        long amount = Long.parseLong(label.substring(0, label.length() - 1));
+        switch (label.charAt(label.length() - 1)) {
+            case 'm': return amount * 60;
+            case 'h': return amount * 3600;
+            case 'd': return amount * 86400;
+            default: throw new IllegalArgumentException("Half-life must end in m, h or d: " + label);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.library.service.analytics;
+
+import com.library.event.LendingEvent;
+import com.library.event.ReviewEvent;
+import com.library.model.BookLending;
+import com.library.model.Review;
+import com.library.repository.ReviewRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Per-member behavioural counters in primitive arrays indexed by a dense member code: lendings, open
+// loans, returns, on-time returns, last borrow, review count and rating sum. Built from the lending fact
+// store and one streamed review query, then kept current from LendingEvent and ReviewEvent. Overdue
+// counts depend on the clock, so they are derived from the open loans when a snapshot is taken.
+@Component
+public class UserFeatureStore {
+
+    private static final Logger log = LoggerFactory.getLogger(UserFeatureStore.class);
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    @Autowired
+    private LendingFactStore lendingFactStore;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Counters counters;
+
+    public synchronized UserFeatures snapshot(LocalDateTime now) {
+        if (counters == null) {
+            load();
+        }
+        return counters.snapshot(LendingFacts.toEpochSecond(now));
+    }
+
+    // The nightly reload repairs drift from missed events or direct SQL edits; it runs after the fact store's
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${analytics.users.reload-cron:0 45 2 * * *}")
+    public synchronized void load() {
+        long started = System.nanoTime();
+        Counters loaded = new Counters();
+        loadLendings(loaded, lendingFactStore.getFacts());
+        loadReviews(loaded);
+        counters = loaded;
+        log.info("Loaded features for {} members in {} ms", loaded.userCount, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Events already covered by the load are recognised by the ids it loaded, so applying one twice is
+    // harmless whatever order the lendings and reviews were committed in. A borrow the load already saw
+    // is in the open-loan map: it cannot have been returned yet, as its return follows this event.
+    @EventListener
+    public synchronized void onLendingEvent(LendingEvent event) {
+        if (counters == null) {
+            return;
+        }
+        BookLending lending = event.getLending();
+        if (event.getType() == LendingEvent.Type.BORROWED) {
+            if (!counters.openLoans.containsKey(lending.getId())) {
+                counters.borrowed(lending.getId(), lending.getUser().getId(),
+                    LendingFacts.toEpochSecond(lending.getBorrowDate()), LendingFacts.toEpochSecond(lending.getDueDate()));
+            }
+        } else {
+            counters.returned(lending.getId(), LendingFacts.toEpochSecond(lending.getReturnDate()));
+        }
+    }
+
+    @EventListener
+    public synchronized void onReviewEvent(ReviewEvent event) {
+        if (counters == null) {
+            return;
+        }
+        Review review = event.getReview();
+        if (event.getType() == ReviewEvent.Type.CREATED && counters.reviewIds.add(review.getId())) {
+            counters.reviewed(review.getUser().getId(), review.getRating(), 1);
+        } else if (event.getType() == ReviewEvent.Type.DELETED && counters.reviewIds.remove(review.getId())) {
+            counters.reviewed(review.getUser().getId(), -review.getRating(), -1);
+        }
+    }
+
+    private void loadLendings(Counters target, LendingFacts facts) {
+        // Per fact-store member code: lendings, returns, on-time returns, last borrow
+        long[][] totals = facts.scan().aggregate(
+            () -> {
+                long[][] acc = new long[4][facts.userCount()];
+                Arrays.fill(acc[3], Long.MIN_VALUE);
+                return acc;
+            },
+            (acc, f, row) -> {
+                int user = f.userCode(row);
+                acc[0][user]++;
+                if (!f.isOpen(row)) {
+                    acc[1][user]++;
+                    if (f.returnedAt(row) <= f.dueAt(row)) {
+                        acc[2][user]++;
+                    }
+                }
+                acc[3][user] = Math.max(acc[3][user], f.borrowedAt(row));
+            },
+            (left, right) -> {
+                for (int user = 0; user < left[0].length; user++) {
+                    left[0][user] += right[0][user];
+                    left[1][user] += right[1][user];
+                    left[2][user] += right[2][user];
+                    left[3][user] = Math.max(left[3][user], right[3][user]);
+                }
+                return left;
+            });
+        for (int factCode = 0; factCode < facts.userCount(); factCode++) {
+            int user = target.code(facts.userId(factCode));
+            target.lendings[user] = (int) totals[0][factCode];
+            target.returns[user] = (int) totals[1][factCode];
+            target.onTimeReturns[user] = (int) totals[2][factCode];
+            target.lastBorrowedAt[user] = totals[3][factCode];
+        }
+        for (int row = 0; row < facts.size(); row++) {
+            if (facts.isOpen(row)) {
+                target.openLoans.put(facts.lendingId(row), new OpenLoan(target.code(facts.userId(facts.userCode(row))), facts.dueAt(row)));
+            }
+        }
+    }
+
+    private void loadReviews(Counters target) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> {
+            try (Stream<Object[]> rows = reviewRepository.streamReviewFacts()) {
+                rows.forEach(row -> {
+                    target.reviewIds.add((Long) row[0]);
+                    target.reviewed((Long) row[1], ((Number) row[2]).intValue(), 1);
+                });
+            }
+        });
+    }
+
+    private record OpenLoan(int user, long dueAt) {}
+
+    // Mutable counters, only touched under the store's lock
+    private static class Counters {
+        private final Map<Long, Integer> codesById = new ConcurrentHashMap<>();
+        private long[] userIds = new long[INITIAL_CAPACITY];
+        private int userCount;
+
+        private int[] lendings = new int[INITIAL_CAPACITY];
+        private int[] returns = new int[INITIAL_CAPACITY];
+        private int[] onTimeReturns = new int[INITIAL_CAPACITY];
+        private long[] lastBorrowedAt = filled(INITIAL_CAPACITY);
+        private int[] reviewCount = new int[INITIAL_CAPACITY];
+        private long[] ratingSum = new long[INITIAL_CAPACITY];
+
+        private final Map<Long, OpenLoan> openLoans = new HashMap<>();
+        private final Set<Long> reviewIds = new HashSet<>();
+
+        void borrowed(long lendingId, long userId, long borrowedAt, long dueAt) {
+            int user = code(userId);
+            lendings[user]++;
+            lastBorrowedAt[user] = Math.max(lastBorrowedAt[user], borrowedAt);
+            openLoans.put(lendingId, new OpenLoan(user, dueAt));
+        }
+
+        // A return for a loan that is not open (already counted, or not yet loaded) is ignored
+        void returned(long lendingId, long returnedAt) {
+            OpenLoan loan = openLoans.remove(lendingId);
+            if (loan != null) {
+                returns[loan.user()]++;
+                if (returnedAt <= loan.dueAt()) {
+                    onTimeReturns[loan.user()]++;
+                }
+            }
+        }
+
+        void reviewed(long userId, int rating, int count) {
+            int user = code(userId);
+            reviewCount[user] += count;
+            ratingSum[user] += rating;
+        }
+
+        int code(long userId) {
+            Integer code = codesById.get(userId);
+            if (code != null) {
+                return code;
+            }
+            if (userCount == userIds.length) {
+                int capacity = userCount * 2;
+                userIds = Arrays.copyOf(userIds, capacity);
+                lendings = Arrays.copyOf(lendings, capacity);
+                returns = Arrays.copyOf(returns, capacity);
+                onTimeReturns = Arrays.copyOf(onTimeReturns, capacity);
+                lastBorrowedAt = Arrays.copyOf(lastBorrowedAt, capacity);
+                Arrays.fill(lastBorrowedAt, userCount, capacity, Long.MIN_VALUE);
+                reviewCount = Arrays.copyOf(reviewCount, capacity);
+                ratingSum = Arrays.copyOf(ratingSum, capacity);
+            }
+            userIds[userCount] = userId;
+            codesById.put(userId, userCount);
+            return userCount++;
+        }
+
+        // Copies the first userCount entries, so the snapshot stays fixed while events keep arriving
+        UserFeatures snapshot(long now) {
+            int[] activeLoans = new int[userCount];
+            int[] overdueLoans = new int[userCount];
+            for (OpenLoan loan : openLoans.values()) {
+                activeLoans[loan.user()]++;
+                if (loan.dueAt() < now) {
+                    overdueLoans[loan.user()]++;
+                }
+            }
+            return new UserFeatures(userCount, codesById,
+                Arrays.copyOf(lendings, userCount), activeLoans, overdueLoans,
+                Arrays.copyOf(returns, userCount), Arrays.copyOf(onTimeReturns, userCount),
+                Arrays.copyOf(lastBorrowedAt, userCount),
+                Arrays.copyOf(reviewCount, userCount), Arrays.copyOf(ratingSum, userCount));
+        }
+
+        private static long[] filled(int capacity) {
+            long[] values = new long[capacity];
+            Arrays.fill(values, Long.MIN_VALUE);
+            return values;
+        }
+    }
+}
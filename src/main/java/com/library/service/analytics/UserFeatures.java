@@ -0,0 +1,86 @@
+package com.library.service.analytics;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// Point-in-time copy of the member feature arrays. Members with no lendings and no reviews are not
+// encoded and read as zero everywhere.
+public class UserFeatures {
+
+    private final int userCount;
+    // Shared with the store and only ever added to; codes at or beyond userCount are ignored
+    private final Map<Long, Integer> codesById;
+    private final int[] lendings;
+    private final int[] activeLoans;
+    private final int[] overdueLoans;
+    private final int[] returns;
+    private final int[] onTimeReturns;
+    private final long[] lastBorrowedAt;
+    private final int[] reviewCount;
+    private final long[] ratingSum;
+
+    UserFeatures(int userCount, Map<Long, Integer> codesById, int[] lendings, int[] activeLoans, int[] overdueLoans,
+                 int[] returns, int[] onTimeReturns, long[] lastBorrowedAt, int[] reviewCount, long[] ratingSum) {
+        this.userCount = userCount;
+        this.codesById = codesById;
+        this.lendings = lendings;
+        this.activeLoans = activeLoans;
+        this.overdueLoans = overdueLoans;
+        this.returns = returns;
+        this.onTimeReturns = onTimeReturns;
+        this.lastBorrowedAt = lastBorrowedAt;
+        this.reviewCount = reviewCount;
+        this.ratingSum = ratingSum;
+    }
+
+    public int totalLendings(long userId) {
+        int user = code(userId);
+        return user < 0 ? 0 : lendings[user];
+    }
+
+    public int activeLoans(long userId) {
+        int user = code(userId);
+        return user < 0 ? 0 : activeLoans[user];
+    }
+
+    public int overdueLoans(long userId) {
+        int user = code(userId);
+        return user < 0 ? 0 : overdueLoans[user];
+    }
+
+    public int lateReturns(long userId) {
+        int user = code(userId);
+        return user < 0 ? 0 : returns[user] - onTimeReturns[user];
+    }
+
+    // Share of returned loans that came back by their due date; 1.0 with nothing returned yet
+    public double onTimeRatio(long userId) {
+        int user = code(userId);
+        return user < 0 || returns[user] == 0 ? 1.0 : (double) onTimeReturns[user] / returns[user];
+    }
+
+    // Null if the member never borrowed
+    public LocalDateTime lastBorrowedAt(long userId) {
+        int user = code(userId);
+        return user < 0 || lastBorrowedAt[user] == Long.MIN_VALUE ? null : LendingFacts.toDateTime(lastBorrowedAt[user]);
+    }
+
+    public int reviewCount(long userId) {
+        int user = code(userId);
+        return user < 0 ? 0 : reviewCount[user];
+    }
+
+    public double averageRating(long userId) {
+        int user = code(userId);
+        return user < 0 || reviewCount[user] == 0 ? 0.0 : (double) ratingSum[user] / reviewCount[user];
+    }
+
+    public UserSegment segment(long userId) {
+        return UserSegment.classify(totalLendings(userId), averageRating(userId), overdueLoans(userId));
+    }
+
+    private int code(long userId) {
+        Integer code = codesById.get(userId);
+        return code != null && code < userCount ? code : -1;
+    }
+}
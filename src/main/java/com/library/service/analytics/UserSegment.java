@@ -0,0 +1,21 @@
+package com.library.service.analytics;
+
+// Member segments used by the behaviour report and the filtered analytics query, checked in this order
+public enum UserSegment {
+    POWER_USER,
+    REGULAR,
+    AT_RISK,
+    NEW_USER;
+
+    public static UserSegment classify(long totalLendings, double averageRating, long overdueLoans) {
+        if (totalLendings >= 20 && averageRating >= 4.0) {
+            return POWER_USER;
+        } else if (totalLendings >= 10) {
+            return REGULAR;
+        } else if (overdueLoans > 2) {
+            return AT_RISK;
+        } else {
+            return NEW_USER;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.library.service.analytics.cluster;
+
+import com.library.service.analytics.RangeTask;
+
+import java.util.concurrent.ForkJoinPool;
+
+// Column statistics of a row-major feature matrix: means, standard deviations and the Pearson correlation
+// of every pair of columns, all from the sums and cross-products gathered in one fork-join pass
+public record FeatureStatistics(double[] means, double[] deviations, double[][] correlations) {
+
+    private static final int LEAF_ROWS = 1 << 14;
+
+    public static FeatureStatistics of(float[] points, int dimensions) {
+        int n = points.length / dimensions;
+        if (n == 0) {
+            return new FeatureStatistics(new double[dimensions], new double[dimensions], new double[dimensions][dimensions]);
+        }
+        // sums[i] holds the column sums, sums[dimensions + i * dimensions + j] the cross-products
+        double[] sums = ForkJoinPool.commonPool().invoke(new MomentTask(points, dimensions, 0, n));
+        double[] means = new double[dimensions];
+        double[] deviations = new double[dimensions];
+        double[][] covariance = new double[dimensions][dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            means[i] = sums[i] / n;
+        }
+        for (int i = 0; i < dimensions; i++) {
+            for (int j = 0; j < dimensions; j++) {
+                covariance[i][j] = sums[dimensions + i * dimensions + j] / n - means[i] * means[j];
+            }
+            deviations[i] = Math.sqrt(Math.max(0, covariance[i][i]));
+        }
+        // A constant column correlates with nothing, including itself
+        double[][] correlations = new double[dimensions][dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            for (int j = 0; j < dimensions; j++) {
+                double scale = deviations[i] * deviations[j];
+                correlations[i][j] = scale == 0 ? 0 : Math.max(-1, Math.min(1, covariance[i][j] / scale));
+            }
+        }
+        return new FeatureStatistics(means, deviations, correlations);
+    }
+
+    // Rescales every column in place to mean 0 and standard deviation 1; constant columns become 0
+    public void standardize(float[] points) {
+        int dimensions = means.length;
+        int n = points.length / dimensions;
+        ForkJoinPool.commonPool().invoke(new StandardizeTask(points, means, deviations, 0, n));
+    }
+
+    // Inverse of standardize for one value
+    public double original(int dimension, double standardized) {
+        return means[dimension] + standardized * deviations[dimension];
+    }
+
+    private static class MomentTask extends RangeTask<double[]> {
+        private final float[] points;
+        private final int dimensions;
+
+        MomentTask(float[] points, int dimensions, int from, int to) {
+            super(from, to, LEAF_ROWS);
+            this.points = points;
+            this.dimensions = dimensions;
+        }
+
+        @Override
+        protected double[] leaf(int from, int to) {
+            double[] sums = new double[dimensions + dimensions * dimensions];
+            for (int row = from; row < to; row++) {
+                int base = row * dimensions;
+                for (int i = 0; i < dimensions; i++) {
+                    double x = points[base + i];
+                    sums[i] += x;
+                    int offset = dimensions + i * dimensions;
+                    for (int j = i; j < dimensions; j++) {
+                        sums[offset + j] += x * points[base + j];
+                    }
+                }
+            }
+            // Only the upper triangle is accumulated
+            for (int i = 0; i < dimensions; i++) {
+                for (int j = 0; j < i; j++) {
+                    sums[dimensions + i * dimensions + j] = sums[dimensions + j * dimensions + i];
+                }
+            }
+            return sums;
+        }
+
+        @Override
+        protected double[] combine(double[] left, double[] right) {
+            for (int i = 0; i < left.length; i++) {
+                left[i] += right[i];
+            }
+            return left;
+        }
+
+        @Override
+        protected RangeTask<double[]> split(int from, int to) {
+            return new MomentTask(points, dimensions, from, to);
+        }
+    }
+
+    private static class StandardizeTask extends RangeTask<Void> {
+        private final float[] points;
+        private final double[] means;
+        private final double[] deviations;
+
+        StandardizeTask(float[] points, double[] means, double[] deviations, int from, int to) {
+            super(from, to, LEAF_ROWS);
+            this.points = points;
+            this.means = means;
+            this.deviations = deviations;
+        }
+
+        @Override
+        protected Void leaf(int from, int to) {
+            int dimensions = means.length;
+            for (int row = from; row < to; row++) {
+                for (int i = 0; i < dimensions; i++) {
+                    int index = row * dimensions + i;
+                    points[index] = deviations[i] == 0 ? 0f : (float) ((points[index] - means[i]) / deviations[i]);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected Void combine(Void left, Void right) {
+            return null;
+        }
+
+        @Override
+        protected RangeTask<Void> split(int from, int to) {
+            return new StandardizeTask(points, means, deviations, from, to);
+        }
+    }
+}
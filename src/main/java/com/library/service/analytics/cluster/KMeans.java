@@ -0,0 +1,206 @@
+package com.library.service.analytics.cluster;
+
+import com.library.service.analytics.RangeTask;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+// Lloyd's k-means over a row-major float matrix with k-means++ seeding. Each assignment step is one
+// fork-join pass: every leaf assigns its rows to the nearest centroid and returns per-cluster coordinate
+// sums and counts, which are added up pairwise and give the next centroids without a second pass.
+// Stops when fewer than one row in a thousand changes cluster, or after maxIterations.
+public final class KMeans {
+
+    private static final int LEAF_ROWS = 1 << 13;
+
+    public record Result(double[] centroids, int[] assignments, long[] sizes, double inertia, int iterations) {}
+
+    private KMeans() {
+    }
+
+    public static Result fit(float[] points, int dimensions, int k, int maxIterations, long seed) {
+        int n = points.length / dimensions;
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        double[] centroids = seed(points, dimensions, n, k, new SplittableRandom(seed), pool);
+        int[] assignments = new int[n];
+        Arrays.fill(assignments, -1);
+
+        Step step = null;
+        int iteration = 0;
+        while (iteration < maxIterations) {
+            iteration++;
+            step = pool.invoke(new AssignTask(points, dimensions, k, centroids, assignments, 0, n));
+            // An empty cluster keeps its centroid
+            for (int cluster = 0; cluster < k; cluster++) {
+                if (step.counts[cluster] > 0) {
+                    for (int i = 0; i < dimensions; i++) {
+                        centroids[cluster * dimensions + i] = step.sums[cluster * dimensions + i] / step.counts[cluster];
+                    }
+                }
+            }
+            if (step.changed <= n / 1000) {
+                break;
+            }
+        }
+        return new Result(centroids, assignments, step == null ? new long[k] : step.counts,
+            step == null ? 0 : step.inertia, iteration);
+    }
+
+    // k-means++: each further centroid is a row drawn with probability proportional to its squared
+    // distance from the nearest centroid so far; the distances are refreshed in parallel after each pick
+    private static double[] seed(float[] points, int dimensions, int n, int k, SplittableRandom random, ForkJoinPool pool) {
+        double[] centroids = new double[k * dimensions];
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, Double.MAX_VALUE);
+        int pick = random.nextInt(n);
+        for (int cluster = 0; cluster < k; cluster++) {
+            for (int i = 0; i < dimensions; i++) {
+                centroids[cluster * dimensions + i] = points[pick * dimensions + i];
+            }
+            if (cluster == k - 1) {
+                break;
+            }
+            double total = pool.invoke(new DistanceTask(points, dimensions, centroids, cluster, nearest, 0, n));
+            if (total == 0) {
+                // Every row sits on a centroid already
+                pick = random.nextInt(n);
+                continue;
+            }
+            double target = random.nextDouble() * total;
+            pick = n - 1;
+            for (int row = 0; row < n; row++) {
+                target -= nearest[row];
+                if (target < 0) {
+                    pick = row;
+                    break;
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static double distance(float[] points, int row, double[] centroids, int cluster, int dimensions) {
+        double sum = 0;
+        int base = row * dimensions;
+        int centroid = cluster * dimensions;
+        for (int i = 0; i < dimensions; i++) {
+            double delta = points[base + i] - centroids[centroid + i];
+            sum += delta * delta;
+        }
+        return sum;
+    }
+
+    private static class Step {
+        final double[] sums;
+        final long[] counts;
+        long changed;
+        double inertia;
+
+        Step(int k, int dimensions) {
+            sums = new double[k * dimensions];
+            counts = new long[k];
+        }
+    }
+
+    private static class AssignTask extends RangeTask<Step> {
+        private final float[] points;
+        private final int dimensions;
+        private final int k;
+        private final double[] centroids;
+        // Rows of different leaves never overlap, so leaves write their own slice without locking
+        private final int[] assignments;
+
+        AssignTask(float[] points, int dimensions, int k, double[] centroids, int[] assignments, int from, int to) {
+            super(from, to, LEAF_ROWS);
+            this.points = points;
+            this.dimensions = dimensions;
+            this.k = k;
+            this.centroids = centroids;
+            this.assignments = assignments;
+        }
+
+        @Override
+        protected Step leaf(int from, int to) {
+            Step step = new Step(k, dimensions);
+            for (int row = from; row < to; row++) {
+                int best = 0;
+                double bestDistance = Double.MAX_VALUE;
+                for (int cluster = 0; cluster < k; cluster++) {
+                    double distance = distance(points, row, centroids, cluster, dimensions);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = cluster;
+                    }
+                }
+                if (assignments[row] != best) {
+                    assignments[row] = best;
+                    step.changed++;
+                }
+                step.counts[best]++;
+                step.inertia += bestDistance;
+                int base = row * dimensions;
+                for (int i = 0; i < dimensions; i++) {
+                    step.sums[best * dimensions + i] += points[base + i];
+                }
+            }
+            return step;
+        }
+
+        @Override
+        protected Step combine(Step left, Step right) {
+            for (int i = 0; i < left.sums.length; i++) {
+                left.sums[i] += right.sums[i];
+            }
+            for (int i = 0; i < left.counts.length; i++) {
+                left.counts[i] += right.counts[i];
+            }
+            left.changed += right.changed;
+            left.inertia += right.inertia;
+            return left;
+        }
+
+        @Override
+        protected RangeTask<Step> split(int from, int to) {
+            return new AssignTask(points, dimensions, k, centroids, assignments, from, to);
+        }
+    }
+
+    // Lowers each row's nearest distance to include the given centroid; returns the sum over the range
+    private static class DistanceTask extends RangeTask<Double> {
+        private final float[] points;
+        private final int dimensions;
+        private final double[] centroids;
+        private final int cluster;
+        private final double[] nearest;
+
+        DistanceTask(float[] points, int dimensions, double[] centroids, int cluster, double[] nearest, int from, int to) {
+            super(from, to, LEAF_ROWS);
+            this.points = points;
+            this.dimensions = dimensions;
+            this.centroids = centroids;
+            this.cluster = cluster;
+            this.nearest = nearest;
+        }
+
+        @Override
+        protected Double leaf(int from, int to) {
+            double total = 0;
+            for (int row = from; row < to; row++) {
+                nearest[row] = Math.min(nearest[row], distance(points, row, centroids, cluster, dimensions));
+                total += nearest[row];
+            }
+            return total;
+        }
+
+        @Override
+        protected Double combine(Double left, Double right) {
+            return left + right;
+        }
+
+        @Override
+        protected RangeTask<Double> split(int from, int to) {
+            return new DistanceTask(points, dimensions, centroids, cluster, nearest, from, to);
+        }
+    }
+}
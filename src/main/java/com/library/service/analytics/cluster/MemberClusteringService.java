@@ -0,0 +1,246 @@
+package com.library.service.analytics.cluster;
+
+import com.library.service.analytics.LendingFactStore;
+import com.library.service.analytics.LendingFacts;
+import com.library.service.analytics.UserFeatureStore;
+import com.library.service.analytics.UserFeatures;
+import com.library.service.analytics.jobs.AnalyticsDataVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Groups members by behaviour with k-means and reports how the behavioural features correlate. Every member
+// with a lending becomes one row of a float matrix: reading volume, lateness, review habits and the share of
+// their lendings in each of the most borrowed genres, built from one sequential pass over the lending fact
+// store plus the member feature store. Columns are standardized so no feature dominates the distance, and
+// the same pass that gathers the standardization statistics yields the correlation matrix.
+@Service
+public class MemberClusteringService {
+
+    private static final int GENRE_FEATURES = 8;
+    private static final int MAX_ITERATIONS = 50;
+    private static final int SAMPLE_SIZE = 500;
+    // Fixed, so repeated runs on unchanged data give the same clusters
+    private static final long SEED = 42;
+
+    @Autowired
+    private LendingFactStore lendingFactStore;
+
+    @Autowired
+    private UserFeatureStore userFeatureStore;
+
+    @Autowired
+    private AnalyticsDataVersion dataVersion;
+
+    // Overdue loans depend on the clock, so results also expire
+    @Value("${analytics.clusters.cache-ttl-ms:3600000}")
+    private long cacheTtlMs;
+
+    // Cache slot of the correlation matrix on its own, next to the clusterings keyed by k
+    private static final int CORRELATIONS = 0;
+
+    private record CacheKey(int k, long dataVersion) {}
+
+    private record CachedResult(Map<String, Object> result, long computedAt) {}
+
+    private final Map<CacheKey, CachedResult> cache = new HashMap<>();
+    private final Map<Integer, Object> locks = new ConcurrentHashMap<>();
+
+    private record FeatureMatrix(List<String> names, float[] points, long[] userIds) {}
+
+    public Map<String, Object> cluster(int k) {
+        return cached(k, () -> compute(k));
+    }
+
+    // The correlation matrix alone needs only the statistics pass, not a clustering
+    public Map<String, Object> correlations() {
+        return cached(CORRELATIONS, this::computeCorrelations);
+    }
+
+    // One computation per slot at a time: a second request for the same k waits and is then served from the
+    // cache, while other values of k and the correlations compute alongside it
+    private Map<String, Object> cached(int k, Supplier<Map<String, Object>> computation) {
+        synchronized (locks.computeIfAbsent(k, slot -> new Object())) {
+            long version = dataVersion.current();
+            CacheKey key = new CacheKey(k, version);
+            synchronized (cache) {
+                CachedResult cached = cache.get(key);
+                if (cached != null && System.currentTimeMillis() - cached.computedAt() < cacheTtlMs) {
+                    return cached.result();
+                }
+            }
+            Map<String, Object> result = Collections.unmodifiableMap(computation.get());
+            synchronized (cache) {
+                cache.keySet().removeIf(other -> other.dataVersion() != version);
+                cache.put(key, new CachedResult(result, System.currentTimeMillis()));
+            }
+            return result;
+        }
+    }
+
+    private Map<String, Object> computeCorrelations() {
+        FeatureMatrix matrix = buildFeatures(LocalDateTime.now());
+        return correlations(matrix.names(), FeatureStatistics.of(matrix.points(), matrix.names().size()));
+    }
+
+    private Map<String, Object> compute(int k) {
+        long started = System.nanoTime();
+        FeatureMatrix matrix = buildFeatures(LocalDateTime.now());
+        List<String> names = matrix.names();
+        int dimensions = names.size();
+        int n = matrix.userIds().length;
+        float[] points = matrix.points();
+
+        FeatureStatistics statistics = FeatureStatistics.of(points, dimensions);
+        float[] raw = sample(points, dimensions, n);
+        statistics.standardize(points);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("members", n);
+        result.put("features", names);
+        result.put("correlations", correlations(names, statistics));
+        if (n == 0) {
+            result.put("clusters", List.of());
+            result.put("sample", List.of());
+            return result;
+        }
+        KMeans.Result fit = KMeans.fit(points, dimensions, Math.min(k, n), MAX_ITERATIONS, SEED);
+
+        List<Map<String, Object>> clusters = new ArrayList<>();
+        for (int cluster = 0; cluster < fit.sizes().length; cluster++) {
+            // Centroids are reported in the original units of each feature
+            Map<String, Double> centroid = new LinkedHashMap<>();
+            for (int i = 0; i < dimensions; i++) {
+                centroid.put(names.get(i), round(statistics.original(i, fit.centroids()[cluster * dimensions + i])));
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("cluster", cluster);
+            entry.put("size", fit.sizes()[cluster]);
+            entry.put("share", round((double) fit.sizes()[cluster] / n));
+            entry.put("centroid", centroid);
+            clusters.add(entry);
+        }
+        result.put("k", fit.sizes().length);
+        result.put("iterations", fit.iterations());
+        result.put("inertia", round(fit.inertia()));
+        result.put("clusters", clusters);
+        result.put("sample", sampleMembers(matrix, raw, fit.assignments()));
+        result.put("millis", (System.nanoTime() - started) / 1_000_000);
+        return result;
+    }
+
+    private FeatureMatrix buildFeatures(LocalDateTime now) {
+        LendingFacts facts = lendingFactStore.getFacts();
+        UserFeatures features = userFeatureStore.snapshot(now);
+        int n = facts.userCount();
+
+        // The most borrowed named genres each get a share column; the rest are left out
+        long[] genreTotals = new long[facts.genreCount()];
+        for (int row = 0; row < facts.size(); row++) {
+            genreTotals[facts.genreCode(row)]++;
+        }
+        List<Integer> genreCodes = new ArrayList<>();
+        for (int code = 1; code < genreTotals.length; code++) {
+            if (genreTotals[code] > 0) {
+                genreCodes.add(code);
+            }
+        }
+        genreCodes.sort(Comparator.comparingLong((Integer code) -> genreTotals[code]).reversed());
+        genreCodes = genreCodes.subList(0, Math.min(GENRE_FEATURES, genreCodes.size()));
+
+        List<String> names = new ArrayList<>(List.of("logLendings", "lateReturnRate", "overdueLoans", "reviewsPerLending", "averageRating"));
+        int firstGenre = names.size();
+        int[] columnOfGenre = new int[genreTotals.length];
+        Arrays.fill(columnOfGenre, -1);
+        for (int i = 0; i < genreCodes.size(); i++) {
+            columnOfGenre[genreCodes.get(i)] = firstGenre + i;
+            names.add("genre:" + facts.genre(genreCodes.get(i)));
+        }
+        int dimensions = names.size();
+
+        float[] points = new float[n * dimensions];
+        int[] lendings = new int[n];
+        for (int row = 0; row < facts.size(); row++) {
+            int user = facts.userCode(row);
+            lendings[user]++;
+            int genre = facts.genreCode(row);
+            if (columnOfGenre[genre] >= 0) {
+                points[user * dimensions + columnOfGenre[genre]]++;
+            }
+        }
+        long[] userIds = new long[n];
+        for (int user = 0; user < n; user++) {
+            long userId = facts.userId(user);
+            userIds[user] = userId;
+            int base = user * dimensions;
+            points[base] = (float) Math.log1p(lendings[user]);
+            points[base + 1] = (float) (1 - features.onTimeRatio(userId));
+            points[base + 2] = features.overdueLoans(userId);
+            points[base + 3] = (float) features.reviewCount(userId) / Math.max(1, lendings[user]);
+            points[base + 4] = (float) features.averageRating(userId);
+            for (int column = firstGenre; column < dimensions; column++) {
+                points[base + column] /= Math.max(1, lendings[user]);
+            }
+        }
+        return new FeatureMatrix(names, points, userIds);
+    }
+
+    // Raw feature rows of evenly spaced members, copied before the matrix is standardized in place
+    private static float[] sample(float[] points, int dimensions, int n) {
+        int size = Math.min(SAMPLE_SIZE, n);
+        float[] sample = new float[size * dimensions];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(points, sampledRow(i, n, size) * dimensions, sample, i * dimensions, dimensions);
+        }
+        return sample;
+    }
+
+    private static int sampledRow(int i, int n, int size) {
+        return (int) ((long) i * n / size);
+    }
+
+    private static List<Map<String, Object>> sampleMembers(FeatureMatrix matrix, float[] raw, int[] assignments) {
+        int n = matrix.userIds().length;
+        int dimensions = matrix.names().size();
+        int size = raw.length / dimensions;
+        List<Map<String, Object>> members = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int row = sampledRow(i, n, size);
+            Map<String, Double> values = new LinkedHashMap<>();
+            for (int column = 0; column < dimensions; column++) {
+                values.put(matrix.names().get(column), round(raw[i * dimensions + column]));
+            }
+            Map<String, Object> member = new LinkedHashMap<>();
+            member.put("userId", matrix.userIds()[row]);
+            member.put("cluster", assignments[row]);
+            member.put("features", values);
+            members.add(member);
+        }
+        return members;
+    }
+
+    private static Map<String, Object> correlations(List<String> names, FeatureStatistics statistics) {
+        double[][] matrix = statistics.correlations();
+        List<List<Double>> rows = new ArrayList<>();
+        for (double[] row : matrix) {
+            List<Double> values = new ArrayList<>(row.length);
+            for (double value : row) {
+                values.add(round(value));
+            }
+            rows.add(values);
+        }
+        Map<String, Object> correlations = new LinkedHashMap<>();
+        correlations.put("features", names);
+        correlations.put("matrix", rows);
+        return correlations;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
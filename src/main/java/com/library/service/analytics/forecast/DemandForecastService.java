@@ -0,0 +1,179 @@
+package com.library.service.analytics.forecast;
+
+import com.library.model.DailyBookActivity;
+import com.library.model.DailyGenreActivity;
+import com.library.repository.DailyBookActivityRepository;
+import com.library.repository.DailyGenreActivityRepository;
+import com.library.service.analytics.LendingRollupService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+
+// Holt-Winters demand forecasts per book and per genre, fed from the daily rollups. The state is
+// advanced once per completed day and written to a compact binary snapshot, so a restart resumes from
+// the last observed day instead of refitting the whole history. The snapshot records a fingerprint of the
+// rollups it observed and is only resumed while they are unchanged: the in-memory database starts over on
+// every restart, and a snapshot fitted on another history would forecast books that no longer exist.
+@Service
+public class DemandForecastService {
+
+    private static final Logger log = LoggerFactory.getLogger(DemandForecastService.class);
+    // Rollup days read per query while catching up
+    private static final int CHUNK_DAYS = 31;
+
+    @Autowired
+    private DailyBookActivityRepository bookActivityRepository;
+
+    @Autowired
+    private DailyGenreActivityRepository genreActivityRepository;
+
+    @Autowired
+    private LendingRollupService lendingRollupService;
+
+    @Value("${analytics.forecast.state-file:models/holt-winters.bin}")
+    private String stateFile;
+
+    @Value("${analytics.forecast.alpha:0.1}")
+    private float alpha;
+
+    @Value("${analytics.forecast.beta:0.01}")
+    private float beta;
+
+    @Value("${analytics.forecast.gamma:0.1}")
+    private float gamma;
+
+    // Month-of-year factors see about 30 updates a year, so they move slowly
+    @Value("${analytics.forecast.delta:0.01}")
+    private float delta;
+
+    @Value("${analytics.forecast.phi:0.98}")
+    private float phi;
+
+    private volatile ForecastModel model;
+
+    // Never fits on the caller's thread: until the startup catch-up finishes this is an empty model,
+    // whose forecasts are all zero
+    public ForecastModel getModel() {
+        ForecastModel current = model;
+        return current != null ? current : ForecastModel.empty(parameters());
+    }
+
+    // Resumes from the snapshot, then observes the days missed while the application was down (or fits
+    // the whole history when there is no usable snapshot)
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadSnapshot() {
+        try {
+            ForecastModel snapshot = readSnapshot();
+            if (snapshot != null) {
+                // Compare against rollups rebuilt from the current lendings, not ones left from before
+                lendingRollupService.rollUp();
+                LocalDate lastObserved = snapshot.getLastObserved().orElse(null);
+                ForecastModel.RollupFingerprint current = lastObserved == null ? null : fingerprint(lastObserved);
+                if (current != null && snapshot.getFingerprint().filter(current::equals).isPresent()) {
+                    model = snapshot;
+                    log.info("Loaded demand forecast state through {} ({} series)", lastObserved, snapshot.seriesCount());
+                } else {
+                    log.info("Discarding demand forecast state through {}: the rollup history has changed", lastObserved);
+                }
+            }
+            update();
+        } catch (RuntimeException e) {
+            log.error("Failed to bring demand forecasts up to date; retrying at the next scheduled update", e);
+        }
+    }
+
+    // Observes every completed day since the last update; the first run fits the whole rollup history
+    @Scheduled(cron = "${analytics.forecast.update-cron:0 15 1 * * *}")
+    public synchronized void update() {
+        long started = System.nanoTime();
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        ForecastModel next = model == null ? ForecastModel.empty(parameters()) : model.copy();
+        LocalDate from = next.getLastObserved().map(day -> day.plusDays(1)).orElseGet(this::firstRollupDay);
+        if (from == null || from.isAfter(yesterday)) {
+            if (model == null) {
+                model = next;
+            }
+            return;
+        }
+
+        // Make sure yesterday's rollup rows are final before they are folded into the state
+        lendingRollupService.rollUp();
+        for (LocalDate start = from; !start.isAfter(yesterday); start = start.plusDays(CHUNK_DAYS)) {
+            LocalDate end = start.plusDays(CHUNK_DAYS - 1).isBefore(yesterday) ? start.plusDays(CHUNK_DAYS - 1) : yesterday;
+            observeRange(next, start, end);
+        }
+        next.setFingerprint(fingerprint(yesterday));
+        model = next;
+        writeSnapshot(next);
+        log.info("Advanced demand forecasts from {} to {} ({} series) in {} ms",
+            from, yesterday, next.seriesCount(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void observeRange(ForecastModel target, LocalDate from, LocalDate to) {
+        Map<LocalDate, Map<Long, Long>> booksByDay = new HashMap<>();
+        for (DailyBookActivity row : bookActivityRepository.findByActivityDateBetween(from, to)) {
+            booksByDay.computeIfAbsent(row.getActivityDate(), day -> new HashMap<>()).put(row.getBookId(), row.getBorrows());
+        }
+        Map<LocalDate, Map<String, Long>> genresByDay = new HashMap<>();
+        for (DailyGenreActivity row : genreActivityRepository.findByActivityDateBetween(from, to)) {
+            genresByDay.computeIfAbsent(row.getActivityDate(), day -> new HashMap<>()).put(row.getGenre(), row.getBorrows());
+        }
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            target.observe(day, booksByDay.getOrDefault(day, Map.of()), genresByDay.getOrDefault(day, Map.of()));
+        }
+    }
+
+    private LocalDate firstRollupDay() {
+        return genreActivityRepository.findEarliestActivityDate();
+    }
+
+    // Null when there are no rollups at all
+    private ForecastModel.RollupFingerprint fingerprint(LocalDate through) {
+        LocalDate firstDay = firstRollupDay();
+        if (firstDay == null) {
+            return null;
+        }
+        Object[] totals = genreActivityRepository.summarizeThrough(through).get(0);
+        return new ForecastModel.RollupFingerprint(firstDay, ((Number) totals[0]).longValue(), ((Number) totals[1]).longValue());
+    }
+
+    private ForecastModel readSnapshot() {
+        Path file = Paths.get(stateFile);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return ForecastModel.readFrom(file, parameters());
+        } catch (IOException e) {
+            log.warn("Could not load demand forecast state: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSnapshot(ForecastModel snapshot) {
+        try {
+            Path target = Paths.get(stateFile);
+            Path dir = target.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path temp = dir.resolve(target.getFileName() + ".tmp");
+            snapshot.writeTo(temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to write demand forecast state", e);
+        }
+    }
+
+    private HoltWintersBank.Parameters parameters() {
+        return new HoltWintersBank.Parameters(alpha, beta, gamma, delta, phi);
+    }
+}
@@ -0,0 +1,184 @@
+package com.library.service.analytics.forecast;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Daily borrow forecasts for every book and every genre, advanced one observed day at a time.
+// Series are created the first time a book or genre shows up and are never dropped, so a book
+// that goes quiet simply decays towards zero.
+public class ForecastModel {
+
+    private static final int MAGIC = 0x48574632; // "HWF2"
+
+    // The rollup history observed so far: its first day, and the genre rows and borrows through lastObserved
+    public record RollupFingerprint(LocalDate firstDay, long rows, long borrows) {}
+
+    private final Map<Long, Integer> bookSeries;
+    private final Map<String, Integer> genreSeries;
+    private final HoltWintersBank bank;
+    private LocalDate lastObserved;
+    private RollupFingerprint fingerprint;
+
+    private ForecastModel(Map<Long, Integer> bookSeries, Map<String, Integer> genreSeries,
+                          HoltWintersBank bank, LocalDate lastObserved, RollupFingerprint fingerprint) {
+        this.bookSeries = bookSeries;
+        this.genreSeries = genreSeries;
+        this.bank = bank;
+        this.lastObserved = lastObserved;
+        this.fingerprint = fingerprint;
+    }
+
+    public static ForecastModel empty(HoltWintersBank.Parameters parameters) {
+        return new ForecastModel(new HashMap<>(), new HashMap<>(), new HoltWintersBank(parameters, 1024), null, null);
+    }
+
+    // Updates are applied to a copy that is then swapped in, so readers never see a half-updated day
+    public ForecastModel copy() {
+        return new ForecastModel(new HashMap<>(bookSeries), new HashMap<>(genreSeries), bank.copy(), lastObserved, fingerprint);
+    }
+
+    public Optional<LocalDate> getLastObserved() {
+        return Optional.ofNullable(lastObserved);
+    }
+
+    public Optional<RollupFingerprint> getFingerprint() {
+        return Optional.ofNullable(fingerprint);
+    }
+
+    public void setFingerprint(RollupFingerprint fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public int seriesCount() {
+        return bank.size();
+    }
+
+    // Days must be fed in order and without gaps; a day with no activity is an observation of zero
+    public void observe(LocalDate day, Map<Long, Long> bookBorrows, Map<String, Long> genreBorrows) {
+        if (lastObserved != null && !day.isAfter(lastObserved)) {
+            return;
+        }
+        bookBorrows.keySet().forEach(bookId -> bookSeries.computeIfAbsent(bookId, id -> bank.addSeries()));
+        genreBorrows.keySet().forEach(genre -> genreSeries.computeIfAbsent(genre, g -> bank.addSeries()));
+
+        double[] observed = new double[bank.size()];
+        bookBorrows.forEach((bookId, count) -> observed[bookSeries.get(bookId)] = count);
+        genreBorrows.forEach((genre, count) -> observed[genreSeries.get(genre)] = count);
+        IntStream.range(0, bank.size()).parallel().forEach(series -> bank.update(series, observed[series], day));
+        lastObserved = day;
+    }
+
+    public double[] forecastBook(long bookId, int horizon) {
+        Integer series = bookSeries.get(bookId);
+        return series == null || lastObserved == null ? new double[horizon] : bank.forecast(series, lastObserved, horizon);
+    }
+
+    public double[] forecastGenre(String genre, int horizon) {
+        Integer series = genreSeries.get(genre);
+        return series == null || lastObserved == null ? new double[horizon] : bank.forecast(series, lastObserved, horizon);
+    }
+
+    // Library-wide demand as the sum of the genre series
+    public double[] forecastTotal(int horizon) {
+        double[] total = new double[horizon];
+        if (lastObserved == null) {
+            return total;
+        }
+        HoltWintersBank.Horizon days = new HoltWintersBank.Horizon(lastObserved, horizon);
+        double[] genre = new double[horizon];
+        for (int series : genreSeries.values()) {
+            bank.forecast(series, days, genre);
+            for (int h = 0; h < horizon; h++) {
+                total[h] += genre[h];
+            }
+        }
+        return total;
+    }
+
+    // Mean forecast daily borrows over each horizon, for every book, evaluated in parallel
+    public Map<Long, double[]> meanBookForecasts(int... horizons) {
+        if (lastObserved == null) {
+            return Map.of();
+        }
+        int longest = Arrays.stream(horizons).max().orElse(0);
+        HoltWintersBank.Horizon days = new HoltWintersBank.Horizon(lastObserved, longest);
+        ThreadLocal<double[]> scratch = ThreadLocal.withInitial(() -> new double[longest]);
+        long[] bookIds = bookSeries.keySet().stream().mapToLong(Long::longValue).toArray();
+        double[][] means = new double[bookIds.length][];
+        IntStream.range(0, bookIds.length).parallel().forEach(i -> {
+            double[] daily = scratch.get();
+            bank.forecast(bookSeries.get(bookIds[i]), days, daily);
+            // Prefix sums in place: daily[h] becomes the total over the first h + 1 days
+            for (int h = 1; h < longest; h++) {
+                daily[h] += daily[h - 1];
+            }
+            double[] mean = new double[horizons.length];
+            for (int k = 0; k < horizons.length; k++) {
+                mean[k] = horizons[k] == 0 ? 0.0 : daily[horizons[k] - 1] / horizons[k];
+            }
+            means[i] = mean;
+        });
+        Map<Long, double[]> result = new HashMap<>(bookIds.length * 2);
+        for (int i = 0; i < bookIds.length; i++) {
+            result.put(bookIds[i], means[i]);
+        }
+        return result;
+    }
+
+    public void writeTo(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeLong(lastObserved == null ? Long.MIN_VALUE : lastObserved.toEpochDay());
+            out.writeBoolean(fingerprint != null);
+            if (fingerprint != null) {
+                out.writeLong(fingerprint.firstDay().toEpochDay());
+                out.writeLong(fingerprint.rows());
+                out.writeLong(fingerprint.borrows());
+            }
+            out.writeInt(bookSeries.size());
+            for (Map.Entry<Long, Integer> entry : bookSeries.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+            out.writeInt(genreSeries.size());
+            for (Map.Entry<String, Integer> entry : genreSeries.entrySet()) {
+                out.writeBoolean(entry.getKey() != null);
+                out.writeUTF(entry.getKey() == null ? "" : entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+            bank.writeTo(out);
+        }
+    }
+
+    public static ForecastModel readFrom(Path file, HoltWintersBank.Parameters parameters) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 20))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a forecast snapshot: " + file);
+            }
+            long epochDay = in.readLong();
+            LocalDate lastObserved = epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay);
+            RollupFingerprint fingerprint = in.readBoolean()
+                ? new RollupFingerprint(LocalDate.ofEpochDay(in.readLong()), in.readLong(), in.readLong())
+                : null;
+            int books = in.readInt();
+            Map<Long, Integer> bookSeries = new HashMap<>(books * 2);
+            for (int i = 0; i < books; i++) {
+                bookSeries.put(in.readLong(), in.readInt());
+            }
+            int genres = in.readInt();
+            Map<String, Integer> genreSeries = new HashMap<>();
+            for (int i = 0; i < genres; i++) {
+                boolean present = in.readBoolean();
+                String genre = in.readUTF();
+                genreSeries.put(present ? genre : null, in.readInt());
+            }
+            return new ForecastModel(bookSeries, genreSeries, HoltWintersBank.readFrom(in, parameters), lastObserved, fingerprint);
+        }
+    }
+}
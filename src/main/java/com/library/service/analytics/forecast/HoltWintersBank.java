@@ -0,0 +1,139 @@
+package com.library.service.analytics.forecast;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Additive Holt-Winters state for many daily series in one flat float array: level, damped trend,
+// a day-of-week component and a month-of-year component (yearly seasonality at monthly resolution,
+// 12 values instead of 365 per series). 21 floats per series.
+public class HoltWintersBank {
+
+    static final int WEEK = 7;
+    static final int YEAR = 12;
+    private static final int LEVEL = 0;
+    private static final int TREND = 1;
+    private static final int WEEKLY = 2;
+    private static final int YEARLY = WEEKLY + WEEK;
+    static final int STRIDE = YEARLY + YEAR;
+
+    public record Parameters(float alpha, float beta, float gamma, float delta, float phi) {}
+
+    private final Parameters parameters;
+    private float[] state;
+    private int size;
+
+    public HoltWintersBank(Parameters parameters, int capacity) {
+        this.parameters = parameters;
+        this.state = new float[Math.max(capacity, 16) * STRIDE];
+    }
+
+    private HoltWintersBank(Parameters parameters, float[] state, int size) {
+        this.parameters = parameters;
+        this.state = state;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Parameters getParameters() {
+        return parameters;
+    }
+
+    // New series start flat at zero and pick up their level from the first observations
+    public int addSeries() {
+        if ((size + 1) * STRIDE > state.length) {
+            state = Arrays.copyOf(state, state.length * 2);
+        }
+        return size++;
+    }
+
+    public HoltWintersBank copy() {
+        return new HoltWintersBank(parameters, Arrays.copyOf(state, state.length), size);
+    }
+
+    // Folds one day's observation into a series; safe to call for different series concurrently
+    public void update(int series, double observed, LocalDate day) {
+        int base = series * STRIDE;
+        int weekly = base + WEEKLY + day.getDayOfWeek().getValue() - 1;
+        int yearly = base + YEARLY + day.getMonthValue() - 1;
+        float alpha = parameters.alpha();
+        float beta = parameters.beta();
+        float gamma = parameters.gamma();
+        float delta = parameters.delta();
+        float phi = parameters.phi();
+
+        float level = state[base + LEVEL];
+        float dampedTrend = phi * state[base + TREND];
+        float newLevel = alpha * ((float) observed - state[weekly] - state[yearly]) + (1 - alpha) * (level + dampedTrend);
+        state[base + TREND] = beta * (newLevel - level) + (1 - beta) * dampedTrend;
+        state[base + LEVEL] = newLevel;
+        state[weekly] = gamma * ((float) observed - newLevel - state[yearly]) + (1 - gamma) * state[weekly];
+        state[yearly] = delta * ((float) observed - newLevel - state[weekly]) + (1 - delta) * state[yearly];
+    }
+
+    // Daily forecasts for lastObserved + 1 .. lastObserved + horizon, clamped at zero
+    public double[] forecast(int series, LocalDate lastObserved, int horizon) {
+        Horizon days = new Horizon(lastObserved, horizon);
+        double[] result = new double[horizon];
+        forecast(series, days, result);
+        return result;
+    }
+
+    // Allocation-free variant for whole-catalog runs: the calendar is computed once and shared
+    public void forecast(int series, Horizon days, double[] out) {
+        int base = series * STRIDE;
+        float phi = parameters.phi();
+        double trendSum = 0.0;
+        double damping = 1.0;
+        for (int h = 0; h < days.length(); h++) {
+            damping *= phi;
+            trendSum += damping;
+            double value = state[base + LEVEL] + trendSum * state[base + TREND]
+                + state[base + WEEKLY + days.weekdays[h]]
+                + state[base + YEARLY + days.months[h]];
+            out[h] = Math.max(0.0, value);
+        }
+    }
+
+    // Seasonal slots of each forecast day
+    public static class Horizon {
+        private final int[] weekdays;
+        private final int[] months;
+
+        public Horizon(LocalDate lastObserved, int length) {
+            weekdays = new int[length];
+            months = new int[length];
+            for (int h = 0; h < length; h++) {
+                LocalDate day = lastObserved.plusDays(h + 1);
+                weekdays[h] = day.getDayOfWeek().getValue() - 1;
+                months[h] = day.getMonthValue() - 1;
+            }
+        }
+
+        public int length() {
+            return weekdays.length;
+        }
+    }
+
+    // Only the state is persisted; smoothing parameters come from configuration on load
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size * STRIDE; i++) {
+            out.writeFloat(state[i]);
+        }
+    }
+
+    static HoltWintersBank readFrom(DataInputStream in, Parameters parameters) throws IOException {
+        int size = in.readInt();
+        float[] state = new float[Math.max(size, 16) * STRIDE];
+        for (int i = 0; i < size * STRIDE; i++) {
+            state[i] = in.readFloat();
+        }
+        return new HoltWintersBank(parameters, state, size);
+    }
+}
@@ -0,0 +1,36 @@
+package com.library.service.analytics.jobs;
+
+import com.library.event.BookEvent;
+import com.library.event.LendingEvent;
+import com.library.event.ReviewEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bumped by every domain event the reports read from; a cached report is only reused while the
+// version it was computed at is still current
+@Component
+public class AnalyticsDataVersion {
+
+    private final AtomicLong version = new AtomicLong();
+
+    public long current() {
+        return version.get();
+    }
+
+    @EventListener
+    public void onLendingEvent(LendingEvent event) {
+        version.incrementAndGet();
+    }
+
+    @EventListener
+    public void onReviewEvent(ReviewEvent event) {
+        version.incrementAndGet();
+    }
+
+    @EventListener
+    public void onBookEvent(BookEvent event) {
+        version.incrementAndGet();
+    }
+}
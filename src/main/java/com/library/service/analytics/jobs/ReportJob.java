@@ -0,0 +1,97 @@
+package com.library.service.analytics.jobs;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// One report run. Status moves QUEUED -> RUNNING -> SUCCEEDED or FAILED; listeners are told about
+// every transition and removed once the job is finished.
+public class ReportJob {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    private final String id = UUID.randomUUID().toString();
+    private final ReportType type;
+    private final long dataVersion;
+    private final LocalDateTime submittedAt = LocalDateTime.now();
+    private final List<Consumer<ReportJob>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile Map<String, Object> result;
+    private volatile String error;
+
+    ReportJob(ReportType type, long dataVersion) {
+        this.type = type;
+        this.dataVersion = dataVersion;
+    }
+
+    public String getId() { return id; }
+    public ReportType getType() { return type; }
+    public long getDataVersion() { return dataVersion; }
+    public Status getStatus() { return status; }
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public Map<String, Object> getResult() { return result; }
+    public String getError() { return error; }
+
+    public boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    // Runs the listener now with the current state, then on every later transition
+    public void subscribe(Consumer<ReportJob> listener) {
+        listeners.add(listener);
+        listener.accept(this);
+        if (isFinished()) {
+            listeners.remove(listener);
+        }
+    }
+
+    public void unsubscribe(Consumer<ReportJob> listener) {
+        listeners.remove(listener);
+    }
+
+    public Map<String, Object> toStatus() {
+        Map<String, Object> view = new HashMap<>();
+        view.put("jobId", id);
+        view.put("type", type);
+        view.put("status", status);
+        view.put("submittedAt", submittedAt);
+        view.put("startedAt", startedAt);
+        view.put("finishedAt", finishedAt);
+        if (error != null) {
+            view.put("error", error);
+        }
+        return view;
+    }
+
+    void started() {
+        startedAt = LocalDateTime.now();
+        transition(Status.RUNNING);
+    }
+
+    void succeeded(Map<String, Object> result) {
+        this.result = result;
+        finishedAt = LocalDateTime.now();
+        transition(Status.SUCCEEDED);
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finishedAt = LocalDateTime.now();
+        transition(Status.FAILED);
+    }
+
+    private void transition(Status next) {
+        status = next;
+        listeners.forEach(listener -> listener.accept(this));
+        if (isFinished()) {
+            listeners.clear();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.library.service.analytics.jobs;
+
+import com.library.service.InventoryPredictionService;
+import com.library.service.PredictiveAnalyticsService;
+import com.library.service.UserBehaviorService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs the heavy analytics reports off the request thread on a small bounded pool. Submissions are keyed
+// by report type and data version: an identical submission while a run is queued or running
+// joins that run, and one after it succeeded gets the cached job back until the data changes or the
+// result expires.
+@Service
+public class ReportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportJobService.class);
+
+    @Autowired
+    private PredictiveAnalyticsService predictiveAnalyticsService;
+
+    @Autowired
+    private InventoryPredictionService inventoryPredictionService;
+
+    @Autowired
+    private UserBehaviorService userBehaviorService;
+
+    @Autowired
+    private AnalyticsDataVersion dataVersion;
+
+    @Value("${analytics.jobs.threads:2}")
+    private int threads;
+
+    @Value("${analytics.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    // Reports also depend on the clock (overdue loans, trend windows), so even an unchanged
+    // data version does not keep a result forever
+    @Value("${analytics.jobs.result-ttl-ms:600000}")
+    private long resultTtlMs;
+
+    private final Map<String, ReportJob> jobsById = new ConcurrentHashMap<>();
+    private final Map<JobKey, ReportJob> jobsByKey = new HashMap<>();
+    private ThreadPoolExecutor executor;
+
+    private record JobKey(ReportType type, long dataVersion) {}
+
+    @PostConstruct
+    void start() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "report-job-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    // Throws RejectedExecutionException when the queue is full
+    public synchronized ReportJob submit(ReportType type) {
+        JobKey key = new JobKey(type, dataVersion.current());
+        ReportJob existing = jobsByKey.get(key);
+        if (existing != null && !isExpired(existing) && existing.getStatus() != ReportJob.Status.FAILED) {
+            return existing;
+        }
+
+        ReportJob job = new ReportJob(type, key.dataVersion());
+        executor.execute(() -> run(job));
+        jobsById.put(job.getId(), job);
+        jobsByKey.put(key, job);
+        return job;
+    }
+
+    public Optional<ReportJob> getJob(String id) {
+        return Optional.ofNullable(jobsById.get(id));
+    }
+
+    private void run(ReportJob job) {
+        long started = System.nanoTime();
+        job.started();
+        try {
+            job.succeeded(generate(job.getType()));
+            log.info("Report job {} ({}) finished in {} ms", job.getId(), job.getType(),
+                (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.error("Report job {} ({}) failed", job.getId(), job.getType(), e);
+            job.failed(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    private Map<String, Object> generate(ReportType type) {
+        switch (type) {
+            case PREDICTIONS: return predictiveAnalyticsService.getPredictions();
+            case INVENTORY: return inventoryPredictionService.analyzeInventory();
+            case USER_BEHAVIOR: return userBehaviorService.analyzeUserBehavior();
+            default: throw new IllegalArgumentException("Unknown report type: " + type);
+        }
+    }
+
+    // Finished jobs are kept for polling and reuse until their result expires
+    @Scheduled(fixedDelayString = "${analytics.jobs.result-ttl-ms:600000}")
+    public synchronized void evictExpired() {
+        jobsByKey.values().removeIf(this::isExpired);
+        jobsById.values().removeIf(this::isExpired);
+    }
+
+    private boolean isExpired(ReportJob job) {
+        LocalDateTime finishedAt = job.getFinishedAt();
+        return finishedAt != null && finishedAt.plusNanos(resultTtlMs * 1_000_000).isBefore(LocalDateTime.now());
+    }
+}
@@ -0,0 +1,7 @@
+package com.library.service.analytics.jobs;
+
+public enum ReportType {
+    PREDICTIONS,
+    INVENTORY,
+    USER_BEHAVIOR
+}
@@ -0,0 +1,234 @@
+package com.library.service.analytics.report;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+// Runs the independent sections of a multi-part report concurrently, so a report takes about as long as
+// its slowest section instead of the sum. Each section runs on a small bounded pool in its own read-only
+// transaction (and so on its own connection) with its own timeout. A section that fails or times out is
+// reported as null with its status in "reportMetrics", and the other sections are still returned.
+@Component
+public class ReportSectionExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportSectionExecutor.class);
+    public static final String METRICS_SECTION = "reportMetrics";
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Each running section can hold a database connection, so this stays below the connection pool size
+    @Value("${analytics.reports.threads:6}")
+    private int threads;
+
+    @Value("${analytics.reports.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${analytics.reports.section-timeout-ms:60000}")
+    private long defaultTimeoutMs;
+
+    private ThreadPoolExecutor executor;
+    private final Map<String, SectionStats> stats = new ConcurrentHashMap<>();
+
+    private record Section(String name, long timeoutMs, Supplier<?> body) {}
+
+    private static class SectionStats {
+        final LongAdder runs = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder totalMillis = new LongAdder();
+        final AtomicLong maxMillis = new AtomicLong();
+    }
+
+    // Written by the section's thread, read by the reporting thread after the future completes or times out
+    private static class Timing {
+        volatile long started;
+        volatile long finished;
+
+        long millis() {
+            long start = started;
+            if (start == 0) {
+                return 0;
+            }
+            long end = finished;
+            return ((end != 0 ? end : System.nanoTime()) - start) / 1_000_000;
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger counter = new AtomicInteger();
+        // When the queue is full the submitting thread runs the section itself rather than failing the report
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "report-section-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    public ReportRun report(String report) {
+        return new ReportRun(report);
+    }
+
+    // Input shared by several sections: computed by the first section that asks for it, on that section's
+    // thread, while sections asking at the same time wait; a failure is rethrown to each of them
+    public static <T> Supplier<T> shared(Supplier<T> loader) {
+        return new Supplier<>() {
+            private boolean done;
+            private T value;
+            private RuntimeException failure;
+
+            @Override
+            public synchronized T get() {
+                if (!done) {
+                    try {
+                        value = loader.get();
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                    done = true;
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                return value;
+            }
+        };
+    }
+
+    // Runs, failures, timeouts and mean and max run time per report section since startup
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new TreeMap<>();
+        stats.forEach((name, sectionStats) -> {
+            long runs = sectionStats.runs.sum();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("runs", runs);
+            entry.put("failures", sectionStats.failures.sum());
+            entry.put("timeouts", sectionStats.timeouts.sum());
+            entry.put("meanMillis", runs == 0 ? 0 : sectionStats.totalMillis.sum() / runs);
+            entry.put("maxMillis", sectionStats.maxMillis.get());
+            metrics.put(name, entry);
+        });
+        return metrics;
+    }
+
+    public class ReportRun {
+        private final String report;
+        private final List<Section> sections = new ArrayList<>();
+
+        private ReportRun(String report) {
+            this.report = report;
+        }
+
+        public ReportRun section(String name, Supplier<?> body) {
+            return section(name, defaultTimeoutMs, body);
+        }
+
+        public ReportRun section(String name, long timeoutMs, Supplier<?> body) {
+            sections.add(new Section(name, timeoutMs, body));
+            return this;
+        }
+
+        public Map<String, Object> collect() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            forEach(result::put);
+            return result;
+        }
+
+        // Starts every section, then hands each to the sink in declaration order as soon as it is done,
+        // followed by the per-section status and timing under "reportMetrics"
+        public void forEach(BiConsumer<String, Object> sink) {
+            List<Future<?>> futures = new ArrayList<>(sections.size());
+            List<Timing> timings = new ArrayList<>(sections.size());
+            long submitted = System.nanoTime();
+            for (Section section : sections) {
+                Timing timing = new Timing();
+                timings.add(timing);
+                futures.add(executor.submit(() -> run(section, timing)));
+            }
+
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            for (int i = 0; i < sections.size(); i++) {
+                Section section = sections.get(i);
+                Future<?> future = futures.get(i);
+                Object value = null;
+                String status = "OK";
+                String error = null;
+                try {
+                    long remaining = submitted + TimeUnit.MILLISECONDS.toNanos(section.timeoutMs()) - System.nanoTime();
+                    value = future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    status = "TIMED_OUT";
+                    log.warn("Section {} of report {} timed out after {} ms", section.name(), report, section.timeoutMs());
+                } catch (ExecutionException e) {
+                    status = "FAILED";
+                    error = String.valueOf(e.getCause());
+                    log.warn("Section {} of report {} failed", section.name(), report, e.getCause());
+                } catch (InterruptedException e) {
+                    futures.forEach(pending -> pending.cancel(true));
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while running report " + report, e);
+                }
+                long millis = timings.get(i).millis();
+                record(section.name(), status, millis);
+
+                Map<String, Object> sectionMetrics = new LinkedHashMap<>();
+                sectionMetrics.put("status", status);
+                sectionMetrics.put("millis", millis);
+                if (error != null) {
+                    sectionMetrics.put("error", error);
+                }
+                metrics.put(section.name(), sectionMetrics);
+                sink.accept(section.name(), value);
+            }
+            metrics.put("totalMillis", (System.nanoTime() - submitted) / 1_000_000);
+            sink.accept(METRICS_SECTION, metrics);
+        }
+
+        private Object run(Section section, Timing timing) {
+            timing.started = System.nanoTime();
+            try {
+                TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+                readOnly.setReadOnly(true);
+                return readOnly.execute(status -> section.body().get());
+            } finally {
+                timing.finished = System.nanoTime();
+            }
+        }
+
+        private void record(String section, String status, long millis) {
+            SectionStats sectionStats = stats.computeIfAbsent(report + "." + section, name -> new SectionStats());
+            sectionStats.runs.increment();
+            sectionStats.totalMillis.add(millis);
+            sectionStats.maxMillis.accumulateAndGet(millis, Math::max);
+            if ("FAILED".equals(status)) {
+                sectionStats.failures.increment();
+            } else if ("TIMED_OUT".equals(status)) {
+                sectionStats.timeouts.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.library.service.analytics.sketch;
+
+import java.util.*;
+
+// Exponentially decayed heavy hitters: a Count-Min sketch estimates every key's decayed count and a
+// bounded candidate set keeps the K keys with the highest estimates. Uses forward decay: an event at time t
+// adds e^(lambda (t - landmark)) and a score is read back by dividing by e^(lambda (now - landmark)),
+// so nothing has to be decayed on update and the relative order of stored scores never changes with time.
+// Memory is fixed by width, depth and K; an update costs depth counter writes plus O(log K) when the
+// candidate set changes. Not thread-safe.
+public class DecayedTopK {
+
+    // Weights are rescaled to the current time before they get anywhere near double overflow
+    private static final double MAX_EXPONENT = 500.0;
+
+    private final double lambda;
+    private final int width;
+    private final int capacity;
+    private final double[][] counts;
+    private final long[] seeds;
+    private double landmark;
+
+    // Scaled estimate per candidate, with the same entries ordered lowest first for eviction
+    private final Map<Long, Double> candidates = new HashMap<>();
+    private final TreeSet<Candidate> byScore = new TreeSet<>();
+
+    private record Candidate(double score, long key) implements Comparable<Candidate> {
+        @Override
+        public int compareTo(Candidate other) {
+            int byValue = Double.compare(score, other.score);
+            return byValue != 0 ? byValue : Long.compare(key, other.key);
+        }
+    }
+
+    public record Entry(long key, double score) {}
+
+    // Estimates overshoot by at most e / width of the total decayed weight with probability 1 - e^-depth
+    public DecayedTopK(double halfLifeSeconds, int width, int depth, int capacity, double nowSeconds) {
+        this.lambda = Math.log(2) / halfLifeSeconds;
+        this.width = width;
+        this.capacity = capacity;
+        this.counts = new double[depth][width];
+        this.seeds = new long[depth];
+        SplittableRandom random = new SplittableRandom(0x5EEDL + depth);
+        for (int row = 0; row < depth; row++) {
+            seeds[row] = random.nextLong();
+        }
+        this.landmark = nowSeconds;
+    }
+
+    public void add(long key, double nowSeconds) {
+        double exponent = lambda * (nowSeconds - landmark);
+        if (exponent > MAX_EXPONENT) {
+            rescale(nowSeconds);
+            exponent = 0.0;
+        }
+        double weight = Math.exp(exponent);
+        double estimate = Double.MAX_VALUE;
+        for (int row = 0; row < counts.length; row++) {
+            int column = column(row, key);
+            counts[row][column] += weight;
+            estimate = Math.min(estimate, counts[row][column]);
+        }
+        offer(key, estimate);
+    }
+
+    // Decayed count of a key at the given time, never under the true value
+    public double estimate(long key, double nowSeconds) {
+        double estimate = Double.MAX_VALUE;
+        for (int row = 0; row < counts.length; row++) {
+            estimate = Math.min(estimate, counts[row][column(row, key)]);
+        }
+        return estimate / Math.exp(lambda * (nowSeconds - landmark));
+    }
+
+    // Highest decayed scores first
+    public List<Entry> top(int limit, double nowSeconds) {
+        double scale = Math.exp(lambda * (nowSeconds - landmark));
+        List<Entry> top = new ArrayList<>(Math.min(limit, byScore.size()));
+        for (Candidate candidate : byScore.descendingSet()) {
+            if (top.size() == limit) {
+                break;
+            }
+            top.add(new Entry(candidate.key(), candidate.score() / scale));
+        }
+        return top;
+    }
+
+    private void offer(long key, double estimate) {
+        Double current = candidates.get(key);
+        if (current != null) {
+            byScore.remove(new Candidate(current, key));
+        } else if (candidates.size() == capacity) {
+            Candidate lowest = byScore.first();
+            if (lowest.score() >= estimate) {
+                return;
+            }
+            byScore.pollFirst();
+            candidates.remove(lowest.key());
+        }
+        candidates.put(key, estimate);
+        byScore.add(new Candidate(estimate, key));
+    }
+
+    // Moves the landmark to now; every stored weight shrinks by the same factor, so order is unchanged
+    private void rescale(double nowSeconds) {
+        double factor = Math.exp(-lambda * (nowSeconds - landmark));
+        for (double[] row : counts) {
+            for (int column = 0; column < width; column++) {
+                row[column] *= factor;
+            }
+        }
+        List<Candidate> rescaled = new ArrayList<>(byScore.size());
+        for (Candidate candidate : byScore) {
+            rescaled.add(new Candidate(candidate.score() * factor, candidate.key()));
+        }
+        byScore.clear();
+        candidates.clear();
+        for (Candidate candidate : rescaled) {
+            byScore.add(candidate);
+            candidates.put(candidate.key(), candidate.score());
+        }
+        landmark = nowSeconds;
+    }
+
+    private int column(int row, long key) {
+        long z = key * 0x9E3779B97F4A7C15L + seeds[row];
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (int) Math.floorMod(z, (long) width);
+    }
+}
@@ -0,0 +1,171 @@
+package com.library.service.analytics.sketch;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Merging t-digest: the distribution as a sorted list of centroids (mean, weight) whose sizes are capped by
+// the k1 scale function k(q) = compression / 2pi * asin(2q - 1), so centroids near either tail hold only a
+// few values and extreme quantiles stay accurate while the middle is summarized coarsely. At most about
+// compression * pi / 2 centroids are kept however many values are added. New values are buffered and
+// folded in with one sort and sweep; merging another digest folds in its centroids the same way, so
+// digests for parts of the data (e.g. months) combine into a digest of the whole. Not thread-safe.
+public class TDigest {
+
+    private final double compression;
+    private final int bufferCapacity;
+    private double[] means = new double[0];
+    private double[] weights = new double[0];
+    // Unmerged values, allocated on first add and released by each compression
+    private double[] bufferMeans;
+    private double[] bufferWeights;
+    private int buffered;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest(double compression) {
+        this.compression = compression;
+        this.bufferCapacity = (int) (compression * 2);
+    }
+
+    public void add(double value) {
+        add(value, 1.0);
+    }
+
+    public void merge(TDigest other) {
+        for (int i = 0; i < other.means.length; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        for (int i = 0; i < other.buffered; i++) {
+            add(other.bufferMeans[i], other.bufferWeights[i]);
+        }
+        // Centroid means lie inside the range, so the extremes are carried over separately
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return Math.round(totalWeight);
+    }
+
+    // Value below which a fraction q of the added values fall; NaN when empty
+    public double quantile(double q) {
+        compress();
+        int n = means.length;
+        if (n == 0) {
+            return Double.NaN;
+        }
+        if (n == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        if (index < 1) {
+            return min;
+        }
+        // Between the minimum and the first centroid's mean, and likewise at the top, values are
+        // assumed to be spread evenly
+        if (weights[0] > 1 && index < weights[0] / 2) {
+            return min + (index - 1) / (weights[0] / 2 - 1) * (means[0] - min);
+        }
+        if (index > totalWeight - 1) {
+            return max;
+        }
+        if (weights[n - 1] > 1 && totalWeight - index <= weights[n - 1] / 2) {
+            return max - (totalWeight - index - 1) / (weights[n - 1] / 2 - 1) * (max - means[n - 1]);
+        }
+        // Otherwise interpolate between the centers of the two neighbouring centroids; a centroid of
+        // weight one is an exact sample and is returned as is within half a unit of it
+        double weightSoFar = weights[0] / 2;
+        for (int i = 0; i < n - 1; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (weightSoFar + step > index) {
+                double leftUnit = 0;
+                if (weights[i] == 1) {
+                    if (index - weightSoFar < 0.5) {
+                        return means[i];
+                    }
+                    leftUnit = 0.5;
+                }
+                double rightUnit = 0;
+                if (weights[i + 1] == 1) {
+                    if (weightSoFar + step - index <= 0.5) {
+                        return means[i + 1];
+                    }
+                    rightUnit = 0.5;
+                }
+                double toLeft = index - weightSoFar - leftUnit;
+                double toRight = weightSoFar + step - index - rightUnit;
+                return (means[i] * toRight + means[i + 1] * toLeft) / (toLeft + toRight);
+            }
+            weightSoFar += step;
+        }
+        return means[n - 1];
+    }
+
+    private void add(double mean, double weight) {
+        if (bufferMeans == null) {
+            bufferMeans = new double[bufferCapacity];
+            bufferWeights = new double[bufferCapacity];
+        }
+        bufferMeans[buffered] = mean;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        totalWeight += weight;
+        min = Math.min(min, mean);
+        max = Math.max(max, mean);
+        if (buffered == bufferCapacity) {
+            compress();
+        }
+    }
+
+    // Sorts centroids and buffer together and sweeps once, merging neighbours while the merged centroid
+    // still spans at most one unit of k
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        int n = means.length + buffered;
+        double[] allMeans = Arrays.copyOf(means, n);
+        double[] allWeights = Arrays.copyOf(weights, n);
+        System.arraycopy(bufferMeans, 0, allMeans, means.length, buffered);
+        System.arraycopy(bufferWeights, 0, allWeights, means.length, buffered);
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> allMeans[i]));
+
+        double[] mergedMeans = new double[n];
+        double[] mergedWeights = new double[n];
+        int last = 0;
+        mergedMeans[0] = allMeans[order[0]];
+        mergedWeights[0] = allWeights[order[0]];
+        double weightSoFar = 0;
+        double limit = totalWeight * upperQuantile(0);
+        for (int k = 1; k < n; k++) {
+            int i = order[k];
+            double proposed = mergedWeights[last] + allWeights[i];
+            if (weightSoFar + proposed <= limit) {
+                mergedWeights[last] = proposed;
+                mergedMeans[last] += (allMeans[i] - mergedMeans[last]) * allWeights[i] / proposed;
+            } else {
+                weightSoFar += mergedWeights[last];
+                limit = totalWeight * upperQuantile(weightSoFar / totalWeight);
+                last++;
+                mergedMeans[last] = allMeans[i];
+                mergedWeights[last] = allWeights[i];
+            }
+        }
+        means = Arrays.copyOf(mergedMeans, last + 1);
+        weights = Arrays.copyOf(mergedWeights, last + 1);
+        bufferMeans = null;
+        bufferWeights = null;
+        buffered = 0;
+    }
+
+    // Largest q whose k is at most one more than k(q0)
+    private double upperQuantile(double q0) {
+        double angle = Math.min(Math.PI / 2, Math.asin(2 * q0 - 1) + 2 * Math.PI / compression);
+        return (Math.sin(angle) + 1) / 2;
+    }
+}
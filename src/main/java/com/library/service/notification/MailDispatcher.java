@@ -0,0 +1,313 @@
+package com.library.service.notification;
+
+import com.library.model.FailedNotification;
+import com.library.repository.FailedNotificationRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Sends a large notification run without holding the scheduler thread on one SMTP exchange per message.
+// The calling thread reads recipients in keyset pages and cuts them into batches; a small pool renders
+// each batch and sends it over one SMTP connection (JavaMailSender opens one transport per send call), so
+// at most "concurrency" connections are open at a time. Messages the server rejects are retried with
+// exponential backoff; those still failing after the last attempt go to the failed_notifications table,
+// and so do messages whose outcome the sender could not report, since sending them again might deliver twice.
+// When every sender is busy and the queue is full, the reading thread sends the batch itself, which keeps
+// the number of rendered messages in memory bounded.
+@Component
+public class MailDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(MailDispatcher.class);
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Autowired
+    private FailedNotificationRepository failedNotificationRepository;
+
+    @Value("${notifications.mail.concurrency:4}")
+    private int concurrency;
+
+    @Value("${notifications.mail.batch-size:50}")
+    private int batchSize;
+
+    @Value("${notifications.mail.page-size:1000}")
+    private int pageSize;
+
+    @Value("${notifications.mail.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${notifications.mail.initial-backoff-ms:2000}")
+    private long initialBackoffMs;
+
+    @Value("${notifications.mail.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+
+    private ThreadPoolExecutor executor;
+    private final Map<String, Map<String, Object>> lastRuns = new ConcurrentHashMap<>();
+    private final Map<String, Totals> totals = new ConcurrentHashMap<>();
+
+    // The next page of recipients after the last item of the previous page (null for the first page);
+    // an empty page ends the run
+    public interface PageSource<T> {
+        List<T> page(T after, int size);
+    }
+
+    private static class Totals {
+        final LongAdder runs = new LongAdder();
+        final LongAdder sent = new LongAdder();
+        final LongAdder retried = new LongAdder();
+        final LongAdder deadLettered = new LongAdder();
+    }
+
+    private static class RunStats {
+        final LongAdder recipients = new LongAdder();
+        final LongAdder batches = new LongAdder();
+        final LongAdder sent = new LongAdder();
+        final LongAdder retried = new LongAdder();
+        final LongAdder deadLettered = new LongAdder();
+        final LongAdder unstored = new LongAdder();
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(concurrency * 2),
+            runnable -> {
+                Thread thread = new Thread(runnable, "mail-sender-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    // Reads every page from the source, sends one rendered message per item, and returns once every
+    // message was sent or dead-lettered. The renderer runs on the sending threads. Dead letters are stored
+    // under the kind their OutgoingMail names, or the run's kind; "unstored" counts the ones that could not be.
+    public <T> Map<String, Object> dispatch(String kind, PageSource<T> source, Function<T, OutgoingMail> renderer) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        long started = System.nanoTime();
+        RunStats stats = new RunStats();
+        List<Future<?>> batches = new ArrayList<>();
+        T last = null;
+        while (true) {
+            List<T> page = source.page(last, pageSize);
+            if (page.isEmpty()) {
+                break;
+            }
+            stats.recipients.add(page.size());
+            for (int from = 0; from < page.size(); from += batchSize) {
+                List<T> batch = page.subList(from, Math.min(from + batchSize, page.size()));
+                stats.batches.increment();
+                batches.add(executor.submit(() -> sendBatch(kind, batch, renderer, stats)));
+            }
+            // Finished batches are collected after every page, so the run holds futures only for the
+            // batches still queued or sending rather than one per batch read
+            collect(kind, batches, false);
+            // A short page is not necessarily the last one: a source may drop items it read (e.g. members
+            // whose loans were returned meanwhile), so only an empty page ends the run
+            last = page.get(page.size() - 1);
+        }
+        collect(kind, batches, true);
+
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("kind", kind);
+        result.put("startedAt", startedAt);
+        result.put("recipients", stats.recipients.sum());
+        result.put("batches", stats.batches.sum());
+        result.put("sent", stats.sent.sum());
+        result.put("retried", stats.retried.sum());
+        result.put("deadLettered", stats.deadLettered.sum());
+        result.put("unstored", stats.unstored.sum());
+        result.put("millis", millis);
+        result.put("messagesPerSecond", millis == 0 ? 0.0 : stats.sent.sum() * 1000.0 / millis);
+        lastRuns.put(kind, result);
+
+        Totals kindTotals = totals.computeIfAbsent(kind, key -> new Totals());
+        kindTotals.runs.increment();
+        kindTotals.sent.add(stats.sent.sum());
+        kindTotals.retried.add(stats.retried.sum());
+        kindTotals.deadLettered.add(stats.deadLettered.sum());
+        log.info("Sent {} of {} {} notifications in {} ms, {} dead-lettered",
+            stats.sent.sum(), stats.recipients.sum(), kind, millis, stats.deadLettered.sum());
+        return result;
+    }
+
+    // Waits for every batch, or with all false only takes the ones already finished, and removes them
+    private static void collect(String kind, List<Future<?>> batches, boolean all) {
+        Iterator<Future<?>> iterator = batches.iterator();
+        while (iterator.hasNext()) {
+            Future<?> batch = iterator.next();
+            if (!all && !batch.isDone()) {
+                continue;
+            }
+            try {
+                batch.get();
+            } catch (ExecutionException e) {
+                log.error("Mail batch of {} run failed", kind, e.getCause());
+            } catch (InterruptedException e) {
+                batches.forEach(pending -> pending.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while sending " + kind + " notifications", e);
+            }
+            iterator.remove();
+        }
+    }
+
+    // Last run and totals since startup, per kind of notification
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new TreeMap<>();
+        totals.forEach((kind, kindTotals) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("runs", kindTotals.runs.sum());
+            entry.put("sent", kindTotals.sent.sum());
+            entry.put("retried", kindTotals.retried.sum());
+            entry.put("deadLettered", kindTotals.deadLettered.sum());
+            entry.put("lastRun", lastRuns.get(kind));
+            metrics.put(kind, entry);
+        });
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("concurrency", concurrency);
+        pool.put("activeSenders", executor.getActiveCount());
+        pool.put("queuedBatches", executor.getQueue().size());
+        metrics.put("pool", pool);
+        return metrics;
+    }
+
+    private <T> void sendBatch(String kind, List<T> items, Function<T, OutgoingMail> renderer, RunStats stats) {
+        // Keyed by identity: the sender reports failures against the message objects it was given
+        Map<SimpleMailMessage, OutgoingMail> pending = new IdentityHashMap<>();
+        for (T item : items) {
+            try {
+                OutgoingMail mail = renderer.apply(item);
+                pending.put(mail.message(), mail);
+            } catch (RuntimeException e) {
+                log.warn("Could not render {} notification", kind, e);
+            }
+        }
+
+        Map<SimpleMailMessage, Exception> errors = new IdentityHashMap<>();
+        int attempt = 1;
+        while (!pending.isEmpty()) {
+            try {
+                mailSender.send(pending.keySet().toArray(new SimpleMailMessage[0]));
+                stats.sent.add(pending.size());
+                return;
+            } catch (MailParseException | MailPreparationException e) {
+                // Malformed messages fail the same way every time
+                pending.keySet().forEach(message -> errors.put(message, e));
+                break;
+            } catch (MailSendException e) {
+                Map<Object, Exception> failed = e.getFailedMessages();
+                if (failed.isEmpty()) {
+                    // The sender failed without naming any message (e.g. closing the connection after the
+                    // data went out), so some or all of the batch may have been delivered: store the batch
+                    // for review instead of sending it again
+                    pending.keySet().forEach(message -> errors.put(message, e));
+                    break;
+                } else {
+                    int before = pending.size();
+                    pending.keySet().retainAll(failed.keySet());
+                    failed.forEach((message, error) -> errors.put((SimpleMailMessage) message, error));
+                    stats.sent.add(before - pending.size());
+                }
+            } catch (MailException e) {
+                // Authentication or connection trouble: nothing in the batch went out
+                pending.keySet().forEach(message -> errors.put(message, e));
+            }
+            if (attempt == maxAttempts || !backOff(attempt)) {
+                break;
+            }
+            stats.retried.add(pending.size());
+            attempt++;
+        }
+        if (deadLetter(kind, pending, errors, attempt)) {
+            stats.deadLettered.add(pending.size());
+        } else {
+            stats.unstored.add(pending.size());
+        }
+    }
+
+    // False when interrupted by shutdown
+    private boolean backOff(int attempt) {
+        try {
+            Thread.sleep(backoffDelay(attempt));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // initial * 2^(attempt - 1) with up to 25% jitter, so parallel batches do not retry in lockstep, and
+    // never more than max-backoff-ms however many attempts are configured
+    long backoffDelay(int attempt) {
+        long delay = initialBackoffMs << Math.min(attempt - 1, 30);
+        delay = Math.min(delay, maxBackoffMs);
+        delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+        return Math.min(delay, maxBackoffMs);
+    }
+
+    // False when the letters could not be stored
+    private boolean deadLetter(String kind, Map<SimpleMailMessage, OutgoingMail> pending,
+                               Map<SimpleMailMessage, Exception> errors, int attempts) {
+        if (pending.isEmpty()) {
+            return true;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<FailedNotification> letters = new ArrayList<>(pending.size());
+        pending.forEach((message, mail) -> {
+            FailedNotification letter = new FailedNotification();
+            letter.setKind(mail.kind() != null ? mail.kind() : kind);
+            letter.setReference(mail.reference());
+            letter.setRecipient(message.getTo() == null ? "" : String.join(",", message.getTo()));
+            letter.setSubject(message.getSubject());
+            letter.setBody(message.getText());
+            letter.setAttempts(attempts);
+            letter.setLastError(describe(errors.get(message)));
+            letter.setFailedAt(now);
+            letters.add(letter);
+        });
+        try {
+            failedNotificationRepository.saveAll(letters);
+            return true;
+        } catch (DataAccessException e) {
+            log.error("Could not store {} undeliverable {} notifications", letters.size(), kind, e);
+            return false;
+        }
+    }
+
+    private static String describe(Exception error) {
+        if (error == null) {
+            return null;
+        }
+        String text = error.toString();
+        return text.length() <= MAX_ERROR_LENGTH ? text : text.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,12 @@
+package com.library.service.notification;
+
+import org.springframework.mail.SimpleMailMessage;
+
+// A rendered notification and the id it is about (a lending, or null), recorded if it ends up dead-lettered.
+// The kind it is stored under defaults to the kind of the run that sends it.
+public record OutgoingMail(String kind, Long reference, SimpleMailMessage message) {
+
+    public OutgoingMail(Long reference, SimpleMailMessage message) {
+        this(null, reference, message);
+    }
+}
@@ -0,0 +1,235 @@
+package com.library.service.recommendation;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// Immutable snapshot of a trained factor model. Scoring keeps a bounded min-heap
+// over primitive arrays so a request never sorts or boxes the whole catalog.
+public class AlsModel {
+
+    private static final int MAGIC = 0x414c5332; // "ALS2"
+
+    // The lendings a model was trained on, identified by the highest lending id it saw and the count and
+    // member and book id sums of the lendings up to it
+    public record LendingFingerprint(long throughId, long lendings, long userIdSum, long bookIdSum) {}
+
+    private final long version;
+    private final long trainedAt;
+    private final int rank;
+    private final long[] userIds;
+    private final long[] bookIds;
+    private final float[] userFactors;
+    private final float[] bookFactors;
+    private final Map<Long, Integer> userIndex;
+    private final Map<Long, Integer> bookIndex;
+    private final LendingFingerprint history;
+
+    public AlsModel(long version, long trainedAt, int rank, long[] userIds, long[] bookIds,
+                    float[] userFactors, float[] bookFactors) {
+        this(version, trainedAt, rank, userIds, bookIds, userFactors, bookFactors,
+            index(userIds), index(bookIds), null);
+    }
+
+    private AlsModel(long version, long trainedAt, int rank, long[] userIds, long[] bookIds,
+                     float[] userFactors, float[] bookFactors, Map<Long, Integer> userIndex,
+                     Map<Long, Integer> bookIndex, LendingFingerprint history) {
+        this.version = version;
+        this.trainedAt = trainedAt;
+        this.rank = rank;
+        this.userIds = userIds;
+        this.bookIds = bookIds;
+        this.userFactors = userFactors;
+        this.bookFactors = bookFactors;
+        this.userIndex = userIndex;
+        this.bookIndex = bookIndex;
+        this.history = history;
+    }
+
+    // The same factors, recorded as trained on the given lendings
+    public AlsModel withHistory(LendingFingerprint history) {
+        return new AlsModel(version, trainedAt, rank, userIds, bookIds, userFactors, bookFactors,
+            userIndex, bookIndex, history);
+    }
+
+    public long getVersion() { return version; }
+    public long getTrainedAt() { return trainedAt; }
+    public int getRank() { return rank; }
+    public int userCount() { return userIds.length; }
+    public int bookCount() { return bookIds.length; }
+    public Optional<LendingFingerprint> getHistory() { return Optional.ofNullable(history); }
+
+    public boolean knowsUser(long userId) {
+        return userIndex.containsKey(userId);
+    }
+
+    // Returns up to k book ids ordered by descending predicted preference
+    public List<Long> recommend(long userId, int k, Set<Long> excludedBookIds) {
+        Integer user = userIndex.get(userId);
+        if (user == null || k <= 0) {
+            return List.of();
+        }
+
+        BitSet excluded = new BitSet(bookIds.length);
+        for (Long bookId : excludedBookIds) {
+            Integer book = bookIndex.get(bookId);
+            if (book != null) {
+                excluded.set(book);
+            }
+        }
+
+        int capacity = Math.min(k, bookIds.length);
+        int[] heapBooks = new int[capacity];
+        float[] heapScores = new float[capacity];
+        int size = 0;
+        int userBase = user * rank;
+
+        for (int book = 0; book < bookIds.length; book++) {
+            if (excluded.get(book)) {
+                continue;
+            }
+            float score = dot(userFactors, userBase, bookFactors, book * rank);
+            if (size < capacity) {
+                heapBooks[size] = book;
+                heapScores[size] = score;
+                siftUp(heapBooks, heapScores, size++);
+            } else if (score > heapScores[0]) {
+                heapBooks[0] = book;
+                heapScores[0] = score;
+                siftDown(heapBooks, heapScores, size);
+            }
+        }
+
+        // Drain the min-heap from the back so the best score ends up first
+        Long[] result = new Long[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = bookIds[heapBooks[0]];
+            heapBooks[0] = heapBooks[i];
+            heapScores[0] = heapScores[i];
+            siftDown(heapBooks, heapScores, i);
+        }
+        return Arrays.asList(result);
+    }
+
+    public void writeTo(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeLong(version);
+            out.writeLong(trainedAt);
+            out.writeInt(rank);
+            out.writeBoolean(history != null);
+            if (history != null) {
+                out.writeLong(history.throughId());
+                out.writeLong(history.lendings());
+                out.writeLong(history.userIdSum());
+                out.writeLong(history.bookIdSum());
+            }
+            writeLongs(out, userIds);
+            writeLongs(out, bookIds);
+            for (float value : userFactors) {
+                out.writeFloat(value);
+            }
+            for (float value : bookFactors) {
+                out.writeFloat(value);
+            }
+        }
+    }
+
+    public static AlsModel readFrom(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 20))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an ALS model snapshot: " + file);
+            }
+            long version = in.readLong();
+            long trainedAt = in.readLong();
+            int rank = in.readInt();
+            LendingFingerprint history = in.readBoolean()
+                ? new LendingFingerprint(in.readLong(), in.readLong(), in.readLong(), in.readLong())
+                : null;
+            long[] userIds = readLongs(in);
+            long[] bookIds = readLongs(in);
+            float[] userFactors = readFloats(in, userIds.length * rank);
+            float[] bookFactors = readFloats(in, bookIds.length * rank);
+            return new AlsModel(version, trainedAt, rank, userIds, bookIds, userFactors, bookFactors)
+                .withHistory(history);
+        }
+    }
+
+    private float dot(float[] left, int leftBase, float[] right, int rightBase) {
+        float sum = 0f;
+        for (int i = 0; i < rank; i++) {
+            sum += left[leftBase + i] * right[rightBase + i];
+        }
+        return sum;
+    }
+
+    private static void siftUp(int[] books, float[] scores, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(books, scores, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] books, float[] scores, int size) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[i] <= scores[smallest]) {
+                return;
+            }
+            swap(books, scores, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(int[] books, float[] scores, int a, int b) {
+        int book = books[a];
+        books[a] = books[b];
+        books[b] = book;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+    private static Map<Long, Integer> index(long[] ids) {
+        Map<Long, Integer> index = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            index.put(ids[i], i);
+        }
+        return index;
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    private static float[] readFloats(DataInputStream in, int count) throws IOException {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readFloat();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,215 @@
+package com.library.service.recommendation;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// Implicit-feedback alternating least squares (Hu, Koren & Volinsky).
+// Each half-step solves one small k x k system per row; rows are independent,
+// so they are split across a fork-join pool and every leaf reuses its own scratch buffers.
+public class AlsTrainer {
+
+    private static final int LEAF_ROWS = 256;
+
+    private final int rank;
+    private final int iterations;
+    private final double lambda;
+    private final double alpha;
+    private final long seed;
+
+    public AlsTrainer(int rank, int iterations, double lambda, double alpha, long seed) {
+        if (rank <= 0 || iterations <= 0) {
+            throw new IllegalArgumentException("rank and iterations must be positive");
+        }
+        this.rank = rank;
+        this.iterations = iterations;
+        this.lambda = lambda;
+        this.alpha = alpha;
+        this.seed = seed;
+    }
+
+    public AlsModel train(InteractionMatrix matrix, ForkJoinPool pool, long version) {
+        int nUsers = matrix.userCount();
+        int nBooks = matrix.bookCount();
+        float[] userFactors = new float[nUsers * rank];
+        float[] bookFactors = new float[nBooks * rank];
+
+        SplittableRandom random = new SplittableRandom(seed);
+        double scale = 1.0 / Math.sqrt(rank);
+        for (int i = 0; i < bookFactors.length; i++) {
+            bookFactors[i] = (float) (random.nextDouble() * scale);
+        }
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            solve(pool, matrix.userOffsets(), matrix.userItems(), matrix.userValues(),
+                bookFactors, nBooks, userFactors, nUsers);
+            solve(pool, matrix.bookOffsets(), matrix.bookUsers(), matrix.bookValues(),
+                userFactors, nUsers, bookFactors, nBooks);
+        }
+
+        return new AlsModel(version, System.currentTimeMillis(), rank,
+            matrix.getUserIds(), matrix.getBookIds(), userFactors, bookFactors);
+    }
+
+    // Recompute every row of "target" holding "fixed" constant
+    private void solve(ForkJoinPool pool, int[] offsets, int[] columns, float[] values,
+                       float[] fixed, int fixedRows, float[] target, int targetRows) {
+        double[] gram = pool.invoke(new GramTask(fixed, 0, fixedRows));
+        pool.invoke(new SolveTask(offsets, columns, values, fixed, gram, target, 0, targetRows));
+    }
+
+    // YtY summed over all rows of the fixed side, shared by every row solve in this half-step
+    private class GramTask extends RecursiveTask<double[]> {
+        private final float[] factors;
+        private final int from;
+        private final int to;
+
+        GramTask(float[] factors, int from, int to) {
+            this.factors = factors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > LEAF_ROWS * 4) {
+                int mid = (from + to) >>> 1;
+                GramTask left = new GramTask(factors, from, mid);
+                left.fork();
+                double[] right = new GramTask(factors, mid, to).compute();
+                double[] result = left.join();
+                for (int i = 0; i < result.length; i++) {
+                    result[i] += right[i];
+                }
+                return result;
+            }
+
+            double[] gram = new double[rank * rank];
+            for (int row = from; row < to; row++) {
+                int base = row * rank;
+                for (int a = 0; a < rank; a++) {
+                    double fa = factors[base + a];
+                    for (int b = a; b < rank; b++) {
+                        gram[a * rank + b] += fa * factors[base + b];
+                    }
+                }
+            }
+            return gram;
+        }
+    }
+
+    private class SolveTask extends RecursiveAction {
+        private final int[] offsets;
+        private final int[] columns;
+        private final float[] values;
+        private final float[] fixed;
+        private final double[] gram;
+        private final float[] target;
+        private final int from;
+        private final int to;
+
+        SolveTask(int[] offsets, int[] columns, float[] values, float[] fixed,
+                  double[] gram, float[] target, int from, int to) {
+            this.offsets = offsets;
+            this.columns = columns;
+            this.values = values;
+            this.fixed = fixed;
+            this.gram = gram;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_ROWS) {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                    new SolveTask(offsets, columns, values, fixed, gram, target, from, mid),
+                    new SolveTask(offsets, columns, values, fixed, gram, target, mid, to));
+                return;
+            }
+
+            double[] a = new double[rank * rank];
+            double[] b = new double[rank];
+            for (int row = from; row < to; row++) {
+                solveRow(row, a, b);
+            }
+        }
+
+        private void solveRow(int row, double[] a, double[] b) {
+            System.arraycopy(gram, 0, a, 0, a.length);
+            Arrays.fill(b, 0.0);
+
+            for (int p = offsets[row]; p < offsets[row + 1]; p++) {
+                int base = columns[p] * rank;
+                double confidence = 1.0 + alpha * values[p];
+                double extra = confidence - 1.0;
+                for (int i = 0; i < rank; i++) {
+                    double fi = fixed[base + i];
+                    b[i] += confidence * fi;
+                    double scaled = extra * fi;
+                    for (int j = i; j < rank; j++) {
+                        a[i * rank + j] += scaled * fixed[base + j];
+                    }
+                }
+            }
+
+            for (int i = 0; i < rank; i++) {
+                a[i * rank + i] += lambda;
+            }
+
+            int out = row * rank;
+            if (!choleskySolve(a, b)) {
+                Arrays.fill(target, out, out + rank, 0f);
+                return;
+            }
+            for (int i = 0; i < rank; i++) {
+                target[out + i] = (float) b[i];
+            }
+        }
+    }
+
+    // Solves A x = b in place for a symmetric positive-definite A given by its upper triangle
+    private boolean choleskySolve(double[] a, double[] b) {
+        int n = rank;
+        for (int j = 0; j < n; j++) {
+            double diagonal = a[j * n + j];
+            for (int k = 0; k < j; k++) {
+                double l = a[k * n + j];
+                diagonal -= l * l;
+            }
+            if (diagonal <= 0.0) {
+                return false;
+            }
+            diagonal = Math.sqrt(diagonal);
+            a[j * n + j] = diagonal;
+            for (int i = j + 1; i < n; i++) {
+                double sum = a[j * n + i];
+                for (int k = 0; k < j; k++) {
+                    sum -= a[k * n + j] * a[k * n + i];
+                }
+                a[j * n + i] = sum / diagonal;
+            }
+        }
+
+        // Forward substitution with L = U^T, then back substitution with U
+        for (int i = 0; i < n; i++) {
+            double sum = b[i];
+            for (int k = 0; k < i; k++) {
+                sum -= a[k * n + i] * b[k];
+            }
+            b[i] = sum / a[i * n + i];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            double sum = b[i];
+            for (int k = i + 1; k < n; k++) {
+                sum -= a[i * n + k] * b[k];
+            }
+            b[i] = sum / a[i * n + i];
+        }
+        return true;
+    }
+}
@@ -0,0 +1,227 @@
+package com.library.service.recommendation;
+
+import com.library.repository.BookLendingRepository;
+import com.library.repository.BookRepository;
+import com.library.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Scores every member in one pass: catalog, members and lending pairs are loaded once into
+// columnar arrays, and each member is then answered from their own CSR row plus per-genre
+// book lists, instead of one findByUserId and one findAll per member.
+@Component
+public class BatchRecommendationEngine {
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookLendingRepository lendingRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    public record UserRecommendation(long userId, String username, List<String> titles) {}
+
+    // Results are produced lazily and in parallel; the caller decides whether to collect or stream them
+    public Stream<UserRecommendation> recommendForAllUsers(int limit) {
+        Facts facts = loadFacts();
+        ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(facts));
+        return IntStream.range(0, facts.userIds.length)
+            .parallel()
+            .mapToObj(user -> facts.recommend(user, limit, scratch.get()));
+    }
+
+    private Facts loadFacts() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> {
+            Facts facts = new Facts();
+            try (Stream<Object[]> users = userRepository.streamIdAndUsername()) {
+                users.forEach(row -> facts.addUser((Long) row[0], (String) row[1]));
+            }
+            try (Stream<Object[]> books = bookRepository.streamCatalog()) {
+                books.forEach(row -> facts.addBook((Long) row[0], (String) row[1], (String) row[2]));
+            }
+            try (Stream<Object[]> pairs = lendingRepository.streamUserBookPairs()) {
+                pairs.forEach(row -> facts.addLending((Long) row[0], (Long) row[1]));
+            }
+            facts.seal();
+            return facts;
+        });
+    }
+
+    private static class Facts {
+        private final Map<Long, Integer> userIndex = new HashMap<>();
+        private final Map<Long, Integer> bookIndex = new HashMap<>();
+        private final Map<String, Integer> genreIndex = new HashMap<>();
+
+        private long[] userIds = new long[1024];
+        private String[] usernames = new String[1024];
+        private int userCount;
+
+        private String[] titles = new String[1024];
+        private int[] bookGenre = new int[1024];
+        private int bookCount;
+
+        private int[] lendingUsers = new int[1 << 16];
+        private int[] lendingBooks = new int[1 << 16];
+        private int lendingCount;
+
+        // Filled by seal()
+        private int[] readOffsets;
+        private int[] readBooks;
+        private int[][] booksByGenre;
+
+        void addUser(long id, String username) {
+            if (userCount == userIds.length) {
+                userIds = Arrays.copyOf(userIds, userCount * 2);
+                usernames = Arrays.copyOf(usernames, userCount * 2);
+            }
+            userIndex.put(id, userCount);
+            userIds[userCount] = id;
+            usernames[userCount] = username;
+            userCount++;
+        }
+
+        void addBook(long id, String title, String genre) {
+            if (bookCount == titles.length) {
+                titles = Arrays.copyOf(titles, bookCount * 2);
+                bookGenre = Arrays.copyOf(bookGenre, bookCount * 2);
+            }
+            bookIndex.put(id, bookCount);
+            titles[bookCount] = title;
+            // A null genre is a genre of its own, matching the entity-based implementation
+            bookGenre[bookCount] = genreIndex.computeIfAbsent(genre, g -> genreIndex.size());
+            bookCount++;
+        }
+
+        void addLending(long userId, long bookId) {
+            Integer user = userIndex.get(userId);
+            Integer book = bookIndex.get(bookId);
+            if (user == null || book == null) {
+                return;
+            }
+            if (lendingCount == lendingUsers.length) {
+                lendingUsers = Arrays.copyOf(lendingUsers, lendingCount * 2);
+                lendingBooks = Arrays.copyOf(lendingBooks, lendingCount * 2);
+            }
+            lendingUsers[lendingCount] = user;
+            lendingBooks[lendingCount] = book;
+            lendingCount++;
+        }
+
+        void seal() {
+            userIds = Arrays.copyOf(userIds, userCount);
+            usernames = Arrays.copyOf(usernames, userCount);
+            titles = Arrays.copyOf(titles, bookCount);
+            bookGenre = Arrays.copyOf(bookGenre, bookCount);
+
+            // Counting sort of lending pairs into one row of book indices per user
+            readOffsets = new int[userCount + 1];
+            for (int i = 0; i < lendingCount; i++) {
+                readOffsets[lendingUsers[i] + 1]++;
+            }
+            for (int u = 0; u < userCount; u++) {
+                readOffsets[u + 1] += readOffsets[u];
+            }
+            readBooks = new int[lendingCount];
+            int[] cursor = Arrays.copyOf(readOffsets, userCount);
+            for (int i = 0; i < lendingCount; i++) {
+                readBooks[cursor[lendingUsers[i]]++] = lendingBooks[i];
+            }
+            lendingUsers = null;
+            lendingBooks = null;
+
+            // Per-genre book lists in catalog (id) order
+            int genreCount = genreIndex.size();
+            int[] genreSizes = new int[genreCount];
+            for (int b = 0; b < bookCount; b++) {
+                genreSizes[bookGenre[b]]++;
+            }
+            booksByGenre = new int[genreCount][];
+            for (int g = 0; g < genreCount; g++) {
+                booksByGenre[g] = new int[genreSizes[g]];
+                genreSizes[g] = 0;
+            }
+            for (int b = 0; b < bookCount; b++) {
+                int g = bookGenre[b];
+                booksByGenre[g][genreSizes[g]++] = b;
+            }
+        }
+
+        // First "limit" catalog books in any genre the member has read, skipping books already borrowed.
+        // Genre lists are disjoint and sorted, so a k-way merge over the member's genres yields catalog order.
+        UserRecommendation recommend(int user, int limit, Scratch scratch) {
+            int genreCount = 0;
+            for (int p = readOffsets[user]; p < readOffsets[user + 1]; p++) {
+                int book = readBooks[p];
+                scratch.read.set(book);
+                int genre = bookGenre[book];
+                if (!scratch.genreSeen[genre]) {
+                    scratch.genreSeen[genre] = true;
+                    scratch.genres[genreCount] = genre;
+                    scratch.cursors[genreCount] = 0;
+                    genreCount++;
+                }
+            }
+
+            List<String> picks = new ArrayList<>(limit);
+            while (picks.size() < limit) {
+                int bestSlot = -1;
+                int bestBook = Integer.MAX_VALUE;
+                for (int slot = 0; slot < genreCount; slot++) {
+                    int[] list = booksByGenre[scratch.genres[slot]];
+                    int cursor = scratch.cursors[slot];
+                    while (cursor < list.length && scratch.read.get(list[cursor])) {
+                        cursor++;
+                    }
+                    scratch.cursors[slot] = cursor;
+                    if (cursor < list.length && list[cursor] < bestBook) {
+                        bestBook = list[cursor];
+                        bestSlot = slot;
+                    }
+                }
+                if (bestSlot < 0) {
+                    break;
+                }
+                picks.add(titles[bestBook]);
+                scratch.cursors[bestSlot]++;
+            }
+
+            // Reset only the bits this member touched so the scratch can be reused
+            for (int p = readOffsets[user]; p < readOffsets[user + 1]; p++) {
+                scratch.read.clear(readBooks[p]);
+            }
+            for (int slot = 0; slot < genreCount; slot++) {
+                scratch.genreSeen[scratch.genres[slot]] = false;
+            }
+
+            return new UserRecommendation(userIds[user], usernames[user], picks);
+        }
+    }
+
+    private static class Scratch {
+        private final BitSet read;
+        private final boolean[] genreSeen;
+        private final int[] genres;
+        private final int[] cursors;
+
+        Scratch(Facts facts) {
+            int genreCount = facts.booksByGenre.length;
+            this.read = new BitSet(facts.bookCount);
+            this.genreSeen = new boolean[genreCount];
+            this.genres = new int[genreCount];
+            this.cursors = new int[genreCount];
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.library.service.recommendation;
+
+import com.library.repository.BookLendingRepository;
+import com.library.repository.ReviewRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+@Service
+public class CollaborativeFilteringService {
+
+    private static final Logger log = LoggerFactory.getLogger(CollaborativeFilteringService.class);
+    private static final String SNAPSHOT_PREFIX = "als-model-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    @Autowired
+    private BookLendingRepository lendingRepository;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${recommendation.als.model-dir:models}")
+    private String modelDir;
+
+    @Value("${recommendation.als.rank:32}")
+    private int rank;
+
+    @Value("${recommendation.als.iterations:10}")
+    private int iterations;
+
+    @Value("${recommendation.als.lambda:0.1}")
+    private double lambda;
+
+    @Value("${recommendation.als.alpha:40.0}")
+    private double alpha;
+
+    // Added to the borrow count per review star away from a neutral 3
+    @Value("${recommendation.als.rating-weight:0.5}")
+    private float ratingWeight;
+
+    @Value("${recommendation.als.snapshots-to-keep:3}")
+    private int snapshotsToKeep;
+
+    @Value("${recommendation.als.parallelism:0}")
+    private int parallelism;
+
+    private final AtomicReference<AlsModel> currentModel = new AtomicReference<>();
+    private final AtomicBoolean training = new AtomicBoolean(false);
+    private ForkJoinPool pool;
+
+    public Optional<AlsModel> getCurrentModel() {
+        return Optional.ofNullable(currentModel.get());
+    }
+
+    public List<Long> recommend(Long userId, int k, Set<Long> excludedBookIds) {
+        AlsModel model = currentModel.get();
+        if (model == null) {
+            return List.of();
+        }
+        return model.recommend(userId, k, excludedBookIds);
+    }
+
+    // The snapshots outlive the in-memory database, so the latest one is only used while the lendings it
+    // was trained on are unchanged; otherwise its member and book ids may now mean different rows. Such a
+    // snapshot, or one that cannot be read, is removed with all older ones and the model is retrained.
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadLatestSnapshot() {
+        try {
+            Optional<Path> latest = listSnapshots().stream().reduce((first, second) -> second);
+            if (latest.isEmpty()) {
+                return;
+            }
+            AlsModel model = readSnapshot(latest.get());
+            if (model != null) {
+                if (model.getHistory().filter(history -> history.equals(fingerprint(history.throughId()))).isPresent()) {
+                    currentModel.set(model);
+                    log.info("Loaded ALS model v{} ({} users, {} books)",
+                        model.getVersion(), model.userCount(), model.bookCount());
+                    return;
+                }
+                log.info("Discarding ALS model v{}: the lendings it was trained on have changed", model.getVersion());
+            }
+            for (Path snapshot : listSnapshots()) {
+                Files.deleteIfExists(snapshot);
+            }
+            retrain();
+        } catch (IOException e) {
+            log.warn("Could not replace ALS model snapshots: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Failed to check the ALS model snapshot; training at the next scheduled run", e);
+        }
+    }
+
+    @Scheduled(cron = "${recommendation.als.train-cron:0 0 3 * * *}")
+    public void retrain() {
+        if (!training.compareAndSet(false, true)) {
+            log.info("ALS training already in progress, skipping this run");
+            return;
+        }
+        try {
+            long started = System.nanoTime();
+            // Taken before reading, so every lending it covers is in the matrix
+            AlsModel.LendingFingerprint history = currentHistory();
+            InteractionMatrix matrix = loadInteractions();
+            if (matrix.nonZeroCount() == 0) {
+                return;
+            }
+
+            long version = getCurrentModel().map(AlsModel::getVersion).orElse(0L) + 1;
+            AlsTrainer trainer = new AlsTrainer(rank, iterations, lambda, alpha, version);
+            AlsModel model = trainer.train(matrix, pool(), version).withHistory(history);
+            writeSnapshot(model);
+            currentModel.set(model);
+
+            log.info("Trained ALS model v{} on {} interactions ({} users, {} books) in {} ms",
+                version, matrix.nonZeroCount(), matrix.userCount(), matrix.bookCount(),
+                (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException e) {
+            log.error("Failed to write ALS model snapshot", e);
+        } finally {
+            training.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private InteractionMatrix loadInteractions() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        return readOnly.execute(status -> {
+            InteractionMatrix.Builder builder = InteractionMatrix.builder();
+            try (Stream<Object[]> borrows = lendingRepository.streamUserBookPairs()) {
+                borrows.forEach(row -> builder.addBorrow((Long) row[0], (Long) row[1]));
+            }
+            try (Stream<Object[]> ratings = reviewRepository.streamApprovedRatings()) {
+                ratings.forEach(row -> builder.addRating((Long) row[0], (Long) row[1],
+                    (((Integer) row[2]) - 3) * ratingWeight));
+            }
+            return builder.build();
+        });
+    }
+
+    // Null when there are no lendings
+    private AlsModel.LendingFingerprint currentHistory() {
+        Long maxId = lendingRepository.findMaxId();
+        return maxId == null ? null : fingerprint(maxId);
+    }
+
+    private AlsModel.LendingFingerprint fingerprint(long throughId) {
+        Object[] totals = lendingRepository.summarizeThrough(throughId).get(0);
+        return new AlsModel.LendingFingerprint(throughId, ((Number) totals[0]).longValue(),
+            ((Number) totals[1]).longValue(), ((Number) totals[2]).longValue());
+    }
+
+    private AlsModel readSnapshot(Path file) {
+        try {
+            return AlsModel.readFrom(file);
+        } catch (IOException e) {
+            log.warn("Could not load ALS model snapshot: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+
+    private void writeSnapshot(AlsModel model) throws IOException {
+        Path dir = Paths.get(modelDir);
+        Files.createDirectories(dir);
+        Path target = dir.resolve(String.format("%s%08d%s", SNAPSHOT_PREFIX, model.getVersion(), SNAPSHOT_SUFFIX));
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+        model.writeTo(temp);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<Path> snapshots = listSnapshots();
+        for (int i = 0; i < snapshots.size() - snapshotsToKeep; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    // Snapshot names are zero-padded, so lexical order is version order
+    private List<Path> listSnapshots() throws IOException {
+        Path dir = Paths.get(modelDir);
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                .filter(path -> {
+                    String name = path.getFileName().toString();
+                    return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+                })
+                .sorted()
+                .toList();
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.library.service.recommendation;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Hierarchical navigable small world graph (Malkov & Yashunin) over cosine distance on
+// unit vectors. Deletes are tombstones: the node keeps routing searches but is never
+// returned, and the owner rebuilds once too many tombstones pile up.
+public class HnswIndex {
+
+    private final int m;
+    private final int maxLevel0Links;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final OffHeapVectorStore vectors;
+    private final Random random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // links[node][level] = {count, neighbour...}
+    private int[][][] links = new int[16][][];
+    private long[] keys = new long[16];
+    private final BitSet deleted = new BitSet();
+    private final Map<Long, Integer> nodeByKey = new HashMap<>();
+    private int entryPoint = -1;
+    private int topLevel = -1;
+
+    public HnswIndex(int dimension, int m, int efConstruction, long seed) {
+        this.m = m;
+        this.maxLevel0Links = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.vectors = new OffHeapVectorStore(dimension, 1024);
+        this.random = new Random(seed);
+    }
+
+    public record Match(long key, float similarity) {}
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int nodeCount() {
+        lock.readLock().lock();
+        try {
+            return vectors.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] liveKeys() {
+        lock.readLock().lock();
+        try {
+            return nodeByKey.keySet().stream().mapToLong(Long::longValue).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(long key) {
+        lock.readLock().lock();
+        try {
+            return nodeByKey.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<float[]> vectorOf(long key) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeByKey.get(key);
+            return node == null ? Optional.empty() : Optional.of(vectors.get(node));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Inserting an existing key replaces it, which is how updates are applied
+    public void add(long key, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(key);
+            int node = vectors.add(vector);
+            ensureCapacity(node + 1);
+            keys[node] = key;
+            nodeByKey.put(key, node);
+
+            int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+            links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                links[node][l] = new int[1 + (l == 0 ? maxLevel0Links : m)];
+            }
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                topLevel = level;
+                return;
+            }
+
+            int current = entryPoint;
+            for (int l = topLevel; l > level; l--) {
+                current = greedyClosest(vector, current, l);
+            }
+            for (int l = Math.min(level, topLevel); l >= 0; l--) {
+                PriorityQueue<Candidate> found = searchLayer(vector, current, efConstruction, l);
+                List<Candidate> selected = selectNeighbours(found, m);
+                for (Candidate neighbour : selected) {
+                    link(node, neighbour.node, l);
+                    link(neighbour.node, node, l);
+                }
+                current = closest(found).node;
+            }
+
+            if (level > topLevel) {
+                topLevel = level;
+                entryPoint = node;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(long key) {
+        lock.writeLock().lock();
+        try {
+            return removeInternal(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Match> search(float[] query, int k, int ef, long excludedKey) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return List.of();
+            }
+            int current = entryPoint;
+            for (int l = topLevel; l > 0; l--) {
+                current = greedyClosest(query, current, l);
+            }
+            PriorityQueue<Candidate> found = searchLayer(query, current, Math.max(ef, k + 1), 0);
+
+            List<Candidate> ordered = new ArrayList<>(found);
+            ordered.sort(Comparator.comparingDouble(c -> c.distance));
+            List<Match> matches = new ArrayList<>(k);
+            for (Candidate candidate : ordered) {
+                if (deleted.get(candidate.node) || keys[candidate.node] == excludedKey) {
+                    continue;
+                }
+                matches.add(new Match(keys[candidate.node], 1f - candidate.distance));
+                if (matches.size() == k) {
+                    break;
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Exact scan over the same vectors, used as ground truth by the benchmark
+    public List<Match> bruteForce(float[] query, int k, long excludedKey) {
+        lock.readLock().lock();
+        try {
+            PriorityQueue<Candidate> best = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+            for (int node = 0; node < vectors.size(); node++) {
+                if (deleted.get(node) || keys[node] == excludedKey) {
+                    continue;
+                }
+                best.add(new Candidate(node, distance(query, node)));
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+            List<Candidate> ordered = new ArrayList<>(best);
+            ordered.sort(Comparator.comparingDouble(c -> c.distance));
+            List<Match> matches = new ArrayList<>(ordered.size());
+            for (Candidate candidate : ordered) {
+                matches.add(new Match(keys[candidate.node], 1f - candidate.distance));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean removeInternal(long key) {
+        Integer node = nodeByKey.remove(key);
+        if (node == null) {
+            return false;
+        }
+        deleted.set(node);
+        return true;
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = neighbours(current, level);
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float d = distance(query, neighbours[i]);
+                if (d < currentDistance) {
+                    current = neighbours[i];
+                    currentDistance = d;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Returns a max-heap (worst first) of the ef closest nodes reachable from start on this level
+    private PriorityQueue<Candidate> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(vectors.size());
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator.comparingDouble(c -> c.distance));
+        PriorityQueue<Candidate> found = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+
+        Candidate first = new Candidate(start, distance(query, start));
+        visited.set(start);
+        frontier.add(first);
+        found.add(first);
+
+        while (!frontier.isEmpty()) {
+            Candidate nearest = frontier.poll();
+            if (nearest.distance > found.peek().distance && found.size() >= ef) {
+                break;
+            }
+            int[] neighbours = neighbours(nearest.node, level);
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int next = neighbours[i];
+                if (visited.get(next)) {
+                    continue;
+                }
+                visited.set(next);
+                float d = distance(query, next);
+                if (found.size() < ef || d < found.peek().distance) {
+                    Candidate candidate = new Candidate(next, d);
+                    frontier.add(candidate);
+                    found.add(candidate);
+                    if (found.size() > ef) {
+                        found.poll();
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // Neighbour-selection heuristic: skip a candidate that is closer to an already chosen
+    // neighbour than to the base node, which keeps links spread across clusters
+    private List<Candidate> selectNeighbours(PriorityQueue<Candidate> found, int limit) {
+        List<Candidate> ordered = new ArrayList<>(found);
+        ordered.sort(Comparator.comparingDouble(c -> c.distance));
+        List<Candidate> selected = new ArrayList<>(limit);
+        for (Candidate candidate : ordered) {
+            if (selected.size() >= limit) {
+                break;
+            }
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (1f - vectors.dot(candidate.node, chosen.node) < candidate.distance) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            }
+        }
+        // Top up with the nearest leftovers so sparse regions still get enough links
+        for (Candidate candidate : ordered) {
+            if (selected.size() >= limit) {
+                break;
+            }
+            if (!selected.contains(candidate)) {
+                selected.add(candidate);
+            }
+        }
+        return selected;
+    }
+
+    private void link(int from, int to, int level) {
+        int[] neighbours = links[from][level];
+        int capacity = neighbours.length - 1;
+        if (neighbours[0] < capacity) {
+            neighbours[++neighbours[0]] = to;
+            return;
+        }
+
+        // Full: re-select the best "capacity" links out of the existing ones plus the new node
+        PriorityQueue<Candidate> pool = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+        for (int i = 1; i <= neighbours[0]; i++) {
+            pool.add(new Candidate(neighbours[i], 1f - vectors.dot(from, neighbours[i])));
+        }
+        pool.add(new Candidate(to, 1f - vectors.dot(from, to)));
+        List<Candidate> kept = selectNeighbours(pool, capacity);
+        neighbours[0] = kept.size();
+        for (int i = 0; i < kept.size(); i++) {
+            neighbours[i + 1] = kept.get(i).node;
+        }
+    }
+
+    private int[] neighbours(int node, int level) {
+        int[][] nodeLinks = links[node];
+        return level < nodeLinks.length ? nodeLinks[level] : EMPTY;
+    }
+
+    private float distance(float[] query, int node) {
+        return 1f - vectors.dot(node, query);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > links.length) {
+            int newLength = Math.max(required, links.length * 2);
+            links = Arrays.copyOf(links, newLength);
+            keys = Arrays.copyOf(keys, newLength);
+        }
+    }
+
+    private static Candidate closest(PriorityQueue<Candidate> found) {
+        Candidate best = null;
+        for (Candidate candidate : found) {
+            if (best == null || candidate.distance < best.distance) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static final int[] EMPTY = {0};
+
+    private record Candidate(int node, float distance) {}
+}
@@ -0,0 +1,184 @@
+package com.library.service.recommendation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Sparse user x book preference matrix stored twice in CSR form (by user and by book)
+// so that both ALS half-steps can walk their rows without any boxing.
+public class InteractionMatrix {
+
+    private final long[] userIds;
+    private final long[] bookIds;
+
+    private final int[] userOffsets;
+    private final int[] userItems;
+    private final float[] userValues;
+
+    private final int[] bookOffsets;
+    private final int[] bookUsers;
+    private final float[] bookValues;
+
+    private InteractionMatrix(long[] userIds, long[] bookIds,
+                              int[] userOffsets, int[] userItems, float[] userValues) {
+        this.userIds = userIds;
+        this.bookIds = bookIds;
+        this.userOffsets = userOffsets;
+        this.userItems = userItems;
+        this.userValues = userValues;
+
+        // Transpose with a counting sort on the book index
+        int nnz = userItems.length;
+        bookOffsets = new int[bookIds.length + 1];
+        for (int i = 0; i < nnz; i++) {
+            bookOffsets[userItems[i] + 1]++;
+        }
+        for (int b = 0; b < bookIds.length; b++) {
+            bookOffsets[b + 1] += bookOffsets[b];
+        }
+        bookUsers = new int[nnz];
+        bookValues = new float[nnz];
+        int[] cursor = Arrays.copyOf(bookOffsets, bookIds.length);
+        for (int u = 0; u < userIds.length; u++) {
+            for (int p = userOffsets[u]; p < userOffsets[u + 1]; p++) {
+                int slot = cursor[userItems[p]]++;
+                bookUsers[slot] = u;
+                bookValues[slot] = userValues[p];
+            }
+        }
+    }
+
+    public int userCount() { return userIds.length; }
+    public int bookCount() { return bookIds.length; }
+    public int nonZeroCount() { return userItems.length; }
+
+    public long[] getUserIds() { return userIds; }
+    public long[] getBookIds() { return bookIds; }
+
+    int[] userOffsets() { return userOffsets; }
+    int[] userItems() { return userItems; }
+    float[] userValues() { return userValues; }
+
+    int[] bookOffsets() { return bookOffsets; }
+    int[] bookUsers() { return bookUsers; }
+    float[] bookValues() { return bookValues; }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private final Map<Long, Integer> userIndex = new HashMap<>();
+        private final Map<Long, Integer> bookIndex = new HashMap<>();
+        private long[] userIdList = new long[1024];
+        private long[] bookIdList = new long[1024];
+
+        // One packed (user << 32 | book) key per borrow; duplicates are counted after sorting
+        private long[] borrowKeys = new long[1 << 16];
+        private int borrowCount;
+
+        // Explicit feedback is much sparser than borrows, so a map keyed the same way is fine
+        private final Map<Long, Float> ratingAdjustments = new HashMap<>();
+
+        public Builder addBorrow(long userId, long bookId) {
+            long key = key(indexUser(userId), indexBook(bookId));
+            if (borrowCount == borrowKeys.length) {
+                borrowKeys = Arrays.copyOf(borrowKeys, borrowCount * 2);
+            }
+            borrowKeys[borrowCount++] = key;
+            return this;
+        }
+
+        public Builder addRating(long userId, long bookId, float adjustment) {
+            long key = key(indexUser(userId), indexBook(bookId));
+            ratingAdjustments.merge(key, adjustment, Float::sum);
+            return this;
+        }
+
+        public InteractionMatrix build() {
+            long[] keys = Arrays.copyOf(borrowKeys, borrowCount);
+            Arrays.parallelSort(keys);
+
+            int nUsers = userIndex.size();
+            int nBooks = bookIndex.size();
+            int[] offsets = new int[nUsers + 1];
+            int[] items = new int[keys.length + ratingAdjustments.size()];
+            float[] values = new float[items.length];
+            int nnz = 0;
+
+            long[] ratingKeys = ratingAdjustments.keySet().stream().mapToLong(Long::longValue).toArray();
+            Arrays.parallelSort(ratingKeys);
+
+            // Merge the sorted borrow runs with the sorted rating keys so rows come out ordered by user
+            int i = 0;
+            int r = 0;
+            while (i < keys.length || r < ratingKeys.length) {
+                long next;
+                if (r >= ratingKeys.length || (i < keys.length && keys[i] <= ratingKeys[r])) {
+                    next = keys[i];
+                } else {
+                    next = ratingKeys[r];
+                }
+
+                float value = 0f;
+                while (i < keys.length && keys[i] == next) {
+                    value += 1f;
+                    i++;
+                }
+                if (r < ratingKeys.length && ratingKeys[r] == next) {
+                    value += ratingAdjustments.get(next);
+                    r++;
+                }
+
+                if (value > 0f) {
+                    int user = (int) (next >>> 32);
+                    offsets[user + 1]++;
+                    items[nnz] = (int) next;
+                    values[nnz] = value;
+                    nnz++;
+                }
+            }
+
+            for (int u = 0; u < nUsers; u++) {
+                offsets[u + 1] += offsets[u];
+            }
+
+            return new InteractionMatrix(
+                Arrays.copyOf(userIdList, nUsers),
+                Arrays.copyOf(bookIdList, nBooks),
+                offsets,
+                Arrays.copyOf(items, nnz),
+                Arrays.copyOf(values, nnz));
+        }
+
+        private int indexUser(long userId) {
+            Integer index = userIndex.get(userId);
+            if (index == null) {
+                index = userIndex.size();
+                userIndex.put(userId, index);
+                if (index == userIdList.length) {
+                    userIdList = Arrays.copyOf(userIdList, index * 2);
+                }
+                userIdList[index] = userId;
+            }
+            return index;
+        }
+
+        private int indexBook(long bookId) {
+            Integer index = bookIndex.get(bookId);
+            if (index == null) {
+                index = bookIndex.size();
+                bookIndex.put(bookId, index);
+                if (index == bookIdList.length) {
+                    bookIdList = Arrays.copyOf(bookIdList, index * 2);
+                }
+                bookIdList[index] = bookId;
+            }
+            return index;
+        }
+
+        private static long key(int user, int book) {
+            return ((long) user << 32) | (book & 0xffffffffL);
+        }
+    }
+}
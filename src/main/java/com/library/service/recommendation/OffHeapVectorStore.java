@@ -0,0 +1,89 @@
+package com.library.service.recommendation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+// Fixed-dimension float rows in a direct buffer, so the catalog's vectors stay out of the
+// Java heap and out of GC scans. Rows are append-only; callers recycle storage by rebuilding.
+public class OffHeapVectorStore {
+
+    private final int dimension;
+    private final ThreadLocal<float[]> scratch;
+    private FloatBuffer data;
+    private int capacity;
+    private int size;
+
+    public OffHeapVectorStore(int dimension, int initialCapacity) {
+        this.dimension = dimension;
+        this.scratch = ThreadLocal.withInitial(() -> new float[dimension * 2]);
+        this.capacity = Math.max(16, initialCapacity);
+        this.data = allocate(capacity);
+    }
+
+    public int getDimension() { return dimension; }
+    public int size() { return size; }
+
+    public int add(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected " + dimension + " dimensions, got " + vector.length);
+        }
+        if (size == capacity) {
+            grow();
+        }
+        int row = size++;
+        data.put(row * dimension, vector);
+        return row;
+    }
+
+    public float[] get(int row) {
+        float[] vector = new float[dimension];
+        data.get(row * dimension, vector);
+        return vector;
+    }
+
+    // Rows are bulk-copied into a per-thread scratch array first; element-wise buffer reads
+    // are bounds-checked one by one and defeat loop vectorisation
+    public float dot(int row, float[] query) {
+        float[] buffer = scratch.get();
+        data.get(row * dimension, buffer, 0, dimension);
+        return dot(buffer, 0, query, 0);
+    }
+
+    public float dot(int rowA, int rowB) {
+        float[] buffer = scratch.get();
+        data.get(rowA * dimension, buffer, 0, dimension);
+        data.get(rowB * dimension, buffer, dimension, dimension);
+        return dot(buffer, 0, buffer, dimension);
+    }
+
+    // Four independent accumulators so the adds are not serialised on one dependency chain
+    private float dot(float[] a, int offsetA, float[] b, int offsetB) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < dimension; i += 4) {
+            s0 += a[offsetA + i] * b[offsetB + i];
+            s1 += a[offsetA + i + 1] * b[offsetB + i + 1];
+            s2 += a[offsetA + i + 2] * b[offsetB + i + 2];
+            s3 += a[offsetA + i + 3] * b[offsetB + i + 3];
+        }
+        for (; i < dimension; i++) {
+            s0 += a[offsetA + i] * b[offsetB + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private void grow() {
+        int newCapacity = capacity * 2;
+        FloatBuffer grown = allocate(newCapacity);
+        grown.put(0, data, 0, size * dimension);
+        data = grown;
+        capacity = newCapacity;
+    }
+
+    private FloatBuffer allocate(int rows) {
+        return ByteBuffer.allocateDirect(rows * dimension * Float.BYTES)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    }
+}
@@ -0,0 +1,171 @@
+package com.library.service.recommendation;
+
+import com.library.event.BookEvent;
+import com.library.model.Book;
+import com.library.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class SimilarBooksIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarBooksIndexService.class);
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${recommendation.similar.dimension:256}")
+    private int dimension;
+
+    @Value("${recommendation.similar.m:16}")
+    private int m;
+
+    @Value("${recommendation.similar.ef-construction:100}")
+    private int efConstruction;
+
+    @Value("${recommendation.similar.ef-search:64}")
+    private int efSearch;
+
+    // Rebuild once this fraction of graph nodes are tombstones from deletes and updates
+    @Value("${recommendation.similar.max-deleted-ratio:0.25}")
+    private double maxDeletedRatio;
+
+    private TextVectorizer vectorizer;
+    private volatile HnswIndex index;
+
+    public boolean isReady() {
+        return index != null;
+    }
+
+    public List<Long> findSimilar(Long bookId, int k) {
+        HnswIndex current = index;
+        if (current == null) {
+            return List.of();
+        }
+        return current.vectorOf(bookId)
+            .map(vector -> current.search(vector, k, efSearch, bookId).stream()
+                .map(HnswIndex.Match::key)
+                .collect(Collectors.toList()))
+            .orElse(List.of());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void buildIndex() {
+        vectorizer = new TextVectorizer(dimension);
+        HnswIndex built = newIndex();
+
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> {
+            try (Stream<Object[]> rows = bookRepository.streamTextFields()) {
+                rows.forEach(row -> built.add((Long) row[0],
+                    vectorizer.vectorize((String) row[1], (String) row[2], (String) row[3])));
+            }
+        });
+
+        index = built;
+        log.info("Built similar-books index over {} books", built.size());
+    }
+
+    @EventListener
+    public synchronized void onBookEvent(BookEvent event) {
+        HnswIndex current = index;
+        if (current == null) {
+            return;
+        }
+        if (event.getType() == BookEvent.Type.DELETED) {
+            current.remove(event.getBookId());
+        } else {
+            Book book = event.getBook();
+            current.add(book.getId(), vectorizer.vectorize(book.getTitle(), book.getGenre(), book.getSummary()));
+        }
+
+        if (current.deletedCount() > current.nodeCount() * maxDeletedRatio) {
+            compact(current);
+        }
+    }
+
+    // Recall@k and per-query latency of the graph search against an exact scan of the same vectors
+    public Map<String, Object> benchmark(int queries, int k) {
+        HnswIndex current = index;
+        Map<String, Object> report = new LinkedHashMap<>();
+        if (current == null || current.size() == 0) {
+            report.put("error", "Index is empty");
+            return report;
+        }
+
+        long[] keys = current.liveKeys();
+        if (keys.length == 0 || queries < 1 || k < 1) {
+            report.put("error", keys.length == 0 ? "Index is empty" : "queries and k must be at least 1");
+            return report;
+        }
+        Random random = new Random(42);
+        int sampleSize = Math.min(queries, keys.length);
+        long[] annNanos = new long[sampleSize];
+        long[] exactNanos = new long[sampleSize];
+        double recallSum = 0.0;
+
+        for (int q = 0; q < sampleSize; q++) {
+            long key = keys[random.nextInt(keys.length)];
+            float[] vector = current.vectorOf(key).orElseThrow();
+
+            long started = System.nanoTime();
+            List<HnswIndex.Match> approximate = current.search(vector, k, efSearch, key);
+            annNanos[q] = System.nanoTime() - started;
+
+            started = System.nanoTime();
+            List<HnswIndex.Match> exact = current.bruteForce(vector, k, key);
+            exactNanos[q] = System.nanoTime() - started;
+
+            Set<Long> truth = exact.stream().map(HnswIndex.Match::key).collect(Collectors.toSet());
+            long hits = approximate.stream().filter(match -> truth.contains(match.key())).count();
+            recallSum += truth.isEmpty() ? 1.0 : (double) hits / truth.size();
+        }
+
+        report.put("indexedBooks", current.size());
+        report.put("queries", sampleSize);
+        report.put("k", k);
+        report.put("efSearch", efSearch);
+        report.put("recallAtK", recallSum / sampleSize);
+        report.put("hnswLatencyMicros", percentiles(annNanos));
+        report.put("bruteForceLatencyMicros", percentiles(exactNanos));
+        return report;
+    }
+
+    private void compact(HnswIndex current) {
+        HnswIndex compacted = newIndex();
+        for (long key : current.liveKeys()) {
+            current.vectorOf(key).ifPresent(vector -> compacted.add(key, vector));
+        }
+        index = compacted;
+        log.info("Compacted similar-books index to {} books", compacted.size());
+    }
+
+    private HnswIndex newIndex() {
+        return new HnswIndex(dimension, m, efConstruction, 42);
+    }
+
+    private static Map<String, Double> percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        Map<String, Double> result = new LinkedHashMap<>();
+        result.put("p50", sorted[(int) (sorted.length * 0.50)] / 1000.0);
+        result.put("p90", sorted[(int) (sorted.length * 0.90)] / 1000.0);
+        result.put("p99", sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1000.0);
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+package com.library.service.recommendation;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Feature-hashed bag of word unigrams and bigrams with sublinear tf and per-field weights.
+// Needs no vocabulary, so a new title can be vectorised the moment it is saved.
+public class TextVectorizer {
+
+    private static final float GENRE_WEIGHT = 3.0f;
+    private static final float TITLE_WEIGHT = 2.0f;
+    private static final float SUMMARY_WEIGHT = 1.0f;
+
+    private final int dimension;
+
+    public TextVectorizer(int dimension) {
+        if (Integer.bitCount(dimension) != 1) {
+            throw new IllegalArgumentException("dimension must be a power of two");
+        }
+        this.dimension = dimension;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public float[] vectorize(String title, String genre, String summary) {
+        Map<String, Float> features = new HashMap<>();
+        if (genre != null && !genre.isBlank()) {
+            features.merge("g:" + genre.trim().toLowerCase(Locale.ROOT), GENRE_WEIGHT, Float::sum);
+        }
+        addTokens(features, title, "t:", TITLE_WEIGHT);
+        addTokens(features, summary, "s:", SUMMARY_WEIGHT);
+
+        float[] vector = new float[dimension];
+        for (Map.Entry<String, Float> feature : features.entrySet()) {
+            int hash = mix(feature.getKey().hashCode());
+            int slot = hash & (dimension - 1);
+            float sign = (hash & 0x80000000) == 0 ? 1f : -1f;
+            // Sublinear term frequency keeps long summaries from drowning out title and genre
+            vector[slot] += sign * (float) (1.0 + Math.log(feature.getValue()));
+        }
+        normalize(vector);
+        return vector;
+    }
+
+    private void addTokens(Map<String, Float> features, String text, String prefix, float weight) {
+        if (text == null || text.isBlank()) {
+            return;
+        }
+        String previous = null;
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() < 2) {
+                continue;
+            }
+            features.merge(prefix + token, weight, Float::sum);
+            if (previous != null) {
+                features.merge(prefix + previous + '_' + token, weight, Float::sum);
+            }
+            previous = token;
+        }
+    }
+
+    private static void normalize(float[] vector) {
+        double norm = 0.0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0.0) {
+            return;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+    }
+
+    // murmur3 finaliser so String.hashCode's weak low bits spread over the whole table
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
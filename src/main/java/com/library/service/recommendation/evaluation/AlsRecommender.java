@@ -0,0 +1,41 @@
+package com.library.service.recommendation.evaluation;
+
+import com.library.service.recommendation.AlsModel;
+import com.library.service.recommendation.AlsTrainer;
+import com.library.service.recommendation.InteractionMatrix;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+// Adapter that trains the production ALS code on the replayed prefix
+public class AlsRecommender implements Recommender {
+
+    private final AlsTrainer trainer;
+    private final ForkJoinPool pool;
+    private AlsModel model;
+
+    public AlsRecommender(AlsTrainer trainer, ForkJoinPool pool) {
+        this.trainer = trainer;
+        this.pool = pool;
+    }
+
+    @Override
+    public String getName() {
+        return "als";
+    }
+
+    @Override
+    public void fit(LendingHistory train) {
+        InteractionMatrix.Builder builder = InteractionMatrix.builder();
+        for (int row = 0; row < train.size(); row++) {
+            builder.addBorrow(train.userId(row), train.bookId(row));
+        }
+        model = trainer.train(builder.build(), pool, 1);
+    }
+
+    @Override
+    public List<Long> recommend(long userId, int k, Set<Long> excludedBookIds) {
+        return model == null ? List.of() : model.recommend(userId, k, excludedBookIds);
+    }
+}
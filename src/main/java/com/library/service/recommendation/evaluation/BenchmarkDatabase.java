@@ -0,0 +1,76 @@
+package com.library.service.recommendation.evaluation;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+// Makes the benchmark database hold exactly a replayed history, so the production services read the
+// training prefix and nothing after it. Members and books the history mentions are created with the same
+// ids when missing; every existing lending is deleted first, so this must only ever point at a
+// disposable database.
+class BenchmarkDatabase {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transaction;
+
+    BenchmarkDatabase(JdbcTemplate jdbc, PlatformTransactionManager transactionManager) {
+        this.jdbc = jdbc;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    void replaceLendings(LendingHistory history) {
+        transaction.executeWithoutResult(status -> {
+            insertMissingUsers(history);
+            insertMissingBooks(history);
+            jdbc.update("DELETE FROM book_lendings");
+            List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+            for (int row = 0; row < history.size(); row++) {
+                LocalDateTime borrowed = LocalDateTime.ofInstant(Instant.ofEpochSecond(history.borrowedAt(row)), ZoneOffset.UTC);
+                // Every replayed lending is closed: only who borrowed what and when matters to the recommenders
+                rows.add(new Object[] {history.bookId(row), history.userId(row), Timestamp.valueOf(borrowed),
+                    Timestamp.valueOf(borrowed.plusDays(14)), Timestamp.valueOf(borrowed.plusDays(7)), "RETURNED"});
+                if (rows.size() == BATCH_SIZE) {
+                    insertLendings(rows);
+                }
+            }
+            insertLendings(rows);
+        });
+    }
+
+    private void insertLendings(List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbc.batchUpdate("INSERT INTO book_lendings (book_id, user_id, borrow_date, due_date, return_date, status) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", rows);
+            rows.clear();
+        }
+    }
+
+    private void insertMissingUsers(LendingHistory history) {
+        Set<Long> missing = new TreeSet<>();
+        for (int row = 0; row < history.size(); row++) {
+            missing.add(history.userId(row));
+        }
+        missing.removeAll(jdbc.queryForList("SELECT id FROM users", Long.class));
+        List<Object[]> rows = missing.stream()
+            .map(id -> new Object[] {id, "bench-member-" + id, "bench-member-" + id + "@example.invalid", "-"})
+            .toList();
+        jdbc.batchUpdate("INSERT INTO users (id, username, email, password, enabled) VALUES (?, ?, ?, ?, true)", rows);
+    }
+
+    private void insertMissingBooks(LendingHistory history) {
+        Map<Long, String> missing = new TreeMap<>(history.getGenreByBook());
+        jdbc.queryForList("SELECT id FROM books", Long.class).forEach(missing::remove);
+        List<Object[]> rows = missing.entrySet().stream()
+            .map(book -> new Object[] {book.getKey(), "Benchmark book " + book.getKey(), "BENCH-" + book.getKey(), book.getValue()})
+            .toList();
+        jdbc.batchUpdate("INSERT INTO books (id, title, isbn, genre, total_copies, available_copies) VALUES (?, ?, ?, ?, 1, 1)", rows);
+    }
+}
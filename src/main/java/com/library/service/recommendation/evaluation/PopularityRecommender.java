@@ -0,0 +1,39 @@
+package com.library.service.recommendation.evaluation;
+
+import java.util.*;
+
+// Non-personalised baseline: the most borrowed books overall
+public class PopularityRecommender implements Recommender {
+
+    private List<Long> ranked = List.of();
+
+    @Override
+    public String getName() {
+        return "popularity";
+    }
+
+    @Override
+    public void fit(LendingHistory train) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (int row = 0; row < train.size(); row++) {
+            counts.merge(train.bookId(row), 1, Integer::sum);
+        }
+        List<Long> books = new ArrayList<>(counts.keySet());
+        books.sort(Comparator.comparing((Long book) -> counts.get(book)).reversed().thenComparing(book -> book));
+        ranked = books;
+    }
+
+    @Override
+    public List<Long> recommend(long userId, int k, Set<Long> excludedBookIds) {
+        List<Long> result = new ArrayList<>(k);
+        for (Long book : ranked) {
+            if (!excludedBookIds.contains(book)) {
+                result.add(book);
+                if (result.size() == k) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,217 @@
+package com.library.service.recommendation.evaluation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.library.repository.BookLendingRepository;
+import com.library.repository.BookRepository;
+import com.library.repository.UserRepository;
+import com.library.service.RecommendationService;
+import com.library.service.recommendation.AlsTrainer;
+import com.library.service.recommendation.CollaborativeFilteringService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+// Headless entry point:
+//   java -jar app.jar --spring.profiles.active=recommendation-benchmark --recommendation.benchmark.lendings=1000000
+// Writes the replay report as JSON to the report file and fails startup (non-zero exit) when the gated
+// recommender misses its thresholds. The profile runs on its own in-memory database with scheduling off,
+// and the context is closed once the report is written, so no startup loader runs.
+@Component
+@Profile("recommendation-benchmark")
+public class RecommendationBenchmarkRunner implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(RecommendationBenchmarkRunner.class);
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private BookLendingRepository lendingRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RecommendationService recommendationService;
+
+    @Autowired
+    private CollaborativeFilteringService collaborativeFilteringService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // "synthetic" or "database"
+    @Value("${recommendation.benchmark.source:synthetic}")
+    private String source;
+
+    @Value("${recommendation.benchmark.users:10000}")
+    private int users;
+
+    @Value("${recommendation.benchmark.books:5000}")
+    private int books;
+
+    @Value("${recommendation.benchmark.genres:25}")
+    private int genres;
+
+    @Value("${recommendation.benchmark.lendings:200000}")
+    private int lendings;
+
+    @Value("${recommendation.benchmark.days:365}")
+    private int days;
+
+    @Value("${recommendation.benchmark.seed:42}")
+    private long seed;
+
+    @Value("${recommendation.benchmark.train-fraction:0.8}")
+    private double trainFraction;
+
+    @Value("${recommendation.benchmark.k:10}")
+    private int k;
+
+    @Value("${recommendation.benchmark.max-users:5000}")
+    private int maxUsers;
+
+    // The "service" recommender rewrites the lending table; only enabled for a disposable database
+    @Value("${recommendation.benchmark.allow-writes:false}")
+    private boolean allowWrites;
+
+    @Value("${recommendation.benchmark.report-file:recommendation-benchmark.json}")
+    private String reportFile;
+
+    @Value("${recommendation.benchmark.gate:service}")
+    private String gatedRecommender;
+
+    @Value("${recommendation.benchmark.min-precision:0.0}")
+    private double minPrecision;
+
+    // 0 disables the latency gate
+    @Value("${recommendation.benchmark.max-p99-micros:0}")
+    private double maxP99Micros;
+
+    @Value("${recommendation.als.rank:32}")
+    private int rank;
+
+    @Value("${recommendation.als.iterations:10}")
+    private int iterations;
+
+    @Value("${recommendation.als.lambda:0.1}")
+    private double lambda;
+
+    @Value("${recommendation.als.alpha:40.0}")
+    private double alpha;
+
+    @Override
+    public void run(String... args) throws Exception {
+        LendingHistory history = "database".equalsIgnoreCase(source)
+            ? loadFromDatabase()
+            : LendingHistory.synthetic(users, books, genres, lendings, days, seed);
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        List<Recommender> recommenders = new ArrayList<>(List.of(
+            new PopularityRecommender(),
+            new AlsRecommender(new AlsTrainer(rank, iterations, lambda, alpha, seed), pool)));
+        if (allowWrites) {
+            recommenders.add(new RecommendationServiceRecommender(recommendationService, collaborativeFilteringService,
+                userRepository, new BenchmarkDatabase(jdbcTemplate, transactionManager), transactionManager));
+        } else {
+            log.warn("recommendation.benchmark.allow-writes is off, so RecommendationService is not replayed");
+        }
+
+        Map<String, Object> report;
+        try {
+            report = new RecommendationEvaluator(k, maxUsers).evaluate(history, trainFraction, recommenders);
+        } finally {
+            pool.shutdown();
+        }
+
+        List<String> failures = checkGates(report);
+        report.put("gateFailures", failures);
+        Path output = Path.of(reportFile);
+        Files.writeString(output, objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report));
+        log.info("Recommendation benchmark report written to {}", output.toAbsolutePath());
+
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Recommendation benchmark gate failed: " + String.join("; ", failures));
+        }
+        // Closing here keeps ApplicationReadyEvent (and every loader listening for it) from firing
+        SpringApplication.exit(context);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> checkGates(Map<String, Object> report) {
+        List<String> failures = new ArrayList<>();
+        Map<String, Object> results = (Map<String, Object>) ((Map<String, Object>) report.get("recommenders")).get(gatedRecommender);
+        if (results == null) {
+            failures.add("Unknown gated recommender: " + gatedRecommender);
+            return failures;
+        }
+        double precision = (Double) results.get("precisionAtK");
+        if (precision < minPrecision) {
+            failures.add(String.format("precision@%d %.4f below %.4f", k, precision, minPrecision));
+        }
+        Double p99 = ((Map<String, Double>) results.get("latencyMicros")).get("p99");
+        if (maxP99Micros > 0 && p99 != null && p99 > maxP99Micros) {
+            failures.add(String.format("p99 latency %.1fus above %.1fus", p99, maxP99Micros));
+        }
+        return failures;
+    }
+
+    private LendingHistory loadFromDatabase() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> {
+            Map<Long, String> genreByBook = new HashMap<>();
+            try (Stream<Object[]> catalog = bookRepository.streamCatalog()) {
+                catalog.forEach(row -> genreByBook.put((Long) row[0], (String) row[2]));
+            }
+
+            long[] userIds = new long[1024];
+            long[] bookIds = new long[1024];
+            long[] times = new long[1024];
+            int size = 0;
+            try (Stream<Object[]> facts = lendingRepository.streamBorrowFacts()) {
+                for (Iterator<Object[]> it = facts.iterator(); it.hasNext(); ) {
+                    Object[] row = it.next();
+                    if (size == userIds.length) {
+                        userIds = Arrays.copyOf(userIds, size * 2);
+                        bookIds = Arrays.copyOf(bookIds, size * 2);
+                        times = Arrays.copyOf(times, size * 2);
+                    }
+                    userIds[size] = (Long) row[0];
+                    bookIds[size] = (Long) row[1];
+                    times[size] = ((LocalDateTime) row[2]).toEpochSecond(ZoneOffset.UTC);
+                    size++;
+                }
+            }
+            return new LendingHistory(Arrays.copyOf(userIds, size), Arrays.copyOf(bookIds, size),
+                Arrays.copyOf(times, size), genreByBook);
+        });
+    }
+}
@@ -0,0 +1,112 @@
+package com.library.service.recommendation.evaluation;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+// Time-split replay: every recommender is fitted on the lendings before the cutoff and asked for
+// k books for each member who borrowed something after it. Quality and cost are reported together
+// so a change can be gated on both.
+public class RecommendationEvaluator {
+
+    private final int k;
+    private final int maxUsers;
+
+    public RecommendationEvaluator(int k, int maxUsers) {
+        this.k = k;
+        this.maxUsers = maxUsers;
+    }
+
+    public Map<String, Object> evaluate(LendingHistory history, double trainFraction, List<Recommender> recommenders) {
+        long cutoff = history.quantileTime(trainFraction);
+        LendingHistory[] split = history.splitAt(cutoff);
+        LendingHistory train = split[0];
+        LendingHistory test = split[1];
+
+        Map<Long, Set<Long>> seen = train.booksByUser();
+        Map<Long, Set<Long>> heldOut = test.booksByUser();
+        // Only members with history on both sides can be judged; cold starts are a separate problem
+        List<Long> users = heldOut.keySet().stream()
+            .filter(seen::containsKey)
+            .sorted()
+            .limit(maxUsers)
+            .toList();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("lendings", history.size());
+        report.put("trainLendings", train.size());
+        report.put("testLendings", test.size());
+        report.put("catalogSize", history.catalogSize());
+        report.put("evaluatedUsers", users.size());
+        report.put("k", k);
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (Recommender recommender : recommenders) {
+            results.put(recommender.getName(), evaluateOne(recommender, train, users, seen, heldOut, history.catalogSize()));
+        }
+        report.put("recommenders", results);
+        return report;
+    }
+
+    private Map<String, Object> evaluateOne(Recommender recommender, LendingHistory train, List<Long> users,
+                                            Map<Long, Set<Long>> seen, Map<Long, Set<Long>> heldOut, int catalogSize) {
+        long fitStarted = System.nanoTime();
+        recommender.fit(train);
+        long fitNanos = System.nanoTime() - fitStarted;
+
+        long[] latencies = new long[users.size()];
+        Set<Long> recommended = new HashSet<>();
+        double precisionSum = 0.0;
+        double recallSum = 0.0;
+
+        long allocatedBefore = allocatedBytes();
+        long replayStarted = System.nanoTime();
+        for (int i = 0; i < users.size(); i++) {
+            Long user = users.get(i);
+            long started = System.nanoTime();
+            List<Long> books = recommender.recommend(user, k, seen.get(user));
+            latencies[i] = System.nanoTime() - started;
+
+            Set<Long> truth = heldOut.get(user);
+            long hits = books.stream().filter(truth::contains).count();
+            precisionSum += (double) hits / k;
+            recallSum += (double) hits / truth.size();
+            recommended.addAll(books);
+        }
+        long replayNanos = System.nanoTime() - replayStarted;
+        long allocatedAfter = allocatedBytes();
+
+        int n = Math.max(users.size(), 1);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("fitMillis", fitNanos / 1_000_000);
+        result.put("precisionAtK", precisionSum / n);
+        result.put("recallAtK", recallSum / n);
+        result.put("coverage", catalogSize == 0 ? 0.0 : (double) recommended.size() / catalogSize);
+        result.put("latencyMicros", percentiles(latencies));
+        result.put("requestsPerSecond", replayNanos == 0 ? 0.0 : users.size() * 1e9 / replayNanos);
+        result.put("allocatedBytesPerRequest", allocatedBefore < 0 ? null : (allocatedAfter - allocatedBefore) / n);
+        return result;
+    }
+
+    // Bytes allocated by the calling thread, or -1 where the JVM does not expose it
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean && sunBean.isThreadAllocatedMemorySupported()) {
+            return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static Map<String, Double> percentiles(long[] nanos) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        if (nanos.length == 0) {
+            return result;
+        }
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        result.put("p50", sorted[(int) (sorted.length * 0.50)] / 1000.0);
+        result.put("p90", sorted[(int) (sorted.length * 0.90)] / 1000.0);
+        result.put("p99", sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1000.0);
+        result.put("max", sorted[sorted.length - 1] / 1000.0);
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package com.library.service.recommendation.evaluation;
+
+import com.library.model.Book;
+import com.library.repository.UserRepository;
+import com.library.service.RecommendationService;
+import com.library.service.recommendation.CollaborativeFilteringService;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Set;
+
+// Replays the production RecommendationService itself: the training prefix is written to the benchmark
+// database, the factor model is retrained from it the way the nightly job does, and every member is asked
+// through the same entry point as /api/recommendations/personalized (model first, genre fallback).
+// The service does its own exclusion of books the member has read, so what it returns is scored as is,
+// and it returns at most its own fixed number of books, whatever k is.
+class RecommendationServiceRecommender implements Recommender {
+
+    private final RecommendationService recommendationService;
+    private final CollaborativeFilteringService collaborativeFilteringService;
+    private final UserRepository userRepository;
+    private final BenchmarkDatabase database;
+    private final TransactionTemplate readOnly;
+
+    RecommendationServiceRecommender(RecommendationService recommendationService,
+                                     CollaborativeFilteringService collaborativeFilteringService,
+                                     UserRepository userRepository, BenchmarkDatabase database,
+                                     PlatformTransactionManager transactionManager) {
+        this.recommendationService = recommendationService;
+        this.collaborativeFilteringService = collaborativeFilteringService;
+        this.userRepository = userRepository;
+        this.database = database;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    @Override
+    public String getName() {
+        return "service";
+    }
+
+    @Override
+    public void fit(LendingHistory train) {
+        database.replaceLendings(train);
+        collaborativeFilteringService.retrain();
+    }
+
+    @Override
+    public List<Long> recommend(long userId, int k, Set<Long> excludedBookIds) {
+        return readOnly.execute(status -> userRepository.findById(userId)
+            .map(user -> recommendationService.getPersonalizedRecommendations(user).stream()
+                .map(Book::getId)
+                .limit(k)
+                .toList())
+            .orElse(List.of()));
+    }
+}
@@ -0,0 +1,14 @@
+package com.library.service.recommendation.evaluation;
+
+import java.util.List;
+import java.util.Set;
+
+// Anything the replay harness can train on a history prefix and then query per member
+public interface Recommender {
+
+    String getName();
+
+    void fit(LendingHistory train);
+
+    List<Long> recommend(long userId, int k, Set<Long> excludedBookIds);
+}
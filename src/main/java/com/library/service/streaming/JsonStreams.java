@@ -0,0 +1,190 @@
+package com.library.service.streaming;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Response bodies that serialize while the data is produced, with Jackson's generator writing straight to
+// the servlet output stream: one element (or one report section, or one row of a RowSource section) is in
+// memory at a time instead of the whole list. Uses the application's ObjectMapper, so dates and naming match
+// the non-streaming endpoints.
+@Component
+public class JsonStreams {
+
+    // Elements written between explicit flushes; the container flushes when its buffer fills anyway
+    private static final int FLUSH_EVERY = 500;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // A named block of a report; list sections are written element by element in NDJSON
+    public interface SectionSource {
+        void forEachSection(BiConsumer<String, Object> sink);
+    }
+
+    // A list section whose rows are built one at a time on the writing thread as they are written, instead
+    // of being held as a list; a source that reads a cursor opens its own transaction
+    public interface RowSource<T> {
+        void forEachRow(Consumer<? super T> sink);
+
+        default List<T> toList() {
+            List<T> rows = new ArrayList<>();
+            forEachRow(rows::add);
+            return rows;
+        }
+    }
+
+    // The cursor is opened on the writing thread inside a read-only transaction and closed when done
+    public <T> StreamingResponseBody cursorAsJsonArray(Supplier<Stream<T>> cursor) {
+        return out -> inReadOnlyTransaction(() -> {
+            try (Stream<T> rows = cursor.get(); JsonGenerator generator = generator(out)) {
+                ObjectWriter writer = writer();
+                generator.writeStartArray();
+                writeAll(rows, writer, generator);
+                generator.writeEndArray();
+            }
+        });
+    }
+
+    // Newline-delimited JSON: one element per line
+    public <T> StreamingResponseBody cursorAsNdjson(Supplier<Stream<T>> cursor) {
+        return out -> inReadOnlyTransaction(() -> {
+            try (Stream<T> rows = cursor.get(); JsonGenerator generator = generator(out)) {
+                ObjectWriter writer = ndjsonWriter();
+                writeAll(rows, writer, generator);
+                generator.writeRaw('\n');
+            }
+        });
+    }
+
+    // {"section": value, ...}; each section is serialized as soon as it is produced and then dropped
+    public StreamingResponseBody sectionsAsJsonObject(SectionSource source) {
+        return out -> {
+            try (JsonGenerator generator = generator(out)) {
+                ObjectWriter writer = writer();
+                generator.writeStartObject();
+                source.forEachSection((name, value) -> write(() -> {
+                    generator.writeFieldName(name);
+                    if (value instanceof RowSource<?> rows) {
+                        generator.writeStartArray();
+                        writeRows(rows, row -> writer.writeValue(generator, row), generator);
+                        generator.writeEndArray();
+                    } else {
+                        writer.writeValue(generator, value);
+                    }
+                    generator.flush();
+                }));
+                generator.writeEndObject();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    // One {"section": name, "data": element} line per element of a list section, one line for any other section
+    public StreamingResponseBody sectionsAsNdjson(SectionSource source) {
+        return out -> {
+            try (JsonGenerator generator = generator(out)) {
+                ObjectWriter writer = ndjsonWriter();
+                source.forEachSection((name, value) -> write(() -> {
+                    if (value instanceof Collection<?> elements) {
+                        for (Object element : elements) {
+                            writer.writeValue(generator, new SectionLine(name, element));
+                        }
+                    } else if (value instanceof RowSource<?> rows) {
+                        writeRows(rows, row -> writer.writeValue(generator, new SectionLine(name, row)), generator);
+                    } else {
+                        writer.writeValue(generator, new SectionLine(name, value));
+                    }
+                    generator.flush();
+                }));
+                generator.writeRaw('\n');
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    private record SectionLine(String section, Object data) {}
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private interface RowWriter {
+        void write(Object row) throws IOException;
+    }
+
+    private <T> void writeAll(Stream<T> rows, ObjectWriter writer, JsonGenerator generator) throws IOException {
+        int written = 0;
+        for (T row : (Iterable<T>) rows::iterator) {
+            writer.writeValue(generator, row);
+            if (++written % FLUSH_EVERY == 0) {
+                generator.flush();
+            }
+        }
+    }
+
+    private void writeRows(RowSource<?> rows, RowWriter rowWriter, JsonGenerator generator) {
+        int[] written = {0};
+        rows.forEachRow(row -> write(() -> {
+            rowWriter.write(row);
+            if (++written[0] % FLUSH_EVERY == 0) {
+                generator.flush();
+            }
+        }));
+    }
+
+    private void inReadOnlyTransaction(IoAction action) throws IOException {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        try {
+            readOnly.executeWithoutResult(status -> write(action));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void write(IoAction action) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The servlet container owns the output stream, so closing the generator must not close it
+    private JsonGenerator generator(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    private ObjectWriter writer() {
+        return objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    private ObjectWriter ndjsonWriter() {
+        return writer().withRootValueSeparator("\n");
+    }
+}
@@ -0,0 +1,162 @@
+package com.library.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.library.model.FailedNotification;
+import com.library.repository.FailedNotificationRepository;
+import com.library.service.notification.FlakyMailSender;
+import com.library.service.notification.MailDispatcher;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationServiceTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Mock
+    private FailedNotificationRepository failedNotificationRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Captor
+    private ArgumentCaptor<List<FailedNotification>> letters;
+
+    private FlakyMailSender mailSender;
+    private MailDispatcher dispatcher;
+    private NotificationService notificationService;
+
+    @BeforeEach
+    void setUp() {
+        mailSender = new FlakyMailSender(greenMail.getSmtp().getPort());
+        EmailService emailService = new EmailService();
+        ReflectionTestUtils.setField(emailService, "emailSender", mailSender);
+
+        dispatcher = new MailDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "mailSender", mailSender);
+        ReflectionTestUtils.setField(dispatcher, "failedNotificationRepository", failedNotificationRepository);
+        ReflectionTestUtils.setField(dispatcher, "concurrency", 2);
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 50);
+        ReflectionTestUtils.setField(dispatcher, "pageSize", 1000);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 2);
+        ReflectionTestUtils.setField(dispatcher, "initialBackoffMs", 1L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 10L);
+        ReflectionTestUtils.invokeMethod(dispatcher, "start");
+
+        notificationService = new NotificationService();
+        ReflectionTestUtils.setField(notificationService, "failedNotificationRepository", failedNotificationRepository);
+        ReflectionTestUtils.setField(notificationService, "emailService", emailService);
+        ReflectionTestUtils.setField(notificationService, "mailDispatcher", dispatcher);
+        ReflectionTestUtils.setField(notificationService, "transactionManager", transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(dispatcher, "stop");
+    }
+
+    @Test
+    void replaySendsStoredLettersAndKeepsTheOnesThatFailAgain() throws Exception {
+        FailedNotification delivered = letter(1L, 11L, "alice@library.test");
+        FailedNotification stillFailing = letter(2L, 12L, "bob@library.test");
+        mailSender.reject("bob@library.test", FlakyMailSender.ALWAYS);
+        when(failedNotificationRepository.findMaxId()).thenReturn(2L);
+        when(failedNotificationRepository.findPage(eq(0L), eq(2L), any())).thenReturn(List.of(delivered, stillFailing));
+        when(failedNotificationRepository.findPage(eq(2L), eq(2L), any())).thenReturn(List.of());
+        when(failedNotificationRepository.deleteUpTo(2L)).thenReturn(2);
+
+        Map<String, Object> result = notificationService.replayFailedNotifications();
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(1);
+        assertThat(received[0].getAllRecipients()[0].toString()).isEqualTo("alice@library.test");
+        assertThat(received[0].getSubject()).isEqualTo("Overdue notice 1");
+        assertThat(result).containsEntry("kind", "REPLAY")
+            .containsEntry("sent", 1L)
+            .containsEntry("deadLettered", 1L)
+            .containsEntry("replayed", 2);
+
+        // The new dead letter is stored before the replayed ones are removed, and only ids up to the
+        // maximum read at the start are removed, so it survives
+        InOrder inOrder = inOrder(failedNotificationRepository);
+        inOrder.verify(failedNotificationRepository).saveAll(letters.capture());
+        inOrder.verify(failedNotificationRepository).deleteUpTo(2L);
+        assertThat(letters.getValue()).singleElement().satisfies(letter -> {
+            assertThat(letter.getKind()).isEqualTo(NotificationService.DIGEST);
+            assertThat(letter.getReference()).isEqualTo(12L);
+            assertThat(letter.getRecipient()).isEqualTo("bob@library.test");
+            assertThat(letter.getSubject()).isEqualTo("Overdue notice 2");
+            assertThat(letter.getBody()).isEqualTo("Please return your book");
+        });
+    }
+
+    @Test
+    void replayKeepsTheTableWhenALetterThatFailedAgainCannotBeStored() {
+        FailedNotification stillFailing = letter(1L, 11L, "bob@library.test");
+        mailSender.reject("bob@library.test", FlakyMailSender.ALWAYS);
+        when(failedNotificationRepository.findMaxId()).thenReturn(1L);
+        when(failedNotificationRepository.findPage(eq(0L), eq(1L), any())).thenReturn(List.of(stillFailing));
+        when(failedNotificationRepository.findPage(eq(1L), eq(1L), any())).thenReturn(List.of());
+        when(failedNotificationRepository.saveAll(any())).thenThrow(new DataAccessResourceFailureException("Database is down"));
+
+        Map<String, Object> result = notificationService.replayFailedNotifications();
+
+        assertThat(result).containsEntry("deadLettered", 0L)
+            .containsEntry("unstored", 1L)
+            .containsEntry("replayed", 0);
+        verify(failedNotificationRepository, never()).deleteUpTo(anyLong());
+    }
+
+    @Test
+    void replayWithNothingStoredSendsNothing() {
+        when(failedNotificationRepository.findMaxId()).thenReturn(null);
+
+        Map<String, Object> result = notificationService.replayFailedNotifications();
+
+        assertThat(result).containsEntry("replayed", 0);
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+        verify(failedNotificationRepository, never()).findPage(anyLong(), anyLong(), any());
+        verify(failedNotificationRepository, never()).deleteUpTo(anyLong());
+    }
+
+    private static FailedNotification letter(Long id, Long reference, String recipient) {
+        FailedNotification letter = new FailedNotification();
+        letter.setId(id);
+        letter.setKind(NotificationService.DIGEST);
+        letter.setReference(reference);
+        letter.setRecipient(recipient);
+        letter.setSubject("Overdue notice " + id);
+        letter.setBody("Please return your book");
+        letter.setAttempts(4);
+        letter.setLastError("jakarta.mail.SendFailedException: 550 Mailbox unavailable");
+        letter.setFailedAt(LocalDateTime.now().minusDays(1));
+        return letter;
+    }
+}
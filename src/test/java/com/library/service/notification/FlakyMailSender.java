@@ -0,0 +1,74 @@
+package com.library.service.notification;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.*;
+
+// JavaMailSenderImpl against the embedded SMTP server that rejects messages to chosen recipients the way
+// per-message failures surface from a real server: the rest of the batch is delivered and a
+// MailSendException lists the rejected messages. It can also fail a send after delivering it, without
+// naming any message, the way a connection that breaks on close does.
+public class FlakyMailSender extends JavaMailSenderImpl {
+
+    public static final int ALWAYS = Integer.MAX_VALUE;
+
+    private final Map<String, Integer> failuresLeft = new HashMap<>();
+    private int unconfirmedLeft;
+
+    public FlakyMailSender(int port) {
+        setHost("localhost");
+        setPort(port);
+        getJavaMailProperties().setProperty("mail.smtp.from", "library@library.test");
+    }
+
+    // Messages to the recipient fail on their next "times" attempts
+    public synchronized void reject(String recipient, int times) {
+        failuresLeft.put(recipient, times);
+    }
+
+    // The next "times" sends are delivered but reported as failed
+    public synchronized void dropConfirmations(int times) {
+        unconfirmedLeft = times;
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) {
+        List<MimeMessage> delivered = new ArrayList<>();
+        List<Object> deliveredOriginals = new ArrayList<>();
+        Map<Object, Exception> failed = new LinkedHashMap<>();
+        boolean unconfirmed;
+        synchronized (this) {
+            unconfirmed = unconfirmedLeft > 0;
+            if (unconfirmed) {
+                unconfirmedLeft--;
+            }
+            for (int i = 0; i < mimeMessages.length; i++) {
+                Object original = originalMessages != null ? originalMessages[i] : mimeMessages[i];
+                String recipient = ((SimpleMailMessage) original).getTo()[0];
+                int left = failuresLeft.getOrDefault(recipient, 0);
+                if (left > 0) {
+                    failuresLeft.put(recipient, left == ALWAYS ? ALWAYS : left - 1);
+                    failed.put(original, new SendFailedException("550 Mailbox unavailable: " + recipient));
+                } else {
+                    delivered.add(mimeMessages[i]);
+                    deliveredOriginals.add(original);
+                }
+            }
+        }
+        if (!delivered.isEmpty()) {
+            super.doSend(delivered.toArray(new MimeMessage[0]), deliveredOriginals.toArray());
+        }
+        if (unconfirmed) {
+            throw new MailSendException("Failed to close server connection after message sending",
+                new MessagingException("421 Connection dropped"));
+        }
+        if (!failed.isEmpty()) {
+            throw new MailSendException(failed);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.library.service.notification;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.library.model.FailedNotification;
+import com.library.repository.FailedNotificationRepository;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class MailDispatcherTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Mock
+    private FailedNotificationRepository failedNotificationRepository;
+
+    @Captor
+    private ArgumentCaptor<List<FailedNotification>> letters;
+
+    private FlakyMailSender mailSender;
+    private MailDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        mailSender = new FlakyMailSender(greenMail.getSmtp().getPort());
+        dispatcher = new MailDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "mailSender", mailSender);
+        ReflectionTestUtils.setField(dispatcher, "failedNotificationRepository", failedNotificationRepository);
+        ReflectionTestUtils.setField(dispatcher, "concurrency", 2);
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 5);
+        ReflectionTestUtils.setField(dispatcher, "pageSize", 20);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "initialBackoffMs", 1L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 10L);
+        dispatcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    void retriesOnlyTheMessagesTheServerRejected() throws Exception {
+        List<String> recipients = members(12);
+        mailSender.reject("member3@library.test", 1);
+        mailSender.reject("member8@library.test", 2);
+
+        Map<String, Object> result = dispatch(recipients);
+
+        // Every member gets exactly one message: the rest of each batch is not sent again on retry
+        assertThat(receivedBy()).containsOnlyKeys(recipients).allSatisfy((recipient, count) -> assertThat(count).isEqualTo(1));
+        assertThat(result).containsEntry("recipients", 12L)
+            .containsEntry("batches", 3L)
+            .containsEntry("sent", 12L)
+            .containsEntry("retried", 3L)
+            .containsEntry("deadLettered", 0L);
+        verify(failedNotificationRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void deadLettersMessagesStillRejectedAfterTheLastAttempt() throws Exception {
+        List<String> recipients = members(3);
+        mailSender.reject("member2@library.test", FlakyMailSender.ALWAYS);
+
+        Map<String, Object> result = dispatch(recipients);
+
+        assertThat(receivedBy()).containsOnlyKeys("member1@library.test", "member3@library.test");
+        assertThat(result).containsEntry("sent", 2L).containsEntry("retried", 2L).containsEntry("deadLettered", 1L);
+        verify(failedNotificationRepository).saveAll(letters.capture());
+        assertThat(letters.getValue()).singleElement().satisfies(letter -> {
+            assertThat(letter.getKind()).isEqualTo("TEST");
+            assertThat(letter.getReference()).isEqualTo(2L);
+            assertThat(letter.getRecipient()).isEqualTo("member2@library.test");
+            assertThat(letter.getSubject()).isEqualTo("Notice 2");
+            assertThat(letter.getAttempts()).isEqualTo(3);
+            assertThat(letter.getLastError()).contains("550 Mailbox unavailable");
+            assertThat(letter.getFailedAt()).isNotNull();
+        });
+    }
+
+    @Test
+    void deadLettersABatchWhoseOutcomeIsUnknownWithoutSendingItAgain() throws Exception {
+        List<String> recipients = members(3);
+        mailSender.dropConfirmations(1);
+
+        Map<String, Object> result = dispatch(recipients);
+
+        assertThat(receivedBy()).containsOnlyKeys(recipients).allSatisfy((recipient, count) -> assertThat(count).isEqualTo(1));
+        assertThat(result).containsEntry("sent", 0L).containsEntry("retried", 0L).containsEntry("deadLettered", 3L);
+        verify(failedNotificationRepository).saveAll(letters.capture());
+        assertThat(letters.getValue()).hasSize(3).allSatisfy(letter -> {
+            assertThat(letter.getAttempts()).isEqualTo(1);
+            assertThat(letter.getLastError()).contains("Failed to close server connection");
+        });
+    }
+
+    @Test
+    void collectsBatchesAcrossManyPages() throws Exception {
+        ReflectionTestUtils.setField(dispatcher, "pageSize", 5);
+        List<String> recipients = members(47);
+
+        Map<String, Object> result = dispatch(recipients);
+
+        assertThat(receivedBy()).containsOnlyKeys(recipients);
+        assertThat(result).containsEntry("recipients", 47L).containsEntry("batches", 10L).containsEntry("sent", 47L);
+    }
+
+    @Test
+    void backoffDoublesUpToTheCap() {
+        ReflectionTestUtils.setField(dispatcher, "initialBackoffMs", 1000L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 5000L);
+
+        assertThat(dispatcher.backoffDelay(1)).isBetween(1000L, 1250L);
+        assertThat(dispatcher.backoffDelay(2)).isBetween(2000L, 2500L);
+        assertThat(dispatcher.backoffDelay(3)).isBetween(4000L, 5000L);
+        // Jitter is added before the cap, and a shift past 63 bits must not wrap around
+        for (int attempt = 4; attempt <= 100; attempt++) {
+            assertThat(dispatcher.backoffDelay(attempt)).isEqualTo(5000L);
+        }
+    }
+
+    private Map<String, Object> dispatch(List<String> recipients) {
+        return dispatcher.dispatch("TEST",
+            (after, size) -> {
+                int from = after == null ? 0 : recipients.indexOf(after) + 1;
+                return recipients.subList(from, Math.min(from + size, recipients.size()));
+            },
+            recipient -> new OutgoingMail(memberNumber(recipient), message(recipient)));
+    }
+
+    private static List<String> members(int count) {
+        return IntStream.rangeClosed(1, count).mapToObj(i -> "member" + i + "@library.test").collect(Collectors.toList());
+    }
+
+    private static long memberNumber(String recipient) {
+        return Long.parseLong(recipient.substring("member".length(), recipient.indexOf('@')));
+    }
+
+    private static SimpleMailMessage message(String recipient) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(recipient);
+        message.setSubject("Notice " + memberNumber(recipient));
+        message.setText("Your books are due");
+        return message;
+    }
+
+    private static Map<String, Integer> receivedBy() throws Exception {
+        Map<String, Integer> received = new HashMap<>();
+        for (MimeMessage message : greenMail.getReceivedMessages()) {
+            received.merge(message.getAllRecipients()[0].toString(), 1, Integer::sum);
+        }
+        return received;
+    }
+}